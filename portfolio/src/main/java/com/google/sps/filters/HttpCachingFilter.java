@@ -0,0 +1,340 @@
+package com.google.sps.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Filter that adds compression and HTTP caching to GET responses produced by this app.
+ *
+ * - Responses with a text or JSON content type are gzipped when the client accepts it.
+ * - Successful JSON responses get an ETag computed from their content and must be revalidated
+ *   on every use, a matching If-None-Match is answered with 304 Not Modified and no body.
+ * - Successful responses to requests carrying a content hash in the "v" parameter
+ *   (e.g. scripts/comments.js?v=1a2b3c4d) are cached for a year, the URL changes whenever the content does.
+ *   Errors are not, so that a request racing a deployment does not pin a 404 for a year.
+ *
+ * On App Engine static files are served without going through this filter, appengine-web.xml sets
+ * their expiration to match. The filter covers them on the local dev server.
+ *
+ * Server-Sent Events streams are passed through untouched as they cannot be buffered.
+ **/
+@WebFilter(urlPatterns={"/*"}, asyncSupported=true)
+public class HttpCachingFilter implements Filter {
+  private static final String VERSION_PARAMETER         = "v";
+  private static final String IMMUTABLE_CACHE_CONTROL   = "public, max-age=31536000, immutable";
+  private static final String REVALIDATE_CACHE_CONTROL  = "private, no-cache";
+  private static final String JSON_CONTENT_TYPE         = "application/json";
+  private static final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+  private static final String GZIP_ENCODING             = "gzip";
+  private static final int ETAG_HEX_LENGTH              = 32;
+  private static final int MIN_GZIP_BYTES               = 256;
+  private static final List<String> COMPRESSIBLE_TYPES  =
+      Arrays.asList("text/", JSON_CONTENT_TYPE, "application/javascript", "image/svg+xml");
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+      throws IOException, ServletException {
+
+    HttpServletRequest request    = (HttpServletRequest) servletRequest;
+    HttpServletResponse response  = (HttpServletResponse) servletResponse;
+
+    if (!"GET".equals(request.getMethod()) || isEventStream(request)) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    BufferedResponse bufferedResponse = new BufferedResponse(response);
+    chain.doFilter(request, bufferedResponse);
+    writeResponse(request, response, bufferedResponse);
+  }
+
+  @Override
+  public void destroy() {}
+
+  /**
+   * Utility function to send the buffered body, after handling conditional requests and compression.
+   **/
+  private void writeResponse(HttpServletRequest request, HttpServletResponse response,
+      BufferedResponse bufferedResponse) throws IOException {
+
+    if (bufferedResponse.isPassedThrough() || response.isCommitted()) {
+      return;
+    }
+
+    byte[] body         = bufferedResponse.getBody();
+    String contentType  = response.getContentType();
+    boolean isOk        = bufferedResponse.getStatus() == HttpServletResponse.SC_OK;
+
+    if (isOk && isJson(contentType)) {
+      String etag = createEtag(body);
+      response.setHeader("ETag", etag);
+      response.setHeader("Cache-Control", REVALIDATE_CACHE_CONTROL);
+
+      if (matchesEtag(request.getHeader("If-None-Match"), etag)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+    } else if (isOk && request.getParameter(VERSION_PARAMETER) != null) {
+      response.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+    }
+
+    if (isCompressible(contentType)) {
+      response.addHeader("Vary", "Accept-Encoding");
+
+      if (body.length >= MIN_GZIP_BYTES && acceptsGzip(request)) {
+        body = gzip(body);
+        response.setHeader("Content-Encoding", GZIP_ENCODING);
+      }
+    }
+
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  /**
+   * Weak ETags are used as the same ETag is sent for the gzipped and the plain representation.
+   **/
+  static String createEtag(byte[] body) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+
+      return "W/\"" + hex.substring(0, ETAG_HEX_LENGTH) + "\"";
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * Utility function to check an If-None-Match header, which may list several ETags or be "*".
+   * Uses the weak comparison required for If-None-Match.
+   **/
+  static boolean matchesEtag(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+
+    String opaqueTag = stripWeakPrefix(etag);
+    for (String candidate : ifNoneMatch.split(",")) {
+      String trimmed = candidate.trim();
+      if (trimmed.equals("*") || stripWeakPrefix(trimmed).equals(opaqueTag)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static String stripWeakPrefix(String etag) {
+    return etag.startsWith("W/") ? etag.substring(2) : etag;
+  }
+
+  private static boolean isJson(String contentType) {
+    return contentType != null && contentType.startsWith(JSON_CONTENT_TYPE);
+  }
+
+  private static boolean isCompressible(String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+
+    for (String compressibleType : COMPRESSIBLE_TYPES) {
+      if (contentType.startsWith(compressibleType)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isEventStream(HttpServletRequest request) {
+    String accept = request.getHeader("Accept");
+    return accept != null && accept.contains(EVENT_STREAM_CONTENT_TYPE);
+  }
+
+  private static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    return acceptEncoding != null && acceptEncoding.contains(GZIP_ENCODING);
+  }
+
+  private static byte[] gzip(byte[] body) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2);
+    try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+      gzipStream.write(body);
+    }
+
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Response wrapper that keeps the body in memory until the filter has decided how to send it.
+   * Errors and redirects are passed through to the wrapped response untouched.
+   **/
+  private static class BufferedResponse extends HttpServletResponseWrapper {
+    private final ByteArrayOutputStream buffer;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+    private boolean passedThrough;
+
+    private BufferedResponse(HttpServletResponse response) {
+      super(response);
+      this.buffer = new ByteArrayOutputStream();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      if (writer != null) {
+        throw new IllegalStateException("getWriter() has already been called");
+      }
+
+      if (outputStream == null) {
+        outputStream = new ServletOutputStream() {
+          @Override
+          public void write(int b) {
+            buffer.write(b);
+          }
+
+          @Override
+          public void write(byte[] bytes, int offset, int length) {
+            buffer.write(bytes, offset, length);
+          }
+
+          @Override
+          public boolean isReady() {
+            return true;
+          }
+
+          /**
+           * The buffer is always ready, so the listener can write everything right away.
+           **/
+          @Override
+          public void setWriteListener(WriteListener writeListener) {
+            try {
+              writeListener.onWritePossible();
+            } catch (IOException e) {
+              writeListener.onError(e);
+            }
+          }
+        };
+      }
+
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+      if (outputStream != null) {
+        throw new IllegalStateException("getOutputStream() has already been called");
+      }
+
+      if (writer == null) {
+        String encoding = getCharacterEncoding() == null
+            ? StandardCharsets.ISO_8859_1.name() : getCharacterEncoding();
+        try {
+          writer = new PrintWriter(new OutputStreamWriter(buffer, encoding));
+        } catch (IOException e) {
+          writer = new PrintWriter(new OutputStreamWriter(buffer, StandardCharsets.ISO_8859_1));
+        }
+      }
+
+      return writer;
+    }
+
+    @Override
+    public void sendError(int status, String message) throws IOException {
+      passedThrough = true;
+      super.sendError(status, message);
+    }
+
+    @Override
+    public void sendError(int status) throws IOException {
+      passedThrough = true;
+      super.sendError(status);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+      passedThrough = true;
+      super.sendRedirect(location);
+    }
+
+    /**
+     * The length is only known once the body is final, writeResponse sets it.
+     **/
+    @Override
+    public void setContentLength(int length) {}
+
+    @Override
+    public void setContentLengthLong(long length) {}
+
+    @Override
+    public void setHeader(String name, String value) {
+      if (!"Content-Length".equalsIgnoreCase(name)) {
+        super.setHeader(name, value);
+      }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      if (!"Content-Length".equalsIgnoreCase(name)) {
+        super.addHeader(name, value);
+      }
+    }
+
+    /**
+     * Committing the wrapped response here would prevent the filter from setting its headers.
+     **/
+    @Override
+    public void flushBuffer() {}
+
+    @Override
+    public void resetBuffer() {
+      buffer.reset();
+    }
+
+    @Override
+    public void reset() {
+      super.reset();
+      buffer.reset();
+    }
+
+    private boolean isPassedThrough() {
+      return passedThrough;
+    }
+
+    private byte[] getBody() {
+      if (writer != null) {
+        writer.flush();
+      }
+
+      return buffer.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.google.sps.filters;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.sps.utils.Metrics;
+
+/**
+ * Filter that records the latency of every request in a histogram per endpoint.
+ * Endpoints are named "http <method> <servlet path>" so that query parameters do not create new histograms.
+ * Requests that end in a 404 share a single histogram for the same reason.
+ *
+ * Asynchronous requests (/comment-stream) are timed until the servlet hands them off, not until they complete.
+ *
+ * Sub operations (translation, Datastore writes, authentication) are recorded separately
+ * by the code that performs them. All histograms are served by MetricsServlet.
+ **/
+@WebFilter(urlPatterns={"/*"}, asyncSupported=true)
+public class MetricsFilter implements Filter {
+  private static final String METRIC_PREFIX     = "http ";
+  private static final String NOT_FOUND_PATH    = "<not found>";
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+
+    long start = System.nanoTime();
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      Metrics.recordSince(getMetricName((HttpServletRequest) request, (HttpServletResponse) response), start);
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  private String getMetricName(HttpServletRequest request, HttpServletResponse response) {
+    String path = request.getServletPath();
+    if (response.getStatus() == HttpServletResponse.SC_NOT_FOUND) {
+      path = NOT_FOUND_PATH;
+    }
+
+    return METRIC_PREFIX + request.getMethod() + " " + path;
+  }
+}
@@ -1,21 +1,24 @@
 package com.google.sps.servlets;
 
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import com.google.sps.utils.AuthCheck;
 import com.google.sps.utils.Parse;
-import com.google.gson.Gson;
 
 /**
  * Servlet class intended to be used by the client to be able to get their authentication status and login / logout link.
  * All of these functionalities can be called by the client by sending a request to the GET handler.
  * AuthCheck utility class is used to implement these functionalities.
  *
+ * /auth-status answers with everything a page needs in a single response: the email of the user (absent when
+ * logged out), whether they can see comments, and the login and logout links redirecting to the redirect parameter.
+ * /auth-login and /auth-logout still answer with a single link.
+ *
  * Note that the GET request listener is purely there for the client to be able to display client page appropriately.
  * Backend functionalities should use the utility class AuthCheck rather than the GET listener.
  * Do not rely on the login status sent by the client. Avoid client side validation and re-validate on the server.
@@ -26,7 +29,20 @@ public class AuthCheckServlet extends HttpServlet {
   private static final String AUTH_LOGIN_URL               = "/auth-login";
   private static final String AUTH_LOGOUT_URL              = "/auth-logout";
   private static final String REDIRECT_URL_PARAMETER       = "redirect";
-  private static final String RESPONSE_CONTENT_TYPE_JSON   = "application/json;";
+  private static final String EMAIL_PARAMETER              = "email";
+  private static final String IS_GOOGLER_PARAMETER         = "is-googler";
+  private static final String LOGIN_URL_PARAMETER          = "login-url";
+  private static final String LOGOUT_URL_PARAMETER         = "logout-url";
+  private static final String DEFAULT_REDIRECT_URL         = "/";
+  private static final String RESPONSE_CONTENT_TYPE_JSON   = "application/json; charset=UTF-8";
+  private static final int MAX_CACHED_URLS                 = 1000;
+
+  /**
+   * Login and logout links only depend on the host the page was served from and the redirect target,
+   * not on the user, so they are generated once per (host, redirect, link type) and then reused.
+   * Cleared when it grows past MAX_CACHED_URLS.
+   **/
+  private static final ConcurrentHashMap<String, String> authUrlCache = new ConcurrentHashMap<String, String>();
 
   /**
    * Get request handler for client usage providing different usages based on where the request is sent.
@@ -35,23 +51,57 @@ public class AuthCheckServlet extends HttpServlet {
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String requestUrl   = request.getRequestURI();
-    String redirectUrl  = request.getParameter(REDIRECT_URL_PARAMETER);
+    String redirectUrl  = getRedirectUrl(request);
 
     response.setContentType(RESPONSE_CONTENT_TYPE_JSON);
-    String responseString = null;
+    Object responseObject = null;
 
     if (requestUrl.equals(AUTH_STATUS_URL)) {
-      responseString = AuthCheck.getEmail();
+      HashMap<String, Object> statusMap = new HashMap<String, Object>();
+      statusMap.put(EMAIL_PARAMETER, AuthCheck.getEmail());
+      statusMap.put(IS_GOOGLER_PARAMETER, AuthCheck.isGoogleEmail());
+      statusMap.put(LOGIN_URL_PARAMETER, getAuthUrl(request, AUTH_LOGIN_URL, redirectUrl));
+      statusMap.put(LOGOUT_URL_PARAMETER, getAuthUrl(request, AUTH_LOGOUT_URL, redirectUrl));
+      responseObject = statusMap;
     }
 
-    if (requestUrl.equals(AUTH_LOGIN_URL)) {
-      responseString = AuthCheck.generateLoginUrl(redirectUrl);
-    } 
+    if (requestUrl.equals(AUTH_LOGIN_URL) || requestUrl.equals(AUTH_LOGOUT_URL)) {
+      responseObject = getAuthUrl(request, requestUrl, redirectUrl);
+    }
+
+    response.getWriter().print(Parse.toJson(responseObject));
+  }
+
+  /**
+   * Utility function to get a login (AUTH_LOGIN_URL) or logout (AUTH_LOGOUT_URL) link from authUrlCache,
+   * generating it on a miss.
+   **/
+  private static String getAuthUrl(HttpServletRequest request, String linkType, String redirectUrl) {
+    if (authUrlCache.size() > MAX_CACHED_URLS) {
+      authUrlCache.clear();
+    }
+
+    String host     = request.getScheme() + "://" + request.getServerName() + ":" + request.getServerPort();
+    String cacheKey = linkType + "|" + host + "|" + redirectUrl;
+
+    return authUrlCache.computeIfAbsent(cacheKey, key -> linkType.equals(AUTH_LOGIN_URL)
+        ? AuthCheck.generateLoginUrl(redirectUrl)
+        : AuthCheck.generateLogoutUrl(redirectUrl));
+  }
+
+  /**
+   * Utility function to get the redirect parameter.
+   * Only paths on this site are accepted, anything else redirects to DEFAULT_REDIRECT_URL.
+   * This keeps the links from sending users to other sites and bounds the number of cached links.
+   **/
+  private static String getRedirectUrl(HttpServletRequest request) {
+    String redirectUrl = request.getParameter(REDIRECT_URL_PARAMETER);
 
-    if (requestUrl.equals(AUTH_LOGOUT_URL)) {
-      responseString = AuthCheck.generateLogoutUrl(redirectUrl);
+    if (redirectUrl == null || !redirectUrl.startsWith("/") || redirectUrl.startsWith("//")
+        || redirectUrl.contains("\\")) {
+      return DEFAULT_REDIRECT_URL;
     }
 
-    response.getWriter().print(Parse.toJson(responseString));
+    return redirectUrl;
   }
 }
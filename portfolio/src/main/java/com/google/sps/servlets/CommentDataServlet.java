@@ -1,13 +1,38 @@
 package com.google.sps.servlets;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.Text;
+import com.google.sps.utils.AdmissionControl;
+import com.google.sps.utils.AppEngineTaskQueue;
 import com.google.sps.utils.AuthCheck;
+import com.google.sps.utils.EntitySchema;
 import com.google.sps.utils.Language;
+import com.google.sps.utils.Parse;
+import com.google.sps.utils.QuerySpec;
+import com.google.sps.utils.RateLimiter;
+import com.google.sps.utils.SearchIndex;
+import com.google.sps.utils.ShardedCounter;
+import com.google.sps.utils.TaskHandler;
+import com.google.sps.utils.TaskQueue;
 
 
 /**
@@ -15,34 +40,92 @@ import com.google.sps.utils.Language;
  * This class overloads DataServlet methods.
  * Note that deletion is implement by the child of this class: DeleteCommentDataServlet.
  **/
-@WebServlet(urlPatterns={"/comment-post", "/comment-get", "/comment-delete"})
+@WebServlet(urlPatterns={"/comment-post", "/comment-get", "/comment-delete", "/comment-cache-stats",
+    "/comment-count", "/comment-translate", "/comment-search"})
 public class CommentDataServlet extends DataServlet {
   private static final int MIN_COMMENTS_NUMBER              = 5;
+  private static final String MAX_COMMENTS_NUMBER_PROPERTY  = "sps.comments.max-page-size";
+  private static final int MAX_COMMENTS_NUMBER              = Integer.getInteger(MAX_COMMENTS_NUMBER_PROPERTY, 100);
   private static final String COMMENT_NUMBER_PARAMETER      = "comments-number";
   private static final String USER_LDAP_PARAMETER           = "ldap";
   private static final String COMMENT_TEXT_PARAMETER        = "comment-text";
+  private static final String LANGUAGE_PARAMETER            = "lang";
+  private static final String AUTHOR_PARAMETER              = "author";
+  private static final String SINCE_PARAMETER               = "since";
   private static final String POST_COMMENT_URL              = "/comment-post";
   private static final String GET_COMMENT_URL               = "/comment-get";
   private static final String DELETE_COMMENT_URL            = "/comment-delete";
+  private static final String CACHE_STATS_URL               = "/comment-cache-stats";
+  private static final String COUNT_COMMENT_URL             = "/comment-count";
+  private static final String TRANSLATE_COMMENT_URL         = "/comment-translate";
+  private static final String SEARCH_COMMENT_URL            = "/comment-search";
+  private static final String SEARCH_QUERY_PARAMETER        = "q";
+  private static final String OFFSET_PARAMETER              = "offset";
+  private static final String NEXT_OFFSET_PARAMETER         = "next-offset";
+  private static final String PREV_OFFSET_PARAMETER         = "prev-offset";
+  private static final String MATCHES_PARAMETER             = "matches";
+  private static final String POSTING_KIND                  = "CommentPosting";
+  private static final SearchIndex searchIndex              = new SearchIndex(POSTING_KIND);
+  private static final String TRANSLATION_QUEUE_NAME        = "translation";
+  private static final String COMMENT_KEY_PARAMETER         = "comment-key";
+  private static final String ERROR_PARAMETER               = "error";
+  private static final String DEAD_LETTER_KIND              = "TranslationDeadLetter";
+  private static final int MAX_TRANSLATION_ATTEMPTS         = 5;
+  private static final String TOTAL_COUNT_PARAMETER         = "total";
+  private static final String AUTHOR_COUNT_PARAMETER        = "author-total";
+  private static final String TOTAL_COUNTER                 = "total";
+  private static final String AUTHOR_COUNTER_PREFIX         = "author:";
+  private static final String COUNTER_SHARD_KIND            = "CommentCounterShard";
+  private static final int COUNTER_SHARDS                   = 20;
+  private static final ShardedCounter commentCounter        = new ShardedCounter(COUNTER_SHARD_KIND, COUNTER_SHARDS);
   private static final String ENTITY_KIND                   = "Comment";
   private static final String[] LANGUAGE_CODES              = {"ar", "zh", "en", "hi", "id", "ja", "jv", "la", "ru"};
-  private static HashMap<String, String> prevCursorMap;
+  private static final int MAX_LDAP_LENGTH                  = 64;
+  private static final int MAX_COMMENT_LENGTH               = 280;
+  private static final int MAX_TRANSLATION_LENGTH           = 1500;
+  private static final EntitySchema COMMENT_SCHEMA          = createCommentSchema();
+  private static final int MAX_PREV_CURSORS                 = 10000;
+  private static final String POST_RATE_LIMITER             = "comment-post";
+  private static final double POST_BURST                    = 5;
+  private static final double POSTS_PER_SECOND              = 0.1;
+  private static final int SC_TOO_MANY_REQUESTS             = 429;
 
   /**
-   * Initialize a server-side cache of previous cursors that are used in datastore pagination.
-   * The cache is updated whenever we access a new page of comments and cleared when comments are deleted.
+   * Server-side cache of previous cursors that are used in datastore pagination.
+   * The cache is updated whenever we access a new page of comments and cleared when comments are deleted
+   * or when it grows past MAX_PREV_CURSORS. Concurrent requests share it, hence the ConcurrentHashMap.
    **/
-  public CommentDataServlet() {
-    prevCursorMap   = new HashMap<String, String>();
+  private static final ConcurrentHashMap<String, String> prevCursorMap =
+      new ConcurrentHashMap<String, String>();
+
+  private TaskHandler translationHandler;
+  private TaskQueue translationQueue;
+  private RateLimiter postRateLimiter;
+
+  /**
+   * Declares the comment queries so that missing Datastore indexes fail the start up instead of requests.
+   * Also sets up the queue that translates posted comments in the background and the limit on posts.
+   **/
+  @Override
+  public void init() throws ServletException {
+    registerQueries(getQuerySpecs());
+    translationHandler  = new CommentTranslationHandler();
+    translationQueue    = createTranslationQueue(translationHandler);
+    postRateLimiter     = createPostRateLimiter();
   }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    if (!hasEnoughPrivilege()) {
+    String requestUrl = request.getRequestURI();
+
+    if (requestUrl.equals(TRANSLATE_COMMENT_URL)) {
+      AppEngineTaskQueue.runTask(request, response, translationHandler, MAX_TRANSLATION_ATTEMPTS);
       return;
     }
 
-    String requestUrl = request.getRequestURI();
+    if (!hasEnoughPrivilege()) {
+      return;
+    }
 
     if (requestUrl.equals(POST_COMMENT_URL)) {
       postComment(request, response);
@@ -64,47 +147,405 @@ public class CommentDataServlet extends DataServlet {
     if (requestUrl.equals(GET_COMMENT_URL)) {
       getComment(request, response);
     }
+
+    if (requestUrl.equals(CACHE_STATS_URL)) {
+      getPageCacheStats(response);
+    }
+
+    if (requestUrl.equals(COUNT_COMMENT_URL)) {
+      countComment(request, response);
+    }
+
+    if (requestUrl.equals(SEARCH_COMMENT_URL)) {
+      searchComment(request, response);
+    }
   }
 
   /**
    * Function to post a new comment.
    * Attaches LDAP parameter to the comment to keep track of usernames.
    *
-   * Also translates the new comment and stores the translations as part of the new entity.
-   * Translation is done here rather when the comment is fetched to prevent repeated translation API calls
-   * and have translation request be done faster.
+   * Translations are stored as part of the entity so that fetching comments never calls the translation API.
+   * They are done in the background through translationQueue, one task per language, so that posting
+   * neither waits for nor fails with the translation API. Until its task succeeds, every language holds
+   * the original text, which keeps the comment visible in every language.
+   *
+   * The comment is added to searchIndex right away and re-indexed as translations arrive.
+   * It is also published to the clients following /comment-stream.
+   * The comment counters are updated while the comment is being stored, and set back if storing it fails.
+   *
+   * Every post costs one translation per language, so each LDAP may post a burst of POST_BURST comments
+   * and then POSTS_PER_SECOND on average. Posts over the limit are rejected with 429 Too Many Requests
+   * and a Retry-After header, before anything is stored. Posts rejected with 400, such as a blank comment,
+   * are checked first and do not count towards the limit.
    **/
   private void postComment(HttpServletRequest request, HttpServletResponse response) throws IOException {
     HashMap<String,String> extraParameters  = new HashMap<String, String>();
     String commentText                      = request.getParameter(COMMENT_TEXT_PARAMETER);
+    String ldap                             = AuthCheck.getLdap();
 
-    extraParameters.put(USER_LDAP_PARAMETER, AuthCheck.getLdap());
+    extraParameters.put(USER_LDAP_PARAMETER, ldap);
 
     for (String code : LANGUAGE_CODES) {
-      extraParameters.put(code, Language.translate(commentText, code));
+      extraParameters.put(code, commentText);
+    }
+
+    Entity newComment = createEntity(request, response, ENTITY_KIND, COMMENT_SCHEMA, extraParameters);
+    if (newComment == null) {
+      return;
+    }
+
+    if (!postRateLimiter.tryAcquire(ldap)) {
+      long retryAfterSeconds = (postRateLimiter.getRetryAfterMillis(ldap) + 999) / 1000;
+      response.setHeader("Retry-After", String.valueOf(Math.max(retryAfterSeconds, 1)));
+      response.sendError(SC_TOO_MANY_REQUESTS, "Too many comments, try again later");
+      return;
+    }
+
+    PendingEntity pendingComment = postEntity(newComment);
+
+    // The counters do not need the key of the comment, so they are updated while it is being stored.
+    Entity comment;
+    try {
+      countComment(ldap, 1);
+    } finally {
+      comment = awaitComment(pendingComment, ldap);
+    }
+
+    Key commentKey  = comment.getKey();
+    long timestamp  = (Long) comment.getProperty(ENTITY_TIMESTAMP_PARAMETER);
+
+    List<HashMap<String, String>> translationTasks = new ArrayList<HashMap<String, String>>();
+    for (String code : LANGUAGE_CODES) {
+      HashMap<String, String> task = new HashMap<String, String>();
+      task.put(COMMENT_KEY_PARAMETER, KeyFactory.keyToString(commentKey));
+      task.put(LANGUAGE_PARAMETER, code);
+      translationTasks.add(task);
+    }
+    translationQueue.enqueue(translationTasks);
+    searchIndex.index(commentKey, timestamp, Collections.singletonList(commentText));
+    CommentStreamServlet.publishComment(comment, getCommentPropertyNames());
+  }
+
+  /**
+   * Utility function to wait for a comment posted by ldap to be stored.
+   * If storing it failed, the counters updated in the meantime are set back.
+   **/
+  private Entity awaitComment(PendingEntity pendingComment, String ldap) throws IOException {
+    try {
+      return pendingComment.get();
+    } catch (IOException | RuntimeException e) {
+      countComment(ldap, -1);
+      throw e;
+    }
+  }
+
+  /**
+   * Utility function to add delta to the total number of comments and to the number of comments of ldap.
+   **/
+  private void countComment(String ldap, long delta) {
+    commentCounter.increment(TOTAL_COUNTER, delta);
+    commentCounter.increment(AUTHOR_COUNTER_PREFIX + ldap, delta);
+  }
+
+  /**
+   * Translates one comment into one language, stores the translation on the comment and re-indexes it.
+   * Tasks of comments that were deleted in the meantime succeed without doing anything.
+   *
+   * Failed tasks are retried by the queue. A task that fails all of its attempts is recorded as
+   * a TranslationDeadLetter entity and the comment keeps its original text for that language.
+   **/
+  private class CommentTranslationHandler implements TaskHandler {
+    @Override
+    public void handle(HashMap<String, String> parameters) throws Exception {
+      Key commentKey      = KeyFactory.stringToKey(parameters.get(COMMENT_KEY_PARAMETER));
+      String languageCode = parameters.get(LANGUAGE_PARAMETER);
+
+      Entity comment;
+      try {
+        comment = DatastoreServiceFactory.getDatastoreService().get(commentKey);
+      } catch (EntityNotFoundException e) {
+        return;
+      }
+
+      String translation = translate((String) comment.getProperty(COMMENT_TEXT_PARAMETER), languageCode);
+      COMMENT_SCHEMA.validate(languageCode, translation);
+
+      List<String> oldTexts = new ArrayList<String>();
+      List<String> newTexts = new ArrayList<String>();
+      boolean updated       = updateEntity(commentKey, entity -> {
+        oldTexts.clear();
+        oldTexts.addAll(getIndexedTexts(entity));
+        COMMENT_SCHEMA.setProperty(entity, languageCode, translation);
+        newTexts.clear();
+        newTexts.addAll(getIndexedTexts(entity));
+      });
+
+      if (updated) {
+        long timestamp = (Long) comment.getProperty(ENTITY_TIMESTAMP_PARAMETER);
+        searchIndex.update(commentKey, timestamp, oldTexts, newTexts);
+      }
     }
 
-    doPost(request, response, ENTITY_KIND, extraParameters);
+    @Override
+    public void deadLetter(HashMap<String, String> parameters, Exception cause) {
+      Entity deadLetter = new Entity(DEAD_LETTER_KIND);
+      deadLetter.setProperty(COMMENT_KEY_PARAMETER, parameters.get(COMMENT_KEY_PARAMETER));
+      deadLetter.setProperty(LANGUAGE_PARAMETER, parameters.get(LANGUAGE_PARAMETER));
+      deadLetter.setProperty(ENTITY_TIMESTAMP_PARAMETER, System.currentTimeMillis());
+      deadLetter.setUnindexedProperty(ERROR_PARAMETER, new Text(String.valueOf(cause)));
+
+      DatastoreServiceFactory.getDatastoreService().put(deadLetter);
+    }
   }
 
   /**
    * Function to delete all comments.
    * Clears prevCursorMap cache as it will no longer be valid after the comment deletion.
+   * For each deleted batch of comments, the comment counters are decreased by the comments actually deleted
+   * and their postings are removed from searchIndex. Comments posted while the deletion runs are not deleted
+   * and stay counted.
    **/
   private void deleteComment(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    deleteAll(ENTITY_KIND);
+    deleteAll(ENTITY_KIND, deletedComments -> {
+      HashMap<Key, List<String>> deletedTexts = new HashMap<Key, List<String>>();
+      HashMap<String, Long> deletedPerAuthor  = new HashMap<String, Long>();
+      for (Entity comment : deletedComments) {
+        deletedTexts.put(comment.getKey(), getIndexedTexts(comment));
+        deletedPerAuthor.merge((String) comment.getProperty(USER_LDAP_PARAMETER), 1L, Long::sum);
+      }
+
+      commentCounter.increment(TOTAL_COUNTER, -deletedComments.size());
+      for (Map.Entry<String, Long> author : deletedPerAuthor.entrySet()) {
+        commentCounter.increment(AUTHOR_COUNTER_PREFIX + author.getKey(), -author.getValue());
+      }
+      searchIndex.remove(deletedTexts);
+    });
     prevCursorMap.clear();
+
+    CommentStreamServlet.publishDelete();
+  }
+
+  /**
+   * Function to search comments in any language, best match first.
+   * Results are paginated with an offset into the ranked matches (offset parameter) and hold the LDAP,
+   * timestamp and text in the requested language like /comment-get.
+   * Matches whose comment no longer exists are skipped and their postings cleaned up.
+   **/
+  private void searchComment(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String query        = request.getParameter(SEARCH_QUERY_PARAMETER);
+    int commentsNumber  = getCommentsNumber(request);
+    int offset          = Math.max(parseIntParameter(request, OFFSET_PARAMETER), 0);
+    String textProperty = getTextProperty(request);
+
+    List<Key> matches = query == null
+        ? new ArrayList<Key>()
+        : searchIndex.search(query, commentCounter.getCount(TOTAL_COUNTER));
+
+    int pageStart       = Math.min(offset, matches.size());
+    int pageEnd         = Math.min(offset + commentsNumber, matches.size());
+    List<Key> pageKeys  = matches.subList(pageStart, pageEnd);
+
+    Map<Key, Entity> comments = DatastoreServiceFactory.getDatastoreService().get(pageKeys);
+    List<Entity> results      = new ArrayList<Entity>();
+    for (Key commentKey : pageKeys) {
+      Entity comment = comments.get(commentKey);
+      if (comment == null) {
+        searchIndex.removePostings(commentKey, SearchIndex.tokenize(query));
+        continue;
+      }
+      results.add(comment);
+    }
+
+    HashMap<String, Object> resultMap = new HashMap<String, Object>();
+    resultMap.put(QUERY_RESULT_PARAMETER, results);
+    resultMap.put(MATCHES_PARAMETER, matches.size());
+    resultMap.put(NEXT_OFFSET_PARAMETER, pageEnd < matches.size() ? pageEnd : null);
+    resultMap.put(PREV_OFFSET_PARAMETER, pageStart > 0 ? Math.max(pageStart - commentsNumber, 0) : null);
+
+    List<String> propertyNames  = Arrays.asList(USER_LDAP_PARAMETER, ENTITY_TIMESTAMP_PARAMETER, textProperty);
+    String json                 = Parse.toJson(resultMap, propertyNames);
+
+    response.setContentType(RESPONSE_CONTENT_TYPE_JSON);
+    response.getWriter().println(json);
+  }
+
+  /**
+   * Utility function to list the properties of a comment that clients may display:
+   * the LDAP, the timestamp, the original text and every translation.
+   **/
+  private static List<String> getCommentPropertyNames() {
+    List<String> propertyNames = new ArrayList<String>();
+    propertyNames.add(USER_LDAP_PARAMETER);
+    propertyNames.add(ENTITY_TIMESTAMP_PARAMETER);
+    propertyNames.add(COMMENT_TEXT_PARAMETER);
+    propertyNames.addAll(Arrays.asList(LANGUAGE_CODES));
+    return propertyNames;
+  }
+
+  /**
+   * Utility function to list the texts of a comment that are searchable: the original text and
+   * every distinct translation. Languages still waiting for their translation hold the original text.
+   **/
+  private static List<String> getIndexedTexts(Entity comment) {
+    LinkedHashSet<String> texts = new LinkedHashSet<String>();
+    texts.add((String) comment.getProperty(COMMENT_TEXT_PARAMETER));
+    for (String code : LANGUAGE_CODES) {
+      Object translation = comment.getProperty(code);
+      if (translation != null) {
+        texts.add((String) translation);
+      }
+    }
+
+    return new ArrayList<String>(texts);
+  }
+
+  /**
+   * Function to get the number of comments without counting Comment entities.
+   * Also returns the number of comments posted by an author when the author parameter is given.
+   **/
+  private void countComment(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String authorLdap = request.getParameter(AUTHOR_PARAMETER);
+
+    HashMap<String, Long> countMap = new HashMap<String, Long>();
+    countMap.put(TOTAL_COUNT_PARAMETER, commentCounter.getCount(TOTAL_COUNTER));
+
+    if (authorLdap != null) {
+      countMap.put(AUTHOR_COUNT_PARAMETER, commentCounter.getCount(AUTHOR_COUNTER_PREFIX + authorLdap));
+    }
+
+    response.setContentType(RESPONSE_CONTENT_TYPE_JSON);
+    response.getWriter().println(Parse.toJson(countMap));
   }
 
   /**
    * Function to get a new comment.
    * prevCursorMap cache will be updated when accessing a new page.
+   * Only the LDAP, timestamp and the text of the requested language are fetched from Datastore
+   * rather than all of the stored translations.
+   * Comments can be limited to one author (author parameter) and to the ones posted since a timestamp
+   * in milliseconds (since parameter).
    **/
   private void getComment(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    int commentsNumber  = parseIntParameter(request, COMMENT_NUMBER_PARAMETER);
-    commentsNumber      = Math.max(commentsNumber, MIN_COMMENTS_NUMBER);
+    int commentsNumber  = getCommentsNumber(request);
+
+    String authorLdap   = request.getParameter(AUTHOR_PARAMETER);
+    long sinceTimestamp = parseLongParameter(request, SINCE_PARAMETER);
+
+    QuerySpec querySpec = createQuerySpec(getTextProperty(request), authorLdap != null, authorLdap);
+    if (sinceTimestamp >= 0) {
+      querySpec.withLowerBound(sinceTimestamp);
+    }
+
+    if (prevCursorMap.size() > MAX_PREV_CURSORS) {
+      prevCursorMap.clear();
+    }
+
+    doGet(request, response, querySpec, commentsNumber, prevCursorMap);
+  }
+
+  /**
+   * Utility function to describe a comment query returning the LDAP, timestamp and text in one language,
+   * newest first. Comments can optionally be limited to a single author.
+   * A lower bound on the timestamp does not change the index the query needs.
+   **/
+  private static QuerySpec createQuerySpec(String textProperty, boolean filterByAuthor, String authorLdap) {
+    QuerySpec querySpec = new QuerySpec(ENTITY_KIND)
+        .withSort(ENTITY_TIMESTAMP_PARAMETER, SortDirection.DESCENDING)
+        .withProjection(USER_LDAP_PARAMETER, String.class)
+        .withProjection(ENTITY_TIMESTAMP_PARAMETER, Long.class)
+        .withProjection(textProperty, String.class);
+
+    if (filterByAuthor) {
+      querySpec.withEqualityFilter(USER_LDAP_PARAMETER, authorLdap);
+    }
+
+    return querySpec;
+  }
+
+  /**
+   * Utility function to list every query getComment can run, for each language with and without an author.
+   * Package private so that the index definitions can be checked by tests.
+   **/
+  static List<QuerySpec> getQuerySpecs() {
+    List<String> textProperties = new ArrayList<String>();
+    textProperties.add(COMMENT_TEXT_PARAMETER);
+    textProperties.addAll(Arrays.asList(LANGUAGE_CODES));
+
+    List<QuerySpec> querySpecs = new ArrayList<QuerySpec>();
+    for (String textProperty : textProperties) {
+      querySpecs.add(createQuerySpec(textProperty, false, null));
+      querySpecs.add(createQuerySpec(textProperty, true, null));
+    }
+
+    return querySpecs;
+  }
+
+  /**
+   * Utility function to translate a comment into one of LANGUAGE_CODES.
+   * Protected so that tests can replace the Translation API call.
+   **/
+  protected String translate(String commentText, String languageCode) {
+    return Language.translate(commentText, languageCode);
+  }
+
+  /**
+   * Utility function to create the queue running translation tasks with handler.
+   * Uses the "translation" push queue of WEB-INF/queue.xml, which posts the tasks back to /comment-translate.
+   * Protected so that tests can run the tasks in process with a LocalTaskQueue.
+   **/
+  protected TaskQueue createTranslationQueue(TaskHandler handler) {
+    return new AppEngineTaskQueue(TRANSLATION_QUEUE_NAME, TRANSLATE_COMMENT_URL);
+  }
+
+  /**
+   * Utility function to create the per-LDAP limit on posted comments.
+   * The limiter is shared with /admin/limits. Protected so that tests can post without limits.
+   **/
+  protected RateLimiter createPostRateLimiter() {
+    return AdmissionControl.getRateLimiter(POST_RATE_LIMITER, POST_BURST, POSTS_PER_SECOND);
+  }
+
+  /**
+   * Utility function to get the requested page size, bounded by MIN_COMMENTS_NUMBER and MAX_COMMENTS_NUMBER.
+   * The upper bound caps the entities held in memory by a single request, larger pages are cut and can be
+   * read through their next cursor or offset. It can be changed through the sps.comments.max-page-size
+   * system property.
+   **/
+  private int getCommentsNumber(HttpServletRequest request) {
+    int commentsNumber = parseIntParameter(request, COMMENT_NUMBER_PARAMETER);
+    return Math.min(Math.max(commentsNumber, MIN_COMMENTS_NUMBER), MAX_COMMENTS_NUMBER);
+  }
+
+  /**
+   * Utility function to get the name of the property holding the comment text in the requested language.
+   * Falls back to the original comment text if the language parameter is missing or not supported.
+   **/
+  private String getTextProperty(HttpServletRequest request) {
+    String languageCode = request.getParameter(LANGUAGE_PARAMETER);
+
+    if (Arrays.asList(LANGUAGE_CODES).contains(languageCode)) {
+      return languageCode;
+    }
+
+    return COMMENT_TEXT_PARAMETER;
+  }
+
+  /**
+   * Utility function to declare the properties a Comment entity can have.
+   * The original text and its translations stay indexed strings as /comment-get projects them,
+   * so their length is bounded to keep entities and index writes small.
+   **/
+  private static EntitySchema createCommentSchema() {
+    EntitySchema schema = new EntitySchema()
+        .addField(USER_LDAP_PARAMETER, EntitySchema.FieldType.STRING, MAX_LDAP_LENGTH, true)
+        .addRequiredField(COMMENT_TEXT_PARAMETER, EntitySchema.FieldType.STRING, MAX_COMMENT_LENGTH, true);
+
+    for (String code : LANGUAGE_CODES) {
+      schema.addField(code, EntitySchema.FieldType.STRING, MAX_TRANSLATION_LENGTH, true);
+    }
 
-    doGet(request, response, ENTITY_KIND, ENTITY_TIMESTAMP_PARAMETER, commentsNumber, prevCursorMap);
+    return schema;
   }
 
   /**
@@ -0,0 +1,209 @@
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.sps.utils.AuthCheck;
+import com.google.sps.utils.EventBroadcaster;
+import com.google.sps.utils.Parse;
+
+
+/**
+ * Servlet class that pushes comment changes to clients as Server-Sent Events, so that open pages
+ * do not have to poll /comment-get. Comments are read again only when something was written.
+ *
+ * Events sent on /comment-stream:
+ * - version: sent first on every connection. Holds a number that changes whenever comments change on any instance,
+ *   clients reload the feed when it differs from the last version they saw.
+ * - comment: a comment posted on this instance, with its text in every language.
+ * - delete: every comment was deleted on this instance.
+ *
+ * Streams are closed after STREAM_TIMEOUT_MILLIS (App Engine ends requests after 60 seconds) and when a client
+ * falls CLIENT_BUFFER_CAPACITY events behind. The browser reconnects on its own after RECONNECT_MILLIS and
+ * catches up through the version event. On App Engine the front end buffers whole responses, so the stream
+ * is closed right after the first event it carries and behaves like a long poll.
+ *
+ * Every open stream is a request held for up to STREAM_TIMEOUT_MILLIS. It counts towards the concurrent requests
+ * of its instance, so a few dozen open pages are enough for App Engine to start instances that do nothing but
+ * wait, and comment and delete events only reach the streams of the instance that handled the write.
+ * The stream is therefore off unless the sps.comment-stream.enabled system property is set. While it is off,
+ * /comment-stream answers 204 No Content, which tells EventSource not to reconnect, and pages load the feed
+ * once as they did before.
+ **/
+@WebServlet(urlPatterns={"/comment-stream"}, asyncSupported=true)
+public class CommentStreamServlet extends HttpServlet {
+  private static final String RESPONSE_CONTENT_TYPE_EVENTS  = "text/event-stream; charset=UTF-8";
+  private static final String ENTITY_KIND                   = "Comment";
+  private static final String VERSION_EVENT                 = "version";
+  private static final String COMMENT_EVENT                 = "comment";
+  private static final String DELETE_EVENT                  = "delete";
+  private static final long RECONNECT_MILLIS                = 3000;
+  private static final long STREAM_TIMEOUT_MILLIS           = 25000;
+  private static final int CLIENT_BUFFER_CAPACITY           = 32;
+  private static final EventBroadcaster commentEvents       = new EventBroadcaster();
+  private static final String STREAM_PROPERTY               = "sps.comment-stream.enabled";
+  private static final boolean STREAM_ENABLED               = Boolean.getBoolean(STREAM_PROPERTY);
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!STREAM_ENABLED) {
+      response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+      return;
+    }
+
+    if (!AuthCheck.isGoogleEmail()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    response.setContentType(RESPONSE_CONTENT_TYPE_EVENTS);
+    response.setHeader("Cache-Control", "no-cache");
+
+    PrintWriter writer = response.getWriter();
+    writer.print("retry: " + RECONNECT_MILLIS + "\n\n");
+    writeEvent(writer, null, VERSION_EVENT, String.valueOf(DataServlet.getFeedVersion(ENTITY_KIND)));
+    response.flushBuffer();
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(STREAM_TIMEOUT_MILLIS);
+    new EventStream(asyncContext, writer, isBufferedByFrontEnd()).open();
+  }
+
+  /**
+   * Utility function to send a new comment to every open stream of this instance.
+   **/
+  static void publishComment(Entity comment, List<String> propertyNames) {
+    if (!STREAM_ENABLED) {
+      return;
+    }
+
+    commentEvents.publish(COMMENT_EVENT, Parse.toJson(comment, propertyNames));
+  }
+
+  /**
+   * Utility function to tell every open stream of this instance that all comments were deleted.
+   **/
+  static void publishDelete() {
+    if (!STREAM_ENABLED) {
+      return;
+    }
+
+    commentEvents.publish(DELETE_EVENT, "{}");
+  }
+
+  static int getOpenStreamCount() {
+    return commentEvents.getSubscriberCount();
+  }
+
+  /**
+   * One open connection. Events are written from a container thread started through the AsyncContext,
+   * never from the thread that published them.
+   **/
+  private static class EventStream implements AsyncListener {
+    private final AsyncContext asyncContext;
+    private final PrintWriter writer;
+    private final boolean closeAfterEvents;
+    private final AtomicBoolean closed;
+    private EventBroadcaster.Subscriber subscriber;
+
+    private EventStream(AsyncContext asyncContext, PrintWriter writer, boolean closeAfterEvents) {
+      this.asyncContext     = asyncContext;
+      this.writer           = writer;
+      this.closeAfterEvents = closeAfterEvents;
+      this.closed           = new AtomicBoolean();
+    }
+
+    private void open() {
+      asyncContext.addListener(this);
+      subscriber = commentEvents.subscribe(CLIENT_BUFFER_CAPACITY, this::scheduleWrite);
+    }
+
+    private void scheduleWrite() {
+      if (closed.get()) {
+        return;
+      }
+
+      try {
+        asyncContext.start(this::writeEvents);
+      } catch (IllegalStateException e) {
+        close();
+      }
+    }
+
+    private synchronized void writeEvents() {
+      if (closed.get()) {
+        return;
+      }
+
+      List<EventBroadcaster.Event> events = subscriber.takeEvents();
+      for (EventBroadcaster.Event event : events) {
+        writeEvent(writer, event.getId(), event.getType(), event.getData());
+      }
+      writer.flush();
+
+      if (writer.checkError() || subscriber.isOverflowed() || (closeAfterEvents && !events.isEmpty())) {
+        close();
+      }
+    }
+
+    private void close() {
+      if (!closed.compareAndSet(false, true)) {
+        return;
+      }
+
+      commentEvents.unsubscribe(subscriber);
+      try {
+        asyncContext.complete();
+      } catch (IllegalStateException e) {
+        // The container already completed the request.
+      }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      closed.set(true);
+      commentEvents.unsubscribe(subscriber);
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+
+  /**
+   * Utility function to write one event in the text/event-stream format.
+   **/
+  private static void writeEvent(PrintWriter writer, Long id, String type, String data) {
+    if (id != null) {
+      writer.print("id: " + id + "\n");
+    }
+    writer.print("event: " + type + "\n");
+    for (String line : data.split("\n")) {
+      writer.print("data: " + line + "\n");
+    }
+    writer.print("\n");
+  }
+
+  private static boolean isBufferedByFrontEnd() {
+    return SystemProperty.environment.value() == SystemProperty.Environment.Value.Production;
+  }
+}
@@ -15,25 +15,51 @@
 package com.google.sps.servlets;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.sps.utils.AdmissionControl;
+import com.google.sps.utils.BatchedWriter;
+import com.google.sps.utils.DatastoreIndexes;
+import com.google.sps.utils.EntitySchema;
+import com.google.sps.utils.Metrics;
+import com.google.sps.utils.PageCache;
+import com.google.sps.utils.PrefetchCache;
 import com.google.sps.utils.Parse;
+import com.google.sps.utils.QuerySpec;
+import com.google.sps.utils.RateLimiter;
 
 
 /**
@@ -50,76 +76,509 @@ public class DataServlet extends HttpServlet {
   protected static final String CURSOR_PARAMETER            = "cursor";
   protected static final String QUERY_RESULT_PARAMETER      = "result";
   protected static final String UNDEFINED_STRING            = "undefined";
-  private static DatastoreService datastore;
+  private static final String DATASTORE_INDEXES_PATH        = "/WEB-INF/datastore-indexes.xml";
+  private static final int MAX_CACHED_PAGES                 = 3;
+  private static final int MAX_UPDATE_ATTEMPTS              = 5;
+  private static final long RETRY_BACKOFF_MILLIS            = 10;
+  private static final int MAX_BATCH_SIZE                   = 500;
+  private static final int MAX_TRANSACTION_GROUPS           = 25;
+  private static final PageCache pageCache                  = new PageCache(MAX_CACHED_PAGES);
+  private static final String WRITE_BUFFER_PROPERTY         = "sps.write-buffer.enabled";
+  private static final int WRITE_BUFFER_CAPACITY            = 500;
+  private static final int WRITE_BUFFER_BATCH_SIZE          = 100;
+  private static final long WRITE_BUFFER_OFFER_TIMEOUT_MS   = 2000;
+  private static final DatastoreService datastore           = DatastoreServiceFactory.getDatastoreService();
+  private static final AsyncDatastoreService asyncDatastore = DatastoreServiceFactory.getAsyncDatastoreService();
+  private static final BatchedWriter batchedWriter          = Boolean.getBoolean(WRITE_BUFFER_PROPERTY)
+      ? new BatchedWriter(asyncDatastore, WRITE_BUFFER_CAPACITY, WRITE_BUFFER_BATCH_SIZE,
+          WRITE_BUFFER_OFFER_TIMEOUT_MS)
+      : null;
+  private static final String PREFETCH_PROPERTY             = "sps.prefetch.enabled";
+  private static final boolean PREFETCH_ENABLED             = Boolean.getBoolean(PREFETCH_PROPERTY);
+  private static final long PREFETCH_TTL_MILLIS             = 30000;
+  private static final int MAX_PREFETCHED_PAGES             = 200;
+  private static final String PREFETCH_RATE_LIMITER         = "page-prefetch";
+  private static final double PREFETCH_BURST                = 20;
+  private static final double PREFETCHES_PER_SECOND         = 5;
+  private static final PrefetchCache prefetchCache          = new PrefetchCache(PREFETCH_TTL_MILLIS,
+      MAX_PREFETCHED_PAGES);
+  private final Set<String> registeredQueryShapes;
 
+  /**
+   * Instances serve concurrent requests (threadsafe is enabled in appengine-web.xml).
+   * Shared state is either immutable, thread-safe, or only written in init() before any request is served.
+   **/
   public DataServlet() {
-    datastore = DatastoreServiceFactory.getDatastoreService();
+    registeredQueryShapes   = new HashSet<String>();
   }
 
   /**
    * Function that implements a general usage of storing entity in Datastore.
    * Intended to be overloaded by child of DataServlet class.
+   * Creates the entity through createEntity() and stores it through postEntity().
+   * Returns null if the entity was rejected.
+   **/
+  protected PendingEntity doPost(HttpServletRequest request, HttpServletResponse response, String entityKind,
+      EntitySchema schema, HashMap<String, String> extraParameters) throws IOException {
+
+    Entity newEntity = createEntity(request, response, entityKind, schema, extraParameters);
+    return newEntity == null ? null : postEntity(newEntity);
+  }
+
+  /**
+   * Function that creates a new entity from the request parameters, without storing it.
+   * Only the parameters declared in schema are set. Responds with 400 and returns null if a value
+   * does not fit the schema or a required field is missing, so that child classes can check
+   * anything that costs them something only once the entity is known to be valid.
    **/
-  protected void doPost(HttpServletRequest request, HttpServletResponse response, String entityKind, 
-      HashMap<String, String> extraParameters) throws IOException {
+  protected Entity createEntity(HttpServletRequest request, HttpServletResponse response, String entityKind,
+      EntitySchema schema, HashMap<String, String> extraParameters) throws IOException {
 
     Entity newEntity = new Entity(entityKind);
     setTimestamp(newEntity);
-    setRequestParameters(newEntity, request);
-    setExtraParameters(newEntity, extraParameters);
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.put(newEntity);
+    try {
+      setRequestParameters(newEntity, request, schema);
+      setExtraParameters(newEntity, extraParameters, schema);
+      schema.checkRequiredFields(newEntity);
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return null;
+    }
+
+    return newEntity;
+  }
+
+  /**
+   * Function that stores an entity made by createEntity().
+   * The entity is written through AsyncDatastoreService, this returns as soon as the put is sent.
+   * Callers can do work that does not need the entity key while it is in flight, then call get() on the
+   * returned PendingEntity, which waits for the put and invalidates the cached pages of its kind.
+   **/
+  protected PendingEntity postEntity(Entity newEntity) throws IOException {
+    long start = System.nanoTime();
+    return new PendingEntity(newEntity, storeEntity(newEntity), start);
+  }
+
+  /**
+   * Entity stored by doPost, along with the put that stores it.
+   **/
+  protected static class PendingEntity {
+    private final Entity entity;
+    private final Future<Key> put;
+    private final long start;
+    private boolean stored;
+
+    private PendingEntity(Entity entity, Future<Key> put, long start) {
+      this.entity = entity;
+      this.put    = put;
+      this.start  = start;
+    }
+
+    /**
+     * Waits until the entity is stored and invalidates the cached pages of its kind.
+     * The time from doPost until the put is done is recorded as Datastore.put.
+     **/
+    public Entity get() throws IOException {
+      if (stored) {
+        return entity;
+      }
+
+      try {
+        put.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while storing entity", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IOException("Could not store entity", e.getCause());
+      } finally {
+        Metrics.recordSince("Datastore.put", start);
+      }
+
+      pageCache.invalidate(entity.getKind());
+      stored = true;
+      return entity;
+    }
+  }
+
+  /**
+   * Function that changes a stored entity in a transaction.
+   * The transaction is retried up to MAX_UPDATE_ATTEMPTS times, after a backoff, if the entity is modified
+   * concurrently.
+   * Returns false if the entity does not exist (anymore).
+   **/
+  protected boolean updateEntity(Key key, Consumer<Entity> update) {
+    for (int attempt = 1; ; ++attempt) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        Entity entity;
+        try {
+          entity = datastore.get(transaction, key);
+        } catch (EntityNotFoundException e) {
+          return false;
+        }
+
+        update.accept(entity);
+        datastore.put(transaction, entity);
+        transaction.commit();
+        break;
+      } catch (ConcurrentModificationException e) {
+        if (attempt >= MAX_UPDATE_ATTEMPTS) {
+          throw e;
+        }
+        backOff(attempt, e);
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+
+    pageCache.invalidate(key.getKind());
+    return true;
+  }
+
+  /**
+   * Writes out anything left in the write buffer before the servlet is taken out of service.
+   **/
+  @Override
+  public void destroy() {
+    if (batchedWriter != null) {
+      batchedWriter.flush();
+    }
   }
 
   /**
    * Function that implements a general usage of retrieving entity in Datastore.
    * Intended to be overloaded by child of DataServlet class.
    * Takes in prevCursorMap that acts as a cursor cache to keep track of previous cursors.
+   * prevCursorMap is shared by concurrent requests and has to be thread-safe, such as a ConcurrentHashMap.
+   *
+   * The query is described by querySpec and has to be one of the queries declared through registerQueries,
+   * otherwise the client gets a 400 rather than a query that Datastore has no index for.
+   * Only the projected properties of querySpec are fetched and sent back to the client for each entity.
+   *
+   * The first pages of every (page size, query) combination are served from pageCache when possible.
+   *
+   * When prefetching is enabled, a page read from Datastore is read together with the page after it,
+   * which is kept in prefetchCache for PREFETCH_TTL_MILLIS so that clicking "next" is served from memory.
+   * App Engine does not let request-less threads call Datastore, so the next page comes from the same
+   * query rather than from a background fetch. A page served from prefetchCache is not prefetched from,
+   * as that would put a synchronous query on the request path of a hit: the page after it is read,
+   * along with the one following it, when the client asks for it.
+   * Prefetches are limited to PREFETCHES_PER_SECOND per instance as every page that is never asked for
+   * doubles the cost of a read; the hit rate is in /comment-cache-stats. Prefetching is off by default.
    **/
-  protected void doGet(HttpServletRequest request, HttpServletResponse response, String entityKind, 
-      String sortKey, int entityLimit, HashMap<String, String> prevCursorMap) throws IOException {
-
-    FetchOptions fetchOptions   = FetchOptions.Builder.withLimit(entityLimit);
-    String currentCursor        = request.getParameter(CURSOR_PARAMETER);
+  protected void doGet(HttpServletRequest request, HttpServletResponse response, QuerySpec querySpec,
+      int entityLimit, Map<String, String> prevCursorMap) throws IOException {
 
-    if (currentCursor != null && !currentCursor.equals(UNDEFINED_STRING)) {
-      fetchOptions.startCursor(Cursor.fromWebSafeString(currentCursor));
+    if (!registeredQueryShapes.contains(querySpec.getIndexShape())) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported query " + querySpec.getIndexShape());
+      return;
     }
 
-    Query query                 = new Query(entityKind).addSort(sortKey, SortDirection.DESCENDING);
-    PreparedQuery preparedQuery = datastore.prepare(query);
+    String currentCursor  = request.getParameter(CURSOR_PARAMETER);
+    if (currentCursor != null && currentCursor.equals(UNDEFINED_STRING)) {
+      currentCursor       = null;
+    }
 
-    QueryResultList<Entity> entities    = preparedQuery.asQueryResultList(fetchOptions);
-    String nextCursorString             = entities.getCursor().toWebSafeString();
-    String prevCursorString             = prevCursorMap.get(currentCursor);
+    String entityKind           = querySpec.getKind();
+    String pageKey              = PageCache.createPageKey(entityLimit, querySpec.toString(), currentCursor);
+    PageCache.CachedPage page   = pageCache.get(entityKind, pageKey);
 
-    if (currentCursor != null && !currentCursor.equals(UNDEFINED_STRING)) {
-      prevCursorMap.put(nextCursorString, currentCursor);
+    if (page == null && currentCursor != null && isPrefetchEnabled()) {
+      long version  = pageCache.getVersion(entityKind);
+      page          = prefetchCache.take(pageKey, version);
+      if (page != null) {
+        pageCache.put(entityKind, pageKey, version, currentCursor, page.getNextCursor(), page.getJson());
+      }
     }
 
-    HashMap<String, Object> resultMap   = new HashMap<String, Object>();
-    resultMap.put(PREV_CURSOR_PARAMETER, prevCursorString);
-    resultMap.put(NEXT_CURSOR_PARAMETER, nextCursorString);
-    resultMap.put(QUERY_RESULT_PARAMETER, entities);
+    String json;
+    if (page != null) {
+      json = page.getJson();
+      updatePrevCursorMap(prevCursorMap, currentCursor, page.getNextCursor());
+    } else {
+      // Read before the query, so that a page missing a concurrent write is stored under the version it bumped.
+      long version      = pageCache.getVersion(entityKind);
+      boolean prefetch  = isPrefetchEnabled() && getPrefetchRateLimiter().tryAcquire(entityKind);
+
+      List<HashMap<String, Object>> resultMaps  = queryPages(querySpec, entityLimit, currentCursor, prevCursorMap,
+          prefetch);
+      List<String> propertyNames                = querySpec.getPropertyNames();
+
+      HashMap<String, Object> resultMap = resultMaps.get(0);
+      String nextCursorString           = (String) resultMap.get(NEXT_CURSOR_PARAMETER);
+      json                              = Parse.toJson(resultMap, propertyNames);
+      pageCache.put(entityKind, pageKey, version, currentCursor, nextCursorString, json);
 
-    String json = Parse.toJson(resultMap);
+      if (resultMaps.size() > 1) {
+        HashMap<String, Object> nextResultMap = resultMaps.get(1);
+        String nextPageKey  = PageCache.createPageKey(entityLimit, querySpec.toString(), nextCursorString);
+        String nextJson     = Parse.toJson(nextResultMap, propertyNames);
+        prefetchCache.put(nextPageKey, version, (String) nextResultMap.get(NEXT_CURSOR_PARAMETER), nextJson);
+      }
+    }
 
     response.setContentType(RESPONSE_CONTENT_TYPE_JSON);
     response.getWriter().println(json);
   }
 
+  /**
+   * Declares the queries this servlet is going to run through doGet.
+   * Intended to be called by child of DataServlet class from init().
+   *
+   * Fails the servlet start up if one of the queries needs a composite index that is not declared
+   * in WEB-INF/datastore-indexes.xml, so that missing indexes never surface as failing queries at runtime.
+   * The error message contains the index definitions to add.
+   **/
+  protected void registerQueries(Collection<QuerySpec> querySpecs) throws ServletException {
+    Set<String> declaredShapes = new HashSet<String>();
+
+    try (InputStream indexesXml = getServletContext().getResourceAsStream(DATASTORE_INDEXES_PATH)) {
+      if (indexesXml != null) {
+        declaredShapes = DatastoreIndexes.loadShapes(indexesXml);
+      }
+    } catch (IOException e) {
+      throw new ServletException("Could not read " + DATASTORE_INDEXES_PATH, e);
+    }
+
+    List<QuerySpec> missing = DatastoreIndexes.findMissing(querySpecs, declaredShapes);
+    if (!missing.isEmpty()) {
+      throw new ServletException("Missing composite indexes in " + DATASTORE_INDEXES_PATH + ":\n"
+          + DatastoreIndexes.toXml(missing));
+    }
+
+    for (QuerySpec querySpec : querySpecs) {
+      registeredQueryShapes.add(querySpec.getIndexShape());
+    }
+  }
+
+  /**
+   * Utility function to get a number that changes whenever an entity of entityKind is stored, updated or deleted
+   * through this class, on any instance.
+   **/
+  protected static long getFeedVersion(String entityKind) {
+    return pageCache.getVersion(entityKind);
+  }
+
+  /**
+   * Utility function to expose the hit, miss and staleness counters of the page cache,
+   * along with the counters of prefetched pages when prefetching is enabled.
+   **/
+  protected void getPageCacheStats(HttpServletResponse response) throws IOException {
+    HashMap<String, Object> stats = pageCache.getStats();
+    if (isPrefetchEnabled()) {
+      stats.put("prefetch", prefetchCache.getStats());
+    }
+
+    response.setContentType(RESPONSE_CONTENT_TYPE_JSON);
+    response.getWriter().println(Parse.toJson(stats));
+  }
+
+  /**
+   * Utility function to tell whether doGet prefetches the page after the one it reads.
+   * Set through the sps.prefetch.enabled system property. Protected so that tests can turn it on.
+   **/
+  protected boolean isPrefetchEnabled() {
+    return PREFETCH_ENABLED;
+  }
+
+  /**
+   * Utility function to get the limit on prefetches, shared with /admin/limits.
+   **/
+  private static RateLimiter getPrefetchRateLimiter() {
+    return AdmissionControl.getRateLimiter(PREFETCH_RATE_LIMITER, PREFETCH_BURST, PREFETCHES_PER_SECOND);
+  }
+
+  /**
+   * Utility function to query a page of entities from Datastore, and the page after it when prefetch is set.
+   * Both pages come from a single query: the cursor between them is taken from the result iterator.
+   * The first batch holds every requested entity so that a page takes a single Datastore round trip,
+   * batches are capped at MAX_BATCH_SIZE entities in case callers ask for more.
+   * Returns a map per page holding the entities along with the previous and next cursors.
+   * The next page is only returned if the first one is full.
+   * Equality filtered properties cannot be projected so their values are copied onto the results.
+   **/
+  private List<HashMap<String, Object>> queryPages(QuerySpec querySpec, int entityLimit, String currentCursor,
+      Map<String, String> prevCursorMap, boolean prefetch) {
+
+    int fetchLimit              = prefetch ? entityLimit * 2 : entityLimit;
+    int batchSize               = Math.min(fetchLimit, MAX_BATCH_SIZE);
+    FetchOptions fetchOptions   = FetchOptions.Builder.withLimit(fetchLimit)
+        .prefetchSize(batchSize)
+        .chunkSize(batchSize);
+
+    if (currentCursor != null) {
+      fetchOptions.startCursor(Cursor.fromWebSafeString(currentCursor));
+    }
+
+    PreparedQuery preparedQuery             = datastore.prepare(querySpec.toQuery());
+    QueryResultIterator<Entity> iterator    = preparedQuery.asQueryResultIterator(fetchOptions);
+
+    List<HashMap<String, Object>> resultMaps  = new ArrayList<HashMap<String, Object>>();
+    String pageCursor                         = currentCursor;
+    String prevCursorString                   = currentCursor == null ? null : prevCursorMap.get(currentCursor);
+
+    do {
+      List<Entity> entities = new ArrayList<Entity>();
+      while (entities.size() < entityLimit && iterator.hasNext()) {
+        Entity entity = iterator.next();
+        for (Map.Entry<String, Object> filter : querySpec.getEqualityFilters().entrySet()) {
+          entity.setProperty(filter.getKey(), filter.getValue());
+        }
+        entities.add(entity);
+      }
+
+      String nextCursorString = iterator.getCursor().toWebSafeString();
+      updatePrevCursorMap(prevCursorMap, pageCursor, nextCursorString);
+
+      HashMap<String, Object> resultMap   = new HashMap<String, Object>();
+      resultMap.put(PREV_CURSOR_PARAMETER, prevCursorString);
+      resultMap.put(NEXT_CURSOR_PARAMETER, nextCursorString);
+      resultMap.put(QUERY_RESULT_PARAMETER, entities);
+      resultMaps.add(resultMap);
+
+      if (entities.size() < entityLimit) {
+        break;
+      }
+
+      prevCursorString  = pageCursor;
+      pageCursor        = nextCursorString;
+    } while (prefetch && resultMaps.size() < 2);
+
+    return resultMaps;
+  }
+
+  /**
+   * Utility function to remember that currentCursor is the page before nextCursor.
+   * Nothing is stored for the first page as it has no cursor, nor for the last page as it has no next cursor.
+   **/
+  private void updatePrevCursorMap(Map<String, String> prevCursorMap, String currentCursor,
+      String nextCursor) {
+
+    if (currentCursor != null && nextCursor != null) {
+      prevCursorMap.put(nextCursor, currentCursor);
+    }
+  }
+
   /**
    * Utility function to delete all entity belonging to certain kind.
+   * Entities are read in batches of MAX_BATCH_SIZE, the most a single Datastore call accepts.
+   * Each batch is handed to onBatchDeleted once deleted, holding only the entities that still existed,
+   * so that callers can clean up data derived from it without holding every entity in memory and
+   * without counting an entity twice when deletes run concurrently. Returns the number of deleted entities.
    **/
-  protected void deleteAll(String entityKind) {
-    Query query = new Query(entityKind);
+  protected int deleteAll(String entityKind, Consumer<List<Entity>> onBatchDeleted) {
+    Query query = new Query(entityKind).setKeysOnly();
 
-    DatastoreService datastore  = DatastoreServiceFactory.getDatastoreService();
     PreparedQuery results       = datastore.prepare(query);
+    FetchOptions fetchOptions   = FetchOptions.Builder.withPrefetchSize(MAX_BATCH_SIZE).chunkSize(MAX_BATCH_SIZE);
+
+    int deleted       = 0;
+    List<Key> batch   = new ArrayList<Key>();
+    for (Entity entity : results.asIterable(fetchOptions)) {
+      batch.add(entity.getKey());
+
+      if (batch.size() == MAX_BATCH_SIZE) {
+        deleted += deleteBatch(batch, onBatchDeleted);
+        batch    = new ArrayList<Key>();
+      }
+    }
+
+    deleted += deleteBatch(batch, onBatchDeleted);
+    pageCache.invalidate(entityKind);
+    return deleted;
+  }
+
+  /**
+   * Utility function to delete a batch of entities read by deleteAll and pass the ones that existed on to
+   * onBatchDeleted.
+   **/
+  private int deleteBatch(List<Key> batch, Consumer<List<Entity>> onBatchDeleted) {
+    if (batch.isEmpty()) {
+      return 0;
+    }
 
-    for (Entity entity : results.asIterable()) {
-      datastore.delete(entity.getKey());
+    List<Entity> deleted = new ArrayList<Entity>();
+    for (int start = 0; start < batch.size(); start += MAX_TRANSACTION_GROUPS) {
+      deleted.addAll(deleteExisting(batch.subList(start, Math.min(start + MAX_TRANSACTION_GROUPS, batch.size()))));
+    }
+
+    onBatchDeleted.accept(deleted);
+    return deleted.size();
+  }
+
+  /**
+   * Utility function to delete the entities of keys that still exist, in a single cross-group transaction.
+   * Each entity is its own entity group, hence at most MAX_TRANSACTION_GROUPS keys.
+   * A write to any of those entities aborts the whole transaction, so on contention the keys are deleted with
+   * one transaction each instead, which only retries the entities actually being written.
+   * Of two concurrent deletes of the same entity only one commits, the other one retries and no longer finds it.
+   * Returns the deleted entities.
+   **/
+  private List<Entity> deleteExisting(List<Key> keys) {
+    try {
+      return deleteInTransaction(keys, 1);
+    } catch (ConcurrentModificationException e) {
+      return deleteOneByOne(keys);
+    }
+  }
+
+  /**
+   * Utility function to delete the entities of keys that still exist with one transaction each.
+   **/
+  private List<Entity> deleteOneByOne(List<Key> keys) {
+    List<Entity> deleted = new ArrayList<Entity>();
+    for (Key key : keys) {
+      deleted.addAll(deleteInTransaction(Collections.singletonList(key), MAX_UPDATE_ATTEMPTS));
+    }
+
+    return deleted;
+  }
+
+  /**
+   * Utility function to get and delete the entities of keys that still exist in one transaction,
+   * cross-group if there is more than one key. The transaction is tried up to maxAttempts times,
+   * with a backoff between attempts. Returns the deleted entities.
+   **/
+  private List<Entity> deleteInTransaction(List<Key> keys, int maxAttempts) {
+    TransactionOptions options = TransactionOptions.Builder.withXG(keys.size() > 1);
+    for (int attempt = 1; ; ++attempt) {
+      Transaction transaction = datastore.beginTransaction(options);
+      try {
+        Map<Key, Entity> existing = datastore.get(transaction, keys);
+        datastore.delete(transaction, existing.keySet());
+        transaction.commit();
+        return new ArrayList<Entity>(existing.values());
+      } catch (ConcurrentModificationException e) {
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+        backOff(attempt, e);
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  /**
+   * Utility function to wait before retrying a transaction that failed on contention.
+   * Waits a random time up to RETRY_BACKOFF_MILLIS, doubling with every attempt, so that the transactions
+   * that collided do not retry in lockstep. Gives up with the contention error if the thread is interrupted.
+   **/
+  private static void backOff(int attempt, ConcurrentModificationException contention) {
+    long maxMillis = RETRY_BACKOFF_MILLIS << (attempt - 1);
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(maxMillis + 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw contention;
     }
   }
 
@@ -140,6 +599,38 @@ public class DataServlet extends HttpServlet {
     return parameterValue;
   }
 
+  /**
+   * Utility function to parse parameters that are meant to be long.
+   * Returns -1 if the parameter value is invalid.
+   **/
+  protected long parseLongParameter(HttpServletRequest request, String parameterName) {
+    String parameterValueString = request.getParameter(parameterName);
+
+    long parameterValue;
+    try {
+      parameterValue = Long.parseLong(parameterValueString);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+
+    return parameterValue;
+  }
+
+  /**
+   * Utility function to start storing a new entity.
+   * When the write buffer is enabled, entities from concurrent requests are grouped into batched puts,
+   * the request thread takes part in writing the batch so the entity is stored when this returns.
+   * Otherwise the put is sent through asyncDatastore and this returns right away.
+   **/
+  private Future<Key> storeEntity(Entity newEntity) throws IOException {
+    if (batchedWriter != null) {
+      batchedWriter.put(newEntity);
+      return CompletableFuture.completedFuture(newEntity.getKey());
+    }
+
+    return asyncDatastore.put(newEntity);
+  }
+
   /**
    * Utility function to set the timestamp of entity that are to be stored.
    **/
@@ -150,17 +641,22 @@ public class DataServlet extends HttpServlet {
 
   /**
    * Utility function to set the parameters of entity that are to be stored.
-   * Parameters added are the ones attached to the request.
+   * Parameters added are the ones attached to the request that are declared in the schema,
+   * any other parameter sent by the client is dropped.
    * Note that parameters value are joined with ",".
    * This is to account for input types such as checkboxes that has multiple value.
    **/
-  private void setRequestParameters(Entity newEntity, HttpServletRequest request) {
+  private void setRequestParameters(Entity newEntity, HttpServletRequest request, EntitySchema schema) {
     Enumeration<String> parameterNames = request.getParameterNames();
     while (parameterNames.hasMoreElements()) {
       String parameterName          = parameterNames.nextElement();
+      if (!schema.hasField(parameterName)) {
+        continue;
+      }
+
       String[] parameterValues      = request.getParameterValues(parameterName);
       String joinedParameterValue   = String.join(",", parameterValues);
-      newEntity.setProperty(parameterName, joinedParameterValue);
+      schema.setProperty(newEntity, parameterName, joinedParameterValue);
     }
   }
 
@@ -168,8 +664,9 @@ public class DataServlet extends HttpServlet {
    * Utility function to set extra parameters of entity that are to be stored.
    * This is to account for cases when a child class that inherits DataServlet 
    * would want to attach extra parameters.
+   * Extra parameters have to be declared in the schema like any other property.
    **/
-  private void setExtraParameters(Entity newEntity, HashMap<String, String> extraParameters) {
+  private void setExtraParameters(Entity newEntity, HashMap<String, String> extraParameters, EntitySchema schema) {
     if (extraParameters == null) {
       return;
     }
@@ -177,7 +674,8 @@ public class DataServlet extends HttpServlet {
     for (Map.Entry<String, String> entry : extraParameters.entrySet()) {
       String extraParameter  = entry.getKey();
       String extraValue      = entry.getValue();
-      newEntity.setProperty(extraParameter, extraValue);
+      schema.validate(extraParameter, extraValue);
+      schema.setProperty(newEntity, extraParameter, extraValue);
     }
   }
 }
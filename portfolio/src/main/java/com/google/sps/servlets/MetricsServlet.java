@@ -0,0 +1,39 @@
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.sps.utils.AdmissionControl;
+import com.google.sps.utils.AuthCheck;
+import com.google.sps.utils.Metrics;
+import com.google.sps.utils.Parse;
+
+/**
+ * Servlet class that exposes the latency histograms (/admin/metrics) and the state of the rate and concurrency
+ * limiters (/admin/limits) of this instance as JSON.
+ * Only available to application admins. On the local dev server, tick "Sign in as Administrator" when logging in.
+ **/
+@WebServlet(urlPatterns={"/admin/metrics", "/admin/limits"})
+public class MetricsServlet extends HttpServlet {
+  private static final String RESPONSE_CONTENT_TYPE_JSON   = "application/json; charset=UTF-8";
+  private static final String LIMITS_URL                   = "/admin/limits";
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!AuthCheck.isAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    response.setContentType(RESPONSE_CONTENT_TYPE_JSON);
+
+    if (request.getRequestURI().equals(LIMITS_URL)) {
+      response.getWriter().println(Parse.toJson(AdmissionControl.getSnapshot()));
+      return;
+    }
+
+    response.getWriter().println(Parse.toJson(Metrics.getSnapshot()));
+  }
+}
@@ -0,0 +1,40 @@
+package com.google.sps.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AdmissionControl class intended to be used as a utility class.
+ * Keeps the rate and concurrency limiters of this instance by name so that their state can be inspected
+ * from /admin/limits. The settings of a limiter are the ones given the first time its name is requested.
+ **/
+public class AdmissionControl {
+  private static final ConcurrentHashMap<String, RateLimiter> rateLimiters =
+      new ConcurrentHashMap<String, RateLimiter>();
+  private static final ConcurrentHashMap<String, ConcurrencyLimiter> concurrencyLimiters =
+      new ConcurrentHashMap<String, ConcurrencyLimiter>();
+
+  public static RateLimiter getRateLimiter(String name, double capacity, double refillPerSecond) {
+    return rateLimiters.computeIfAbsent(name, key -> new RateLimiter(capacity, refillPerSecond));
+  }
+
+  public static ConcurrencyLimiter getConcurrencyLimiter(String name, int maxConcurrent, long maxWaitMillis) {
+    return concurrencyLimiters.computeIfAbsent(name, key -> new ConcurrencyLimiter(maxConcurrent, maxWaitMillis));
+  }
+
+  /**
+   * Returns the state of every limiter, sorted by name.
+   **/
+  public static TreeMap<String, Map<String, Object>> getSnapshot() {
+    TreeMap<String, Map<String, Object>> snapshot = new TreeMap<String, Map<String, Object>>();
+    for (Map.Entry<String, RateLimiter> entry : rateLimiters.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().getSnapshot());
+    }
+    for (Map.Entry<String, ConcurrencyLimiter> entry : concurrencyLimiters.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().getSnapshot());
+    }
+
+    return snapshot;
+  }
+}
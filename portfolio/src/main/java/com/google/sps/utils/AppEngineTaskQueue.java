@@ -0,0 +1,89 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * TaskQueue backed by an App Engine push queue.
+ *
+ * Every task is a POST to handlerUrl with the task parameters as request parameters.
+ * Concurrency, rate and back off between retries are configured for the queue in WEB-INF/queue.xml.
+ * The servlet behind handlerUrl should pass the request to runTask(), which takes care of dead-lettering.
+ **/
+public class AppEngineTaskQueue implements TaskQueue {
+  private static final String QUEUE_NAME_HEADER   = "X-AppEngine-QueueName";
+  private static final String RETRY_COUNT_HEADER  = "X-AppEngine-TaskRetryCount";
+
+  private final String queueName;
+  private final String handlerUrl;
+
+  public AppEngineTaskQueue(String queueName, String handlerUrl) {
+    this.queueName  = queueName;
+    this.handlerUrl = handlerUrl;
+  }
+
+  /**
+   * Adds every task in a single queue call.
+   **/
+  @Override
+  public void enqueue(List<HashMap<String, String>> tasks) {
+    List<TaskOptions> taskOptions = new ArrayList<TaskOptions>();
+    for (HashMap<String, String> parameters : tasks) {
+      TaskOptions options = TaskOptions.Builder.withUrl(handlerUrl).method(TaskOptions.Method.POST);
+      for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+        options.param(parameter.getKey(), parameter.getValue());
+      }
+      taskOptions.add(options);
+    }
+
+    Queue queue = QueueFactory.getQueue(queueName);
+    queue.add(taskOptions);
+  }
+
+  /**
+   * Runs the task sent by the push queue with handler.
+   *
+   * A failed attempt responds with 500 so that the queue retries it later, except for the last of
+   * maxAttempts attempts which is dead-lettered and acknowledged instead.
+   * Requests that do not come from the task queue get a 403, App Engine removes the queue headers
+   * from external requests.
+   **/
+  public static void runTask(HttpServletRequest request, HttpServletResponse response, TaskHandler handler,
+      int maxAttempts) throws IOException {
+
+    if (request.getHeader(QUEUE_NAME_HEADER) == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    Enumeration<String> parameterNames = request.getParameterNames();
+    while (parameterNames.hasMoreElements()) {
+      String parameterName = parameterNames.nextElement();
+      parameters.put(parameterName, request.getParameter(parameterName));
+    }
+
+    String retryCount = request.getHeader(RETRY_COUNT_HEADER);
+    int attempt       = retryCount == null ? 1 : Integer.parseInt(retryCount) + 1;
+
+    try {
+      handler.handle(parameters);
+    } catch (Exception e) {
+      if (attempt < maxAttempts) {
+        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+        return;
+      }
+
+      handler.deadLetter(parameters, e);
+    }
+  }
+}
@@ -39,19 +39,46 @@ public class AuthCheck {
     return userService.getCurrentUser().getEmail();
   }
 
-  public static boolean isGoogleEmail() {
+  public static boolean isAdmin() {
     if (!isLoggedIn()) {
       return false;
     }
 
-    return getEmail().contains(GOOGLE_EMAIL_DOMAIN);
+    UserService userService = UserServiceFactory.getUserService();
+    return userService.isUserAdmin();
+  }
+
+  public static boolean isGoogleEmail() {
+    long start = System.nanoTime();
+    try {
+      return hasGoogleEmail();
+    } finally {
+      Metrics.recordSince("AuthCheck.isGoogleEmail", start);
+    }
   }
 
   public static String getLdap() {
-    if (!isGoogleEmail()) {
-      return null;
+    long start = System.nanoTime();
+    try {
+      if (!hasGoogleEmail()) {
+        return null;
+      }
+
+      return getEmail().replace(GOOGLE_EMAIL_DOMAIN, "");
+    } finally {
+      Metrics.recordSince("AuthCheck.getLdap", start);
     }
+  }
 
-    return getEmail().replace(GOOGLE_EMAIL_DOMAIN, "");
+  /**
+   * Untimed check shared by isGoogleEmail() and getLdap(), so that a call to getLdap()
+   * is not also recorded as a call to isGoogleEmail().
+   **/
+  private static boolean hasGoogleEmail() {
+    if (!isLoggedIn()) {
+      return false;
+    }
+
+    return getEmail().contains(GOOGLE_EMAIL_DOMAIN);
   }
 }
@@ -0,0 +1,193 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write buffer that groups entities stored by concurrent requests into batched Datastore puts.
+ *
+ * Entities are added to a bounded queue and one of the waiting request threads drains it with a single
+ * put(Iterable<Entity>) call while the others wait for their entity to be written.
+ * Flushing is done by request threads rather than a background thread as App Engine API calls
+ * are only allowed from threads that belong to a request.
+ *
+ * put() only returns once the entity is stored so that clients can read their own writes.
+ * If the queue stays full for longer than offerTimeoutMillis, put() fails instead of piling up requests.
+ * A batch that fails is written again one entity at a time, so that one bad entity only fails its own put().
+ **/
+public class BatchedWriter {
+  private final AsyncDatastoreService datastore;
+  private final BlockingQueue<PendingWrite> queue;
+  private final int maxBatchSize;
+  private final long offerTimeoutMillis;
+  private boolean flushing;
+
+  public BatchedWriter(AsyncDatastoreService datastore, int capacity, int maxBatchSize, long offerTimeoutMillis) {
+    this.datastore          = datastore;
+    this.queue              = new ArrayBlockingQueue<PendingWrite>(capacity);
+    this.maxBatchSize       = maxBatchSize;
+    this.offerTimeoutMillis = offerTimeoutMillis;
+  }
+
+  /**
+   * Entity waiting in the queue together with the future completed once it is stored.
+   **/
+  private static class PendingWrite {
+    private final Entity entity;
+    private final CompletableFuture<Void> written;
+
+    private PendingWrite(Entity entity) {
+      this.entity   = entity;
+      this.written  = new CompletableFuture<Void>();
+    }
+  }
+
+  /**
+   * Stores an entity as part of the next batch and waits until the batch is written.
+   **/
+  public void put(Entity entity) throws IOException {
+    PendingWrite pendingWrite = new PendingWrite(entity);
+
+    try {
+      if (!queue.offer(pendingWrite, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new IOException("Datastore write queue is full");
+      }
+
+      awaitWrite(pendingWrite);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for Datastore write", e);
+    }
+  }
+
+  /**
+   * Writes every queued entity. Should be called when the application shuts down.
+   **/
+  public void flush() {
+    try {
+      startFlushing(null);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    try {
+      while (!queue.isEmpty()) {
+        flushBatch();
+      }
+    } finally {
+      stopFlushing();
+    }
+  }
+
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * Utility function to wait for a pending write.
+   * Threads wait while another one is flushing and are woken up when it is done. Whichever waiting thread
+   * is not written yet then flushes the next batch, so a queued entity is never left behind.
+   **/
+  private void awaitWrite(PendingWrite pendingWrite) throws IOException, InterruptedException {
+    while (startFlushing(pendingWrite)) {
+      try {
+        flushBatch();
+      } finally {
+        stopFlushing();
+      }
+    }
+
+    try {
+      pendingWrite.written.get();
+    } catch (ExecutionException e) {
+      throw new IOException("Batched Datastore write failed", e.getCause());
+    }
+  }
+
+  /**
+   * Utility function to wait until no other thread is flushing and take over.
+   * Returns false instead if pendingWrite got written in the meantime.
+   **/
+  private synchronized boolean startFlushing(PendingWrite pendingWrite) throws InterruptedException {
+    while (flushing && (pendingWrite == null || !pendingWrite.written.isDone())) {
+      wait();
+    }
+
+    if (pendingWrite != null && pendingWrite.written.isDone()) {
+      return false;
+    }
+
+    flushing = true;
+    return true;
+  }
+
+  private synchronized void stopFlushing() {
+    flushing = false;
+    notifyAll();
+  }
+
+  /**
+   * Utility function to write up to maxBatchSize queued entities with a single put call.
+   * Must be called between startFlushing() and stopFlushing().
+   **/
+  private void flushBatch() {
+    List<PendingWrite> batch = new ArrayList<PendingWrite>();
+    queue.drainTo(batch, maxBatchSize);
+
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    List<Entity> entities = new ArrayList<Entity>();
+    for (PendingWrite pendingWrite : batch) {
+      entities.add(pendingWrite.entity);
+    }
+
+    try {
+      datastore.put(entities).get();
+      for (PendingWrite pendingWrite : batch) {
+        pendingWrite.written.complete(null);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failBatch(batch, e);
+    } catch (ExecutionException | RuntimeException e) {
+      writeOneByOne(batch);
+    }
+  }
+
+  /**
+   * Utility function to write the entities of a failed batch with one put call each,
+   * so that only the puts of the entities Datastore rejects fail.
+   **/
+  private void writeOneByOne(List<PendingWrite> batch) {
+    for (PendingWrite pendingWrite : batch) {
+      try {
+        datastore.put(pendingWrite.entity).get();
+        pendingWrite.written.complete(null);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        pendingWrite.written.completeExceptionally(e);
+      } catch (ExecutionException e) {
+        pendingWrite.written.completeExceptionally(e.getCause());
+      } catch (RuntimeException e) {
+        pendingWrite.written.completeExceptionally(e);
+      }
+    }
+  }
+
+  private void failBatch(List<PendingWrite> batch, Throwable cause) {
+    for (PendingWrite pendingWrite : batch) {
+      pendingWrite.written.completeExceptionally(cause);
+    }
+  }
+}
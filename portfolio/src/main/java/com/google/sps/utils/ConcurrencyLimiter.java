@@ -0,0 +1,72 @@
+package com.google.sps.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounds how many callers run an operation at the same time on this instance.
+ *
+ * Callers over the limit wait in arrival order for up to maxWaitMillis and are then rejected with
+ * a RejectedExecutionException, so a slow dependency cannot hold every request thread.
+ **/
+public class ConcurrencyLimiter {
+  private final int maxConcurrent;
+  private final long maxWaitMillis;
+  private final Semaphore permits;
+  private final AtomicLong admittedCount;
+  private final AtomicLong rejectedCount;
+
+  public ConcurrencyLimiter(int maxConcurrent, long maxWaitMillis) {
+    this.maxConcurrent  = maxConcurrent;
+    this.maxWaitMillis  = maxWaitMillis;
+    this.permits        = new Semaphore(maxConcurrent, true);
+    this.admittedCount  = new AtomicLong();
+    this.rejectedCount  = new AtomicLong();
+  }
+
+  /**
+   * Runs operation once a permit is available and returns its result.
+   * Throws RejectedExecutionException if no permit became available within maxWaitMillis.
+   **/
+  public <T> T call(Supplier<T> operation) {
+    boolean acquired;
+    try {
+      acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      acquired = false;
+    }
+
+    if (!acquired) {
+      rejectedCount.incrementAndGet();
+      throw new RejectedExecutionException(
+          "More than " + maxConcurrent + " concurrent calls for " + maxWaitMillis + " ms");
+    }
+
+    admittedCount.incrementAndGet();
+    try {
+      return operation.get();
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Returns the settings of this limiter, the number of running and waiting callers and its counters.
+   **/
+  public Map<String, Object> getSnapshot() {
+    LinkedHashMap<String, Object> snapshot = new LinkedHashMap<String, Object>();
+    snapshot.put("max-concurrent", maxConcurrent);
+    snapshot.put("max-wait-millis", maxWaitMillis);
+    snapshot.put("running", maxConcurrent - permits.availablePermits());
+    snapshot.put("waiting", permits.getQueueLength());
+    snapshot.put("admitted", admittedCount.get());
+    snapshot.put("rejected", rejectedCount.get());
+    return snapshot;
+  }
+}
@@ -0,0 +1,98 @@
+package com.google.sps.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Utility class that reads and generates datastore-indexes.xml.
+ * Indexes are compared through the shapes produced by QuerySpec.getIndexShape().
+ **/
+public class DatastoreIndexes {
+  private static final String INDEX_TAG           = "datastore-index";
+  private static final String PROPERTY_TAG        = "property";
+  private static final String KIND_ATTRIBUTE      = "kind";
+  private static final String NAME_ATTRIBUTE      = "name";
+  private static final String DIRECTION_ATTRIBUTE = "direction";
+  private static final String DEFAULT_DIRECTION   = "asc";
+
+  /**
+   * Reads the shapes of every index declared in a datastore-indexes.xml file.
+   **/
+  public static Set<String> loadShapes(InputStream xml) throws IOException {
+    Document document;
+    try {
+      document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xml);
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Invalid datastore-indexes.xml", e);
+    }
+
+    Set<String> shapes  = new HashSet<String>();
+    NodeList indexes    = document.getElementsByTagName(INDEX_TAG);
+
+    for (int i = 0; i < indexes.getLength(); ++i) {
+      Element index           = (Element) indexes.item(i);
+      NodeList propertyNodes  = index.getElementsByTagName(PROPERTY_TAG);
+      List<String> properties = new ArrayList<String>();
+
+      for (int j = 0; j < propertyNodes.getLength(); ++j) {
+        Element property  = (Element) propertyNodes.item(j);
+        String direction  = property.getAttribute(DIRECTION_ATTRIBUTE);
+        properties.add(property.getAttribute(NAME_ATTRIBUTE) + " "
+            + (direction.isEmpty() ? DEFAULT_DIRECTION : direction));
+      }
+
+      shapes.add(index.getAttribute(KIND_ATTRIBUTE) + ":" + String.join(",", properties));
+    }
+
+    return shapes;
+  }
+
+  /**
+   * Returns the queries whose composite index is not part of the declared shapes.
+   **/
+  public static List<QuerySpec> findMissing(Collection<QuerySpec> querySpecs, Set<String> declaredShapes) {
+    List<QuerySpec> missing = new ArrayList<QuerySpec>();
+
+    for (QuerySpec querySpec : querySpecs) {
+      if (querySpec.needsCompositeIndex() && !declaredShapes.contains(querySpec.getIndexShape())) {
+        missing.add(querySpec);
+      }
+    }
+
+    return missing;
+  }
+
+  /**
+   * Generates the content of a datastore-indexes.xml file covering every given query.
+   **/
+  public static String toXml(Collection<QuerySpec> querySpecs) {
+    LinkedHashMap<String, String> indexXml = new LinkedHashMap<String, String>();
+    for (QuerySpec querySpec : querySpecs) {
+      if (querySpec.needsCompositeIndex()) {
+        indexXml.putIfAbsent(querySpec.getIndexShape(), querySpec.toIndexXml());
+      }
+    }
+
+    StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+    xml.append("<datastore-indexes autoGenerate=\"true\">\n");
+    for (String index : indexXml.values()) {
+      xml.append(index);
+    }
+    xml.append("</datastore-indexes>\n");
+
+    return xml.toString();
+  }
+}
@@ -0,0 +1,71 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Gson adapter that serializes a Datastore Entity as a flat JSON object.
+ * Only the properties listed in propertyNames are written, in that order, and properties the entity
+ * does not have are skipped. Values are streamed straight to the writer, without building a JSON tree.
+ *
+ * This is used instead of letting Gson reflect over Entity, which would also serialize
+ * the key, app id, property map wrappers and every stored property that the client never reads.
+ **/
+public class EntityAdapter extends TypeAdapter<Entity> {
+  private final List<String> propertyNames;
+
+  public EntityAdapter(List<String> propertyNames) {
+    this.propertyNames = propertyNames;
+  }
+
+  @Override
+  public void write(JsonWriter writer, Entity entity) throws IOException {
+    if (entity == null) {
+      writer.nullValue();
+      return;
+    }
+
+    writer.beginObject();
+    for (String propertyName : propertyNames) {
+      if (!entity.hasProperty(propertyName)) {
+        continue;
+      }
+
+      writer.name(propertyName);
+      writeValue(writer, entity.getProperty(propertyName));
+    }
+    writer.endObject();
+  }
+
+  /**
+   * Entities are only ever sent to the client, never parsed back from JSON.
+   **/
+  @Override
+  public Entity read(JsonReader reader) throws IOException {
+    throw new UnsupportedOperationException("EntityAdapter only supports serialization");
+  }
+
+  /**
+   * Utility function to write a single property value.
+   * Text is unwrapped to its String value and anything that is not a String, Number or Boolean
+   * falls back to its String representation.
+   **/
+  private void writeValue(JsonWriter writer, Object value) throws IOException {
+    if (value == null) {
+      writer.nullValue();
+    } else if (value instanceof Text) {
+      writer.value(((Text) value).getValue());
+    } else if (value instanceof Number) {
+      writer.value((Number) value);
+    } else if (value instanceof Boolean) {
+      writer.value((Boolean) value);
+    } else {
+      writer.value(value.toString());
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Declarative description of the properties an entity kind is allowed to store.
+ * Each field declares its type, its maximum length (in characters) and whether it is indexed.
+ * Required fields must be set to a value that is not blank.
+ *
+ * Properties that are not declared are never stored, which keeps clients from persisting
+ * and indexing arbitrary request parameters. Values that do not fit their field are rejected
+ * with an IllegalArgumentException.
+ **/
+public class EntitySchema {
+  private static final int MAX_INDEXED_STRING_BYTES = 1500;
+
+  /**
+   * TEXT fields are stored as Text, which is never indexed and has no size limit other than the entity size.
+   **/
+  public enum FieldType {
+    STRING, LONG, TEXT
+  }
+
+  private static class Field {
+    private final FieldType type;
+    private final int maxLength;
+    private final boolean indexed;
+    private final boolean required;
+
+    private Field(FieldType type, int maxLength, boolean indexed, boolean required) {
+      this.type       = type;
+      this.maxLength  = maxLength;
+      this.indexed    = indexed;
+      this.required   = required;
+    }
+  }
+
+  private final LinkedHashMap<String, Field> fields;
+
+  public EntitySchema() {
+    this.fields = new LinkedHashMap<String, Field>();
+  }
+
+  /**
+   * Declares a new field. Returns the schema itself so that fields can be chained.
+   **/
+  public EntitySchema addField(String name, FieldType type, int maxLength, boolean indexed) {
+    return addField(name, new Field(type, maxLength, indexed, false));
+  }
+
+  /**
+   * Declares a new field that every entity must have. Returns the schema itself so that fields can be chained.
+   **/
+  public EntitySchema addRequiredField(String name, FieldType type, int maxLength, boolean indexed) {
+    return addField(name, new Field(type, maxLength, indexed, true));
+  }
+
+  private EntitySchema addField(String name, Field field) {
+    if (field.type == FieldType.TEXT && field.indexed) {
+      throw new IllegalArgumentException("TEXT field " + name + " cannot be indexed");
+    }
+
+    fields.put(name, field);
+    return this;
+  }
+
+  public boolean hasField(String name) {
+    return fields.containsKey(name);
+  }
+
+  /**
+   * Checks that a value fits the declared field.
+   * Throws an IllegalArgumentException describing the problem otherwise.
+   **/
+  public void validate(String name, String value) {
+    Field field = fields.get(name);
+
+    if (field == null) {
+      throw new IllegalArgumentException("Unknown field " + name);
+    }
+
+    if (value == null || value.trim().isEmpty()) {
+      if (field.required) {
+        throw new IllegalArgumentException(name + " is required");
+      }
+      if (value == null) {
+        return;
+      }
+    }
+
+    if (value.length() > field.maxLength) {
+      throw new IllegalArgumentException(name + " is longer than " + field.maxLength + " characters");
+    }
+
+    if (field.type == FieldType.LONG) {
+      Long.parseLong(value);
+    }
+
+    if (field.type == FieldType.STRING && field.indexed
+        && value.getBytes(StandardCharsets.UTF_8).length > MAX_INDEXED_STRING_BYTES) {
+      throw new IllegalArgumentException(name + " is longer than " + MAX_INDEXED_STRING_BYTES + " bytes");
+    }
+  }
+
+  /**
+   * Checks that the entity has every required field.
+   * Throws an IllegalArgumentException naming the first missing one otherwise.
+   **/
+  public void checkRequiredFields(Entity entity) {
+    for (Map.Entry<String, Field> field : fields.entrySet()) {
+      if (field.getValue().required && !entity.hasProperty(field.getKey())) {
+        throw new IllegalArgumentException(field.getKey() + " is required");
+      }
+    }
+  }
+
+  /**
+   * Sets a property on the entity according to its declared field.
+   * Properties that are not part of the schema are ignored.
+   **/
+  public void setProperty(Entity entity, String name, String value) {
+    if (!hasField(name)) {
+      return;
+    }
+
+    validate(name, value);
+    Field field = fields.get(name);
+
+    Object propertyValue = value;
+    if (value != null && field.type == FieldType.LONG) {
+      propertyValue = Long.parseLong(value);
+    }
+    if (value != null && field.type == FieldType.TEXT) {
+      propertyValue = new Text(value);
+    }
+
+    if (field.indexed) {
+      entity.setProperty(name, propertyValue);
+    } else {
+      entity.setUnindexedProperty(name, propertyValue);
+    }
+  }
+}
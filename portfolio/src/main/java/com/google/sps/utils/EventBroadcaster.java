@@ -0,0 +1,118 @@
+package com.google.sps.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process fan-out of events to subscribers, such as open Server-Sent Events streams.
+ *
+ * Every subscriber has its own bounded buffer. publish() never blocks on a subscriber:
+ * a subscriber whose buffer is full is marked as overflowed and receives no more events,
+ * its owner is expected to close it so that the client reconnects and resynchronizes.
+ *
+ * Events only reach subscribers of the same instance.
+ **/
+public class EventBroadcaster {
+  private final CopyOnWriteArraySet<Subscriber> subscribers;
+  private final AtomicLong lastEventId;
+
+  public EventBroadcaster() {
+    this.subscribers  = new CopyOnWriteArraySet<Subscriber>();
+    this.lastEventId  = new AtomicLong();
+  }
+
+  /**
+   * Event as sent to subscribers. Ids increase with every published event of this broadcaster.
+   **/
+  public static class Event {
+    private final long id;
+    private final String type;
+    private final String data;
+
+    private Event(long id, String type, String data) {
+      this.id   = id;
+      this.type = type;
+      this.data = data;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public String getData() {
+      return data;
+    }
+  }
+
+  /**
+   * Subscription holding the events that were published but not taken yet.
+   * listener is run after every event added to the buffer and when the buffer overflows,
+   * it should take the events from another thread rather than do slow work itself.
+   **/
+  public static class Subscriber {
+    private final BlockingQueue<Event> buffer;
+    private final Runnable listener;
+    private volatile boolean overflowed;
+
+    private Subscriber(int capacity, Runnable listener) {
+      this.buffer   = new ArrayBlockingQueue<Event>(capacity);
+      this.listener = listener;
+    }
+
+    /**
+     * Removes and returns every buffered event, oldest first.
+     **/
+    public List<Event> takeEvents() {
+      List<Event> events = new ArrayList<Event>();
+      buffer.drainTo(events);
+      return events;
+    }
+
+    public boolean isOverflowed() {
+      return overflowed;
+    }
+
+    private void offer(Event event) {
+      if (overflowed) {
+        return;
+      }
+
+      if (!buffer.offer(event)) {
+        overflowed = true;
+      }
+      listener.run();
+    }
+  }
+
+  public Subscriber subscribe(int bufferCapacity, Runnable listener) {
+    Subscriber subscriber = new Subscriber(bufferCapacity, listener);
+    subscribers.add(subscriber);
+    return subscriber;
+  }
+
+  public void unsubscribe(Subscriber subscriber) {
+    subscribers.remove(subscriber);
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * Sends an event to every current subscriber.
+   **/
+  public void publish(String type, String data) {
+    Event event = new Event(lastEventId.incrementAndGet(), type, data);
+    for (Subscriber subscriber : subscribers) {
+      subscriber.offer(event);
+    }
+  }
+}
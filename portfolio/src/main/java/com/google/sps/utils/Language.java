@@ -8,13 +8,29 @@ import com.google.cloud.translate.Translation;
 /**
  * Language class intended to be used as a utility class.
  * Provides common functions related to language such as translation
+ *
+ * At most MAX_CONCURRENT_TRANSLATIONS translations run at once on an instance, further callers wait up to
+ * MAX_TRANSLATION_WAIT_MILLIS and then fail with a RejectedExecutionException.
+ * This bounds the translation spend and keeps a burst of translations from holding every request thread.
  **/
 public class Language {
+  private static final int MAX_CONCURRENT_TRANSLATIONS      = 4;
+  private static final long MAX_TRANSLATION_WAIT_MILLIS     = 10000;
+  private static final ConcurrencyLimiter translationLimiter = AdmissionControl.getConcurrencyLimiter(
+      "Language.translate", MAX_CONCURRENT_TRANSLATIONS, MAX_TRANSLATION_WAIT_MILLIS);
+
   public static String translate(String originalText, String languageCode) {
-    Translate translate = TranslateOptions.getDefaultInstance().getService();
-    Translation translation =
-      translate.translate(originalText, Translate.TranslateOption.targetLanguage(languageCode));
+    return translationLimiter.call(() -> {
+      long start = System.nanoTime();
+      try {
+        Translate translate = TranslateOptions.getDefaultInstance().getService();
+        Translation translation =
+          translate.translate(originalText, Translate.TranslateOption.targetLanguage(languageCode));
 
-    return translation.getTranslatedText();
+        return translation.getTranslatedText();
+      } finally {
+        Metrics.recordSince("Language.translate", start);
+      }
+    });
   }
 }
@@ -0,0 +1,116 @@
+package com.google.sps.utils;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Latencies are recorded in microseconds. Every power of two range is split into SUB_BUCKETS
+ * equally sized buckets, so any reported percentile is within 1 / SUB_BUCKETS (about 6%) of the real value
+ * while the whole histogram only needs a few hundred counters.
+ **/
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS  = 4;
+  private static final int SUB_BUCKETS      = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT     = 40;
+  private static final int BUCKETS          = (MAX_EXPONENT + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final AtomicLong totalCount;
+  private final AtomicLong totalMicros;
+  private final AtomicLong maxMicros;
+
+  public LatencyHistogram() {
+    this.counts       = new AtomicLongArray(BUCKETS);
+    this.totalCount   = new AtomicLong();
+    this.totalMicros  = new AtomicLong();
+    this.maxMicros    = new AtomicLong();
+  }
+
+  public void recordNanos(long nanos) {
+    recordMicros(nanos / 1000);
+  }
+
+  public void recordMicros(long micros) {
+    long value = Math.max(micros, 0);
+
+    counts.incrementAndGet(getBucketIndex(value));
+    totalCount.incrementAndGet();
+    totalMicros.addAndGet(value);
+    maxMicros.accumulateAndGet(value, Math::max);
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  /**
+   * Returns the latency in microseconds under which the given percentage of recorded values fall.
+   * The returned value is the upper bound of the bucket holding that percentile.
+   **/
+  public long getPercentileMicros(double percentile) {
+    long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank       = Math.max(1, (long) Math.ceil(count * percentile / 100));
+    long seenCount  = 0;
+
+    for (int index = 0; index < BUCKETS; ++index) {
+      seenCount += counts.get(index);
+      if (seenCount >= rank) {
+        return Math.min(getBucketUpperBound(index), maxMicros.get());
+      }
+    }
+
+    return maxMicros.get();
+  }
+
+  /**
+   * Returns count, mean, percentiles and max, all latencies in microseconds.
+   **/
+  public LinkedHashMap<String, Long> getSummary() {
+    long count = totalCount.get();
+
+    LinkedHashMap<String, Long> summary = new LinkedHashMap<String, Long>();
+    summary.put("count", count);
+    summary.put("mean-us", count == 0 ? 0 : totalMicros.get() / count);
+    summary.put("p50-us", getPercentileMicros(50));
+    summary.put("p90-us", getPercentileMicros(90));
+    summary.put("p99-us", getPercentileMicros(99));
+    summary.put("p999-us", getPercentileMicros(99.9));
+    summary.put("max-us", maxMicros.get());
+    return summary;
+  }
+
+  /**
+   * Utility function to find the bucket of a value.
+   * Values below SUB_BUCKETS get a bucket each, larger values share a bucket with the values
+   * that have the same exponent and the same SUB_BUCKET_BITS most significant bits.
+   **/
+  private static int getBucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    int exponent    = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT + SUB_BUCKET_BITS - 1);
+    int shift       = exponent - SUB_BUCKET_BITS;
+    int subBucket   = (int) Math.min((value >>> shift) - SUB_BUCKETS, SUB_BUCKETS - 1);
+    int index       = (shift + 1) * SUB_BUCKETS + subBucket;
+
+    return Math.min(index, BUCKETS - 1);
+  }
+
+  private static long getBucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+
+    int shift     = index / SUB_BUCKETS - 1;
+    int subBucket = index % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+}
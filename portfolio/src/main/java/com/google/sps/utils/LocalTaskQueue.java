@@ -0,0 +1,118 @@
+package com.google.sps.utils;
+
+import com.google.apphosting.api.ApiProxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process TaskQueue running tasks on a fixed number of threads, meant for tests and local runs.
+ *
+ * Failed tasks are retried after initialBackoffMillis, doubling with every attempt up to maxBackoffMillis,
+ * and dead-lettered after maxAttempts attempts. This mirrors the retry parameters of the push queue.
+ *
+ * Worker threads run with the App Engine API environment of the thread that enqueued the task,
+ * which is what the local service stubs need. On App Engine use AppEngineTaskQueue instead,
+ * request-less threads cannot call App Engine APIs there.
+ **/
+public class LocalTaskQueue implements TaskQueue {
+  private final TaskHandler handler;
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final ScheduledExecutorService executor;
+  private final Object idleLock;
+  private int pendingTasks;
+
+  public LocalTaskQueue(TaskHandler handler, int concurrency, int maxAttempts, long initialBackoffMillis,
+      long maxBackoffMillis) {
+
+    this.handler              = handler;
+    this.maxAttempts          = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis     = maxBackoffMillis;
+    this.executor             = new ScheduledThreadPoolExecutor(concurrency);
+    this.idleLock             = new Object();
+  }
+
+  @Override
+  public void enqueue(List<HashMap<String, String>> tasks) {
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+
+    synchronized (idleLock) {
+      pendingTasks += tasks.size();
+    }
+
+    for (HashMap<String, String> parameters : tasks) {
+      schedule(parameters, 1, 0, environment);
+    }
+  }
+
+  /**
+   * Waits until every enqueued task succeeded or was dead-lettered.
+   * Returns false if that did not happen within timeoutMillis.
+   **/
+  public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+
+    synchronized (idleLock) {
+      while (pendingTasks > 0) {
+        long remainingMillis = deadline - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+          return false;
+        }
+        idleLock.wait(remainingMillis);
+      }
+    }
+
+    return true;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private void schedule(HashMap<String, String> parameters, int attempt, long delayMillis,
+      ApiProxy.Environment environment) {
+
+    executor.schedule(() -> run(parameters, attempt, environment), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void run(HashMap<String, String> parameters, int attempt, ApiProxy.Environment environment) {
+    ApiProxy.setEnvironmentForCurrentThread(environment);
+    try {
+      handler.handle(parameters);
+      finishTask();
+    } catch (Exception e) {
+      if (attempt < maxAttempts) {
+        schedule(parameters, attempt + 1, getBackoffMillis(attempt), environment);
+        return;
+      }
+
+      try {
+        handler.deadLetter(parameters, e);
+      } finally {
+        finishTask();
+      }
+    } finally {
+      ApiProxy.setEnvironmentForCurrentThread(null);
+    }
+  }
+
+  /**
+   * Utility function to compute the delay before the attempt following attempt.
+   **/
+  private long getBackoffMillis(int attempt) {
+    long backoffMillis = initialBackoffMillis << Math.min(attempt - 1, 30);
+    return Math.min(backoffMillis, maxBackoffMillis);
+  }
+
+  private void finishTask() {
+    synchronized (idleLock) {
+      --pendingTasks;
+      idleLock.notifyAll();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.google.sps.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics class intended to be used as a utility class.
+ * Keeps one LatencyHistogram per operation name for the lifetime of the instance.
+ *
+ * Operations are timed by taking System.nanoTime() before the operation and passing it to recordSince:
+ *   long start = System.nanoTime();
+ *   ...
+ *   Metrics.recordSince("Language.translate", start);
+ **/
+public class Metrics {
+  private static final ConcurrentHashMap<String, LatencyHistogram> histograms =
+      new ConcurrentHashMap<String, LatencyHistogram>();
+
+  public static void recordSince(String name, long startNanos) {
+    getHistogram(name).recordNanos(System.nanoTime() - startNanos);
+  }
+
+  public static LatencyHistogram getHistogram(String name) {
+    return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+  }
+
+  /**
+   * Returns the summary of every histogram, sorted by operation name.
+   **/
+  public static TreeMap<String, Map<String, Long>> getSnapshot() {
+    TreeMap<String, Map<String, Long>> snapshot = new TreeMap<String, Map<String, Long>>();
+    for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().getSummary());
+    }
+
+    return snapshot;
+  }
+}
@@ -0,0 +1,252 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.apphosting.api.ApiProxy;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache for the first few pages of a Datastore backed feed.
+ * Pages are stored in Memcache when running on App Engine (or with the local dev server stubs)
+ * and in a bounded in-process map otherwise.
+ *
+ * Every namespace (usually the entity kind) has a version number that is stored next to the pages.
+ * Bumping the version through invalidate() makes every cached page of that namespace stale,
+ * which means writers never have to know which pages they affected.
+ * A missing version is started from the current time in milliseconds rather than from 0, so that a version
+ * evicted from the cache never comes back to a value older pages were stored under, as long as a namespace
+ * averages fewer than one invalidation per millisecond.
+ *
+ * Only the first maxCachedPages pages of a feed are cached. The page number of a cursor is only known
+ * if the previous page was cached, so deep pages reached through an uncached page are never cached.
+ **/
+public class PageCache {
+  private static final String VERSION_KEY_PREFIX      = "page-cache-version|";
+  private static final String PAGE_KEY_PREFIX         = "page-cache-page|";
+  private static final String PAGE_NUMBER_KEY_PREFIX  = "page-cache-page-number|";
+  private static final String KEY_SEPARATOR           = "|";
+  private static final int EXPIRATION_SECONDS         = 600;
+  private static final int MAX_LOCAL_ENTRIES          = 1000;
+
+  private final int maxCachedPages;
+  private final Map<String, Object> localStore;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong staleHits;
+  private final AtomicLong totalHitAgeMillis;
+
+  public PageCache(int maxCachedPages) {
+    this.maxCachedPages     = maxCachedPages;
+    this.localStore         = Collections.synchronizedMap(new LinkedHashMap<String, Object>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+        return size() > MAX_LOCAL_ENTRIES;
+      }
+    });
+    this.hits               = new AtomicLong();
+    this.misses             = new AtomicLong();
+    this.staleHits          = new AtomicLong();
+    this.totalHitAgeMillis  = new AtomicLong();
+  }
+
+  /**
+   * Page stored in the cache together with the version of the namespace at the time it was stored.
+   * The next cursor is kept so that callers can still update their own cursor bookkeeping on a hit.
+   **/
+  public static class CachedPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+    private final long createdMillis;
+    private final String nextCursor;
+    private final String json;
+
+    CachedPage(long version, String nextCursor, String json) {
+      this.version        = version;
+      this.createdMillis  = System.currentTimeMillis();
+      this.nextCursor     = nextCursor;
+      this.json           = json;
+    }
+
+    public String getNextCursor() {
+      return nextCursor;
+    }
+
+    public String getJson() {
+      return json;
+    }
+
+    long getVersion() {
+      return version;
+    }
+
+    long getCreatedMillis() {
+      return createdMillis;
+    }
+  }
+
+  /**
+   * Creates the key of a page from everything that affects its content.
+   * query should describe the query including its filter values and projections.
+   * A null cursor refers to the first page.
+   **/
+  public static String createPageKey(int pageSize, String query, String cursor) {
+    return pageSize + KEY_SEPARATOR + query + KEY_SEPARATOR + cursor;
+  }
+
+  /**
+   * Returns the cached page, or null if the page is not cached or was cached before the last invalidation.
+   **/
+  public CachedPage get(String namespace, String pageKey) {
+    CachedPage page = (CachedPage) storeGet(PAGE_KEY_PREFIX + namespace + KEY_SEPARATOR + pageKey);
+
+    if (page == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    if (page.version != getVersion(namespace)) {
+      staleHits.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    totalHitAgeMillis.addAndGet(System.currentTimeMillis() - page.createdMillis);
+    return page;
+  }
+
+  /**
+   * Stores a page if it is one of the first maxCachedPages pages of the feed.
+   * version has to be read through getVersion() before the page is queried: a write that lands while the
+   * query runs then bumps the version past it, and the page is stale right away instead of until it expires.
+   * The page number of the next cursor is recorded so that the following page can be cached too.
+   **/
+  public void put(String namespace, String pageKey, long version, String cursor, String nextCursor, String json) {
+    int pageNumber  = getPageNumber(namespace, version, cursor);
+
+    if (pageNumber < 0 || pageNumber >= maxCachedPages) {
+      return;
+    }
+
+    storePut(PAGE_KEY_PREFIX + namespace + KEY_SEPARATOR + pageKey, new CachedPage(version, nextCursor, json));
+
+    if (nextCursor != null) {
+      storePut(createPageNumberKey(namespace, version, nextCursor), pageNumber + 1);
+    }
+  }
+
+  /**
+   * Makes every cached page of the namespace stale.
+   * Should be called whenever an entity of the namespace is stored or deleted.
+   **/
+  public void invalidate(String namespace) {
+    String versionKey = VERSION_KEY_PREFIX + namespace;
+
+    if (useMemcache()) {
+      getMemcache().increment(versionKey, 1L, System.currentTimeMillis());
+      return;
+    }
+
+    synchronized (localStore) {
+      Long version = (Long) localStore.get(versionKey);
+      localStore.put(versionKey, version == null ? System.currentTimeMillis() + 1 : version + 1);
+    }
+  }
+
+  /**
+   * Returns hit, miss and staleness counters of this cache.
+   * stale-hits counts lookups that found a page cached before the last invalidation.
+   **/
+  public HashMap<String, Object> getStats() {
+    long hitCount = hits.get();
+
+    HashMap<String, Object> stats = new HashMap<String, Object>();
+    stats.put("backend", useMemcache() ? "memcache" : "in-process");
+    stats.put("hits", hitCount);
+    stats.put("misses", misses.get());
+    stats.put("stale-hits", staleHits.get());
+    stats.put("average-hit-age-millis", hitCount == 0 ? 0 : totalHitAgeMillis.get() / hitCount);
+    return stats;
+  }
+
+  /**
+   * Utility function to get the page number of a cursor.
+   * Returns -1 if the page number is unknown.
+   **/
+  private int getPageNumber(String namespace, long version, String cursor) {
+    if (cursor == null) {
+      return 0;
+    }
+
+    Integer pageNumber = (Integer) storeGet(createPageNumberKey(namespace, version, cursor));
+    return pageNumber == null ? -1 : pageNumber;
+  }
+
+  /**
+   * Returns the version of the namespace, which changes every time invalidate() is called.
+   * With Memcache the version is shared by every instance, so it tells clients whether anything changed
+   * since they last looked, wherever the change was made.
+   **/
+  public long getVersion(String namespace) {
+    String versionKey = VERSION_KEY_PREFIX + namespace;
+    Long version      = (Long) storeGet(versionKey);
+    if (version != null) {
+      return version;
+    }
+
+    // Stores the starting version so that every instance reads the same one until the next invalidate().
+    if (useMemcache()) {
+      version = getMemcache().increment(versionKey, 0L, System.currentTimeMillis());
+      return version == null ? System.currentTimeMillis() : version;
+    }
+
+    synchronized (localStore) {
+      version = (Long) localStore.get(versionKey);
+      if (version == null) {
+        version = System.currentTimeMillis();
+        localStore.put(versionKey, version);
+      }
+      return version;
+    }
+  }
+
+  private String createPageNumberKey(String namespace, long version, String cursor) {
+    return PAGE_NUMBER_KEY_PREFIX + namespace + KEY_SEPARATOR + version + KEY_SEPARATOR + cursor;
+  }
+
+  private Object storeGet(String key) {
+    if (useMemcache()) {
+      return getMemcache().get(key);
+    }
+
+    return localStore.get(key);
+  }
+
+  private void storePut(String key, Object value) {
+    if (useMemcache()) {
+      getMemcache().put(key, value, Expiration.byDeltaSeconds(EXPIRATION_SECONDS));
+      return;
+    }
+
+    localStore.put(key, value);
+  }
+
+  /**
+   * Memcache is only reachable from threads that have an App Engine API environment,
+   * which is the case on App Engine, on the local dev server and in tests using LocalServiceTestHelper.
+   **/
+  private boolean useMemcache() {
+    return ApiProxy.getCurrentEnvironment() != null;
+  }
+
+  private MemcacheService getMemcache() {
+    return MemcacheServiceFactory.getMemcacheService();
+  }
+}
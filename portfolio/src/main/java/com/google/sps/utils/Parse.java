@@ -1,12 +1,24 @@
 package com.google.sps.utils;
 
+import com.google.appengine.api.datastore.Entity;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility class that implements functionalities related to parsing.
  * Parsing related functionalities should all be implemented and called from this class.
  **/
 public class Parse {
+  /**
+   * Gson instances that write entities through an EntityAdapter, by property list.
+   * Servlets only use a handful of property lists, one per query shape, so this stays small.
+   **/
+  private static final ConcurrentHashMap<List<String>, Gson> entityGsons = new ConcurrentHashMap<>();
+
   /**
     * Method to parsed any Java Object into its JSON equivalent.
     * Can be used with any Object as the GSON library utilizes reflection.
@@ -16,4 +28,30 @@ public class Parse {
     String json = gson.toJson(object);
     return json;
   }
+
+  /**
+    * Method to parse a Java Object into its JSON equivalent, writing the entities nested anywhere inside it
+    * with an EntityAdapter for entityPropertyNames instead of reflection.
+    **/
+  public static String toJson(Object object, List<String> entityPropertyNames) {
+    Gson gson   = getEntityGson(entityPropertyNames);
+    String json = gson.toJson(object);
+    return json;
+  }
+
+  /**
+   * Utility function to get the Gson writing entities with the given properties.
+   * It is created on first use and shared afterwards, as Gson is thread safe.
+   **/
+  static Gson getEntityGson(List<String> propertyNames) {
+    Gson gson = entityGsons.get(propertyNames);
+    if (gson != null) {
+      return gson;
+    }
+
+    // Copied so that callers changing their list later cannot change the key.
+    List<String> names = Collections.unmodifiableList(new ArrayList<String>(propertyNames));
+    return entityGsons.computeIfAbsent(names,
+        key -> new GsonBuilder().registerTypeAdapter(Entity.class, new EntityAdapter(key)).create());
+  }
 }
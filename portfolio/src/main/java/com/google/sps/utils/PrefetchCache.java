@@ -0,0 +1,89 @@
+package com.google.sps.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short lived in-process cache for pages that were fetched before any client asked for them.
+ *
+ * Every page is taken at most once: the client that asked for it is the one that clicked "next",
+ * later requests for the same cursor go through the regular PageCache. Pages expire after ttlMillis
+ * and are ignored when the version of their namespace changed since they were fetched, see PageCache.
+ *
+ * The counters tell whether prefetching pays off: hits should be a good part of stored pages,
+ * otherwise every prefetch is a wasted Datastore read.
+ **/
+public class PrefetchCache {
+  private final long ttlMillis;
+  private final Map<String, PageCache.CachedPage> pages;
+  private final AtomicLong stored;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong expired;
+  private final AtomicLong stale;
+
+  public PrefetchCache(long ttlMillis, int maxEntries) {
+    this.ttlMillis  = ttlMillis;
+    this.pages      = Collections.synchronizedMap(new LinkedHashMap<String, PageCache.CachedPage>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PageCache.CachedPage> eldest) {
+        return size() > maxEntries;
+      }
+    });
+    this.stored     = new AtomicLong();
+    this.hits       = new AtomicLong();
+    this.misses     = new AtomicLong();
+    this.expired    = new AtomicLong();
+    this.stale      = new AtomicLong();
+  }
+
+  /**
+   * Stores a prefetched page. version is the version of the namespace read before the page was queried.
+   **/
+  public void put(String pageKey, long version, String nextCursor, String json) {
+    pages.put(pageKey, new PageCache.CachedPage(version, nextCursor, json));
+    stored.incrementAndGet();
+  }
+
+  /**
+   * Removes and returns the page, or returns null if it was not prefetched, expired or is stale.
+   * version is the current version of the namespace of the page.
+   **/
+  public PageCache.CachedPage take(String pageKey, long version) {
+    PageCache.CachedPage page = pages.remove(pageKey);
+
+    if (page == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    if (System.currentTimeMillis() - page.getCreatedMillis() > ttlMillis) {
+      expired.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+
+    if (page.getVersion() != version) {
+      stale.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return page;
+  }
+
+  public HashMap<String, Object> getStats() {
+    HashMap<String, Object> stats = new HashMap<String, Object>();
+    stats.put("stored", stored.get());
+    stats.put("hits", hits.get());
+    stats.put("misses", misses.get());
+    stats.put("expired", expired.get());
+    stats.put("stale", stale.get());
+    stats.put("entries", pages.size());
+    return stats;
+  }
+}
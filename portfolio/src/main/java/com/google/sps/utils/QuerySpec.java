@@ -0,0 +1,190 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Description of a Datastore query made of equality filters, an optional lower bound on the sort property,
+ * a single sort order and projected properties.
+ *
+ * Besides building the Query itself, a QuerySpec knows the composite index the query needs.
+ * The index shape is written as "Kind:property direction,..." with equality properties first,
+ * then the sort property, then the remaining projected properties. Equality and projected properties
+ * are sorted by name so that the same query always maps to the same shape.
+ *
+ * Filter values are not part of the shape, so a spec created without values can be used to declare
+ * which combinations of filters and sorts are allowed.
+ **/
+public class QuerySpec {
+  private static final String ASCENDING   = "asc";
+  private static final String DESCENDING  = "desc";
+
+  private final String kind;
+  private final LinkedHashMap<String, Object> equalityFilters;
+  private final LinkedHashMap<String, Class<?>> projections;
+  private String sortProperty;
+  private SortDirection sortDirection;
+  private Object lowerBound;
+  private boolean hasLowerBound;
+
+  public QuerySpec(String kind) {
+    this.kind             = kind;
+    this.equalityFilters  = new LinkedHashMap<String, Object>();
+    this.projections      = new LinkedHashMap<String, Class<?>>();
+  }
+
+  public QuerySpec withEqualityFilter(String property, Object value) {
+    equalityFilters.put(property, value);
+    return this;
+  }
+
+  public QuerySpec withSort(String property, SortDirection direction) {
+    sortProperty  = property;
+    sortDirection = direction;
+    return this;
+  }
+
+  /**
+   * Only keeps entities whose sort property is greater than or equal to value.
+   * Datastore requires inequality filters to be on the first sort property, so this always applies to it.
+   **/
+  public QuerySpec withLowerBound(Object value) {
+    lowerBound    = value;
+    hasLowerBound = true;
+    return this;
+  }
+
+  public QuerySpec withProjection(String property, Class<?> type) {
+    projections.put(property, type);
+    return this;
+  }
+
+  public String getKind() {
+    return kind;
+  }
+
+  public LinkedHashMap<String, Object> getEqualityFilters() {
+    return equalityFilters;
+  }
+
+  /**
+   * Returns the names of the properties each result will have, including the equality filtered ones.
+   **/
+  public List<String> getPropertyNames() {
+    return new ArrayList<String>(projections.keySet());
+  }
+
+  /**
+   * Builds the Datastore query.
+   * Properties used in equality filters are not projected as Datastore does not allow it,
+   * callers should copy the filter values onto the results instead.
+   **/
+  public Query toQuery() {
+    Query query = new Query(kind);
+
+    List<Filter> filters = new ArrayList<Filter>();
+    for (Map.Entry<String, Object> entry : equalityFilters.entrySet()) {
+      filters.add(new FilterPredicate(entry.getKey(), FilterOperator.EQUAL, entry.getValue()));
+    }
+
+    if (hasLowerBound) {
+      if (sortProperty == null) {
+        throw new IllegalStateException("Lower bound requires a sort property");
+      }
+      filters.add(new FilterPredicate(sortProperty, FilterOperator.GREATER_THAN_OR_EQUAL, lowerBound));
+    }
+
+    if (filters.size() == 1) {
+      query.setFilter(filters.get(0));
+    } else if (filters.size() > 1) {
+      query.setFilter(CompositeFilterOperator.and(filters));
+    }
+
+    if (sortProperty != null) {
+      query.addSort(sortProperty, sortDirection);
+    }
+
+    for (Map.Entry<String, Class<?>> entry : projections.entrySet()) {
+      if (!equalityFilters.containsKey(entry.getKey())) {
+        query.addProjection(new PropertyProjection(entry.getKey(), entry.getValue()));
+      }
+    }
+
+    return query;
+  }
+
+  /**
+   * Returns the shape of the index needed by this query.
+   **/
+  public String getIndexShape() {
+    List<String> properties = getIndexProperties();
+    return kind + ":" + String.join(",", properties);
+  }
+
+  /**
+   * Queries on a single property are served by the built-in indexes.
+   **/
+  public boolean needsCompositeIndex() {
+    return getIndexProperties().size() > 1;
+  }
+
+  /**
+   * Returns the datastore-indexes.xml entry for the index needed by this query.
+   **/
+  public String toIndexXml() {
+    StringBuilder xml = new StringBuilder();
+    xml.append("  <datastore-index kind=\"").append(kind).append("\" ancestor=\"false\" source=\"manual\">\n");
+
+    for (String property : getIndexProperties()) {
+      String[] nameAndDirection = property.split(" ");
+      xml.append("    <property name=\"").append(nameAndDirection[0])
+          .append("\" direction=\"").append(nameAndDirection[1]).append("\"/>\n");
+    }
+
+    xml.append("  </datastore-index>\n");
+    return xml.toString();
+  }
+
+  /**
+   * Utility function to list the index properties as "name direction" in index order.
+   **/
+  private List<String> getIndexProperties() {
+    List<String> properties = new ArrayList<String>();
+
+    for (String property : new TreeSet<String>(equalityFilters.keySet())) {
+      properties.add(property + " " + ASCENDING);
+    }
+
+    if (sortProperty != null) {
+      String direction = sortDirection == SortDirection.DESCENDING ? DESCENDING : ASCENDING;
+      properties.add(sortProperty + " " + direction);
+    }
+
+    TreeSet<String> remainingProjections = new TreeSet<String>(projections.keySet());
+    remainingProjections.removeAll(equalityFilters.keySet());
+    remainingProjections.remove(sortProperty);
+    for (String property : remainingProjections) {
+      properties.add(property + " " + ASCENDING);
+    }
+
+    return properties;
+  }
+
+  /**
+   * Describes the query including its filter values, used to tell cached results of different queries apart.
+   **/
+  @Override
+  public String toString() {
+    return getIndexShape() + getPropertyNames() + equalityFilters + (hasLowerBound ? ">=" + lowerBound : "");
+  }
+}
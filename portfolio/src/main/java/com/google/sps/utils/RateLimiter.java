@@ -0,0 +1,141 @@
+package com.google.sps.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter with one bucket per key, such as the LDAP of a user.
+ *
+ * Every bucket holds up to capacity tokens and gains refillPerSecond tokens per second.
+ * A request takes one token and is rejected when the bucket is empty, so a key can send a burst of
+ * capacity requests and then refillPerSecond requests per second on average.
+ *
+ * Buckets are kept in memory and only limit requests served by this instance.
+ * Once more than MAX_TRACKED_KEYS keys are tracked, buckets that refilled completely are dropped
+ * as they behave exactly like a new bucket.
+ **/
+public class RateLimiter {
+  private static final int MAX_TRACKED_KEYS     = 10000;
+  private static final int MAX_REPORTED_KEYS    = 20;
+
+  private final double capacity;
+  private final double refillPerSecond;
+  private final LongSupplier clockNanos;
+  private final ConcurrentHashMap<String, Bucket> buckets;
+  private final AtomicLong allowedCount;
+  private final AtomicLong rejectedCount;
+
+  public RateLimiter(double capacity, double refillPerSecond) {
+    this(capacity, refillPerSecond, System::nanoTime);
+  }
+
+  /**
+   * clockNanos replaces System.nanoTime(), which lets tests control time.
+   **/
+  public RateLimiter(double capacity, double refillPerSecond, LongSupplier clockNanos) {
+    this.capacity         = capacity;
+    this.refillPerSecond  = refillPerSecond;
+    this.clockNanos       = clockNanos;
+    this.buckets          = new ConcurrentHashMap<String, Bucket>();
+    this.allowedCount     = new AtomicLong();
+    this.rejectedCount    = new AtomicLong();
+  }
+
+  private class Bucket {
+    private double tokens;
+    private long lastRefillNanos;
+    private long rejected;
+
+    private Bucket(long nowNanos) {
+      this.tokens           = capacity;
+      this.lastRefillNanos  = nowNanos;
+    }
+
+    private synchronized boolean tryTake(long nowNanos) {
+      refill(nowNanos);
+      if (tokens >= 1) {
+        tokens -= 1;
+        return true;
+      }
+
+      ++rejected;
+      return false;
+    }
+
+    private synchronized long getMillisUntilToken(long nowNanos) {
+      refill(nowNanos);
+      if (tokens >= 1) {
+        return 0;
+      }
+
+      return (long) Math.ceil((1 - tokens) / refillPerSecond * 1000);
+    }
+
+    private synchronized boolean isFull(long nowNanos) {
+      refill(nowNanos);
+      return tokens >= capacity;
+    }
+
+    private synchronized long getRejected() {
+      return rejected;
+    }
+
+    private void refill(long nowNanos) {
+      double elapsedSeconds = (nowNanos - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+      tokens                = Math.min(capacity, tokens + elapsedSeconds * refillPerSecond);
+      lastRefillNanos       = nowNanos;
+    }
+  }
+
+  /**
+   * Takes a token from the bucket of key. Returns false if the request should be rejected.
+   **/
+  public boolean tryAcquire(String key) {
+    long now = clockNanos.getAsLong();
+    if (buckets.size() > MAX_TRACKED_KEYS) {
+      buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    boolean allowed = buckets.computeIfAbsent(key, newKey -> new Bucket(now)).tryTake(now);
+    (allowed ? allowedCount : rejectedCount).incrementAndGet();
+    return allowed;
+  }
+
+  /**
+   * Returns how long key has to wait before its next request is allowed, 0 if it can send one now.
+   * Suitable for a Retry-After header once rounded up to seconds.
+   **/
+  public long getRetryAfterMillis(String key) {
+    Bucket bucket = buckets.get(key);
+    return bucket == null ? 0 : bucket.getMillisUntilToken(clockNanos.getAsLong());
+  }
+
+  /**
+   * Returns the settings and counters of this limiter, along with the keys rejected most often.
+   **/
+  public Map<String, Object> getSnapshot() {
+    List<Map.Entry<String, Bucket>> entries = new ArrayList<Map.Entry<String, Bucket>>(buckets.entrySet());
+    entries.removeIf(entry -> entry.getValue().getRejected() == 0);
+    entries.sort((first, second) -> Long.compare(second.getValue().getRejected(), first.getValue().getRejected()));
+
+    LinkedHashMap<String, Long> rejectedKeys = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Bucket> entry : entries.subList(0, Math.min(entries.size(), MAX_REPORTED_KEYS))) {
+      rejectedKeys.put(entry.getKey(), entry.getValue().getRejected());
+    }
+
+    LinkedHashMap<String, Object> snapshot = new LinkedHashMap<String, Object>();
+    snapshot.put("capacity", capacity);
+    snapshot.put("refill-per-second", refillPerSecond);
+    snapshot.put("tracked-keys", buckets.size());
+    snapshot.put("allowed", allowedCount.get());
+    snapshot.put("rejected", rejectedCount.get());
+    snapshot.put("rejected-keys", rejectedKeys);
+    return snapshot;
+  }
+}
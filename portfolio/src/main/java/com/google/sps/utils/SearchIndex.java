@@ -0,0 +1,268 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Full-text inverted index stored in Datastore.
+ *
+ * Every (term, document) pair is a posting entity of postingKind holding the term frequency.
+ * The key name of a posting is derived from the term and the document key, so the postings of a document
+ * can be found again from its text alone, without a query. Removing or re-indexing a document only
+ * touches its own postings.
+ *
+ * A search runs one equality query per query term on the built-in single property index and ranks
+ * the documents by TF-IDF: the sum over matched terms of (1 + log tf) * log(1 + N / df).
+ * At most MAX_POSTINGS_PER_TERM postings are read for every term, which bounds the cost of very common terms.
+ * Those are the first postings in index order, which sorts them by key name, i.e. by encoded document key, rather than
+ * by relevance or recency: a term matching more documents than that only ranks an arbitrary subset of them,
+ * and the document frequency in its IDF is capped as well.
+ **/
+public class SearchIndex {
+  private static final String TERM_PROPERTY         = "term";
+  private static final String DOCUMENT_PROPERTY     = "document";
+  private static final String FREQUENCY_PROPERTY    = "tf";
+  private static final String TIMESTAMP_PROPERTY    = "timestamp";
+  private static final String KEY_SEPARATOR         = "|";
+  private static final int MIN_WORD_LENGTH          = 2;
+  private static final int MAX_QUERY_TERMS          = 10;
+  private static final int MAX_POSTINGS_PER_TERM    = 1000;
+  private static final int MAX_BATCH_SIZE           = 500;
+  private static final Set<String> STOP_WORDS       = new HashSet<String>(Arrays.asList(
+      "a", "an", "and", "are", "as", "at", "be", "by", "for", "in", "is", "it", "of", "on", "or", "the", "to"));
+
+  private final String postingKind;
+
+  public SearchIndex(String postingKind) {
+    this.postingKind = postingKind;
+  }
+
+  /**
+   * Splits text into lower case terms.
+   * Words are runs of letters and digits. Han, Hiragana and Katakana are written without spaces,
+   * so runs of those characters are split into overlapping character pairs instead.
+   **/
+  public static List<String> tokenize(String text) {
+    List<String> terms = new ArrayList<String>();
+    if (text == null) {
+      return terms;
+    }
+
+    String lowerText  = text.toLowerCase(Locale.ROOT);
+    StringBuilder run = new StringBuilder();
+    boolean cjkRun    = false;
+
+    for (int offset = 0; offset < lowerText.length(); ) {
+      int codePoint   = lowerText.codePointAt(offset);
+      offset          += Character.charCount(codePoint);
+
+      boolean isWordCharacter = Character.isLetterOrDigit(codePoint);
+      boolean isCjk           = isWordCharacter && isCjk(codePoint);
+
+      if (!isWordCharacter || isCjk != cjkRun) {
+        addRunTerms(terms, run.toString(), cjkRun);
+        run.setLength(0);
+      }
+
+      if (isWordCharacter) {
+        run.appendCodePoint(codePoint);
+        cjkRun = isCjk;
+      }
+    }
+
+    addRunTerms(terms, run.toString(), cjkRun);
+    return terms;
+  }
+
+  /**
+   * Adds the postings of a new document made of texts.
+   **/
+  public void index(Key documentKey, long timestamp, Collection<String> texts) {
+    update(documentKey, timestamp, new ArrayList<String>(), texts);
+  }
+
+  /**
+   * Re-indexes a document whose texts changed from oldTexts to newTexts.
+   * Postings of terms that are gone are deleted and the others are written with their new frequency.
+   **/
+  public void update(Key documentKey, long timestamp, Collection<String> oldTexts, Collection<String> newTexts) {
+    HashMap<String, Long> newFrequencies = countTerms(newTexts);
+
+    List<Key> removedPostings = new ArrayList<Key>();
+    for (String term : countTerms(oldTexts).keySet()) {
+      if (!newFrequencies.containsKey(term)) {
+        removedPostings.add(createPostingKey(term, documentKey));
+      }
+    }
+
+    List<Entity> postings = new ArrayList<Entity>();
+    for (Map.Entry<String, Long> entry : newFrequencies.entrySet()) {
+      Entity posting = new Entity(createPostingKey(entry.getKey(), documentKey));
+      posting.setProperty(TERM_PROPERTY, entry.getKey());
+      posting.setUnindexedProperty(DOCUMENT_PROPERTY, documentKey);
+      posting.setUnindexedProperty(FREQUENCY_PROPERTY, entry.getValue());
+      posting.setUnindexedProperty(TIMESTAMP_PROPERTY, timestamp);
+      postings.add(posting);
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (List<Entity> batch : partition(postings)) {
+      datastore.put(batch);
+    }
+    for (List<Key> batch : partition(removedPostings)) {
+      datastore.delete(batch);
+    }
+  }
+
+  /**
+   * Removes the postings of documents, given the texts each document was last indexed with.
+   **/
+  public void remove(Map<Key, ? extends Collection<String>> documentTexts) {
+    List<Key> postingKeys = new ArrayList<Key>();
+    for (Map.Entry<Key, ? extends Collection<String>> entry : documentTexts.entrySet()) {
+      for (String term : countTerms(entry.getValue()).keySet()) {
+        postingKeys.add(createPostingKey(term, entry.getKey()));
+      }
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (List<Key> batch : partition(postingKeys)) {
+      datastore.delete(batch);
+    }
+  }
+
+  /**
+   * Removes the postings of a document for the given terms only.
+   * Used to clean up postings left behind by documents that were deleted while being re-indexed.
+   **/
+  public void removePostings(Key documentKey, Collection<String> terms) {
+    List<Key> postingKeys = new ArrayList<Key>();
+    for (String term : terms) {
+      postingKeys.add(createPostingKey(term, documentKey));
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (List<Key> batch : partition(postingKeys)) {
+      datastore.delete(batch);
+    }
+  }
+
+  /**
+   * Returns the keys of the documents matching any term of query, best match first.
+   * Documents with the same score are ordered newest first.
+   * documentCount is the number of indexed documents, used for the inverse document frequency.
+   **/
+  public List<Key> search(String query, long documentCount) {
+    Set<String> queryTerms = new LinkedHashSet<String>(tokenize(query));
+
+    HashMap<Key, Double> scores     = new HashMap<Key, Double>();
+    HashMap<Key, Long> timestamps   = new HashMap<Key, Long>();
+    DatastoreService datastore      = DatastoreServiceFactory.getDatastoreService();
+
+    int searchedTerms = 0;
+    for (String term : queryTerms) {
+      if (++searchedTerms > MAX_QUERY_TERMS) {
+        break;
+      }
+
+      Query postingQuery    = new Query(postingKind)
+          .setFilter(new FilterPredicate(TERM_PROPERTY, FilterOperator.EQUAL, term));
+      List<Entity> postings = datastore.prepare(postingQuery)
+          .asList(FetchOptions.Builder.withLimit(MAX_POSTINGS_PER_TERM));
+
+      double inverseDocumentFrequency = Math.log(1 + (double) Math.max(documentCount, postings.size())
+          / Math.max(postings.size(), 1));
+
+      for (Entity posting : postings) {
+        Key documentKey     = (Key) posting.getProperty(DOCUMENT_PROPERTY);
+        long frequency      = (Long) posting.getProperty(FREQUENCY_PROPERTY);
+        double termScore    = (1 + Math.log(frequency)) * inverseDocumentFrequency;
+
+        scores.merge(documentKey, termScore, Double::sum);
+        timestamps.put(documentKey, (Long) posting.getProperty(TIMESTAMP_PROPERTY));
+      }
+    }
+
+    List<Key> documentKeys = new ArrayList<Key>(scores.keySet());
+    documentKeys.sort((first, second) -> {
+      int byScore = Double.compare(scores.get(second), scores.get(first));
+      return byScore != 0 ? byScore : Long.compare(timestamps.get(second), timestamps.get(first));
+    });
+
+    return documentKeys;
+  }
+
+  /**
+   * Utility function to count how often each term appears in texts.
+   **/
+  private static HashMap<String, Long> countTerms(Collection<String> texts) {
+    HashMap<String, Long> frequencies = new HashMap<String, Long>();
+    for (String text : texts) {
+      for (String term : tokenize(text)) {
+        frequencies.merge(term, 1L, Long::sum);
+      }
+    }
+
+    return frequencies;
+  }
+
+  private static void addRunTerms(List<String> terms, String run, boolean cjkRun) {
+    if (run.isEmpty()) {
+      return;
+    }
+
+    if (!cjkRun) {
+      if (run.length() >= MIN_WORD_LENGTH && !STOP_WORDS.contains(run)) {
+        terms.add(run);
+      }
+      return;
+    }
+
+    int[] codePoints = run.codePoints().toArray();
+    if (codePoints.length == 1) {
+      terms.add(run);
+      return;
+    }
+
+    for (int i = 0; i + 1 < codePoints.length; ++i) {
+      terms.add(new String(codePoints, i, 2));
+    }
+  }
+
+  private static boolean isCjk(int codePoint) {
+    Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+    return script == Character.UnicodeScript.HAN
+        || script == Character.UnicodeScript.HIRAGANA
+        || script == Character.UnicodeScript.KATAKANA;
+  }
+
+  private Key createPostingKey(String term, Key documentKey) {
+    return KeyFactory.createKey(postingKind, term + KEY_SEPARATOR + KeyFactory.keyToString(documentKey));
+  }
+
+  private static <T> List<List<T>> partition(List<T> items) {
+    List<List<T>> batches = new ArrayList<List<T>>();
+    for (int start = 0; start < items.size(); start += MAX_BATCH_SIZE) {
+      batches.add(items.subList(start, Math.min(start + MAX_BATCH_SIZE, items.size())));
+    }
+
+    return batches;
+  }
+}
@@ -0,0 +1,154 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Named counters stored in Datastore, each split into numShards shard entities.
+ *
+ * Every shard is the root of its own entity group and an increment only touches one random shard,
+ * so concurrent increments of the same counter rarely contend on the same entity group.
+ * Reading a counter fetches its shards by key in a single batch get, no query is needed.
+ *
+ * Totals are kept in an in-memory cache for CACHE_EXPIRATION_MILLIS. Increments made on this instance
+ * are applied to the cached total right away, increments from other instances show up once it expires.
+ **/
+public class ShardedCounter {
+  private static final String COUNT_PROPERTY        = "count";
+  private static final String SHARD_SEPARATOR       = "#";
+  private static final int MAX_TRANSACTION_RETRIES  = 10;
+  private static final long RETRY_BACKOFF_MILLIS    = 10;
+  private static final long CACHE_EXPIRATION_MILLIS = 10000;
+  private static final int MAX_BATCH_SIZE           = 500;
+
+  private final String shardKind;
+  private final int numShards;
+  private final Map<String, CachedCount> cache;
+
+  public ShardedCounter(String shardKind, int numShards) {
+    this.shardKind  = shardKind;
+    this.numShards  = numShards;
+    this.cache      = new ConcurrentHashMap<String, CachedCount>();
+  }
+
+  private static class CachedCount {
+    private final long count;
+    private final long expirationMillis;
+
+    private CachedCount(long count, long expirationMillis) {
+      this.count            = count;
+      this.expirationMillis = expirationMillis;
+    }
+  }
+
+  /**
+   * Adds delta to the counter.
+   * Retries on another random shard, after a random back off, when the chosen shard is modified concurrently.
+   **/
+  public void increment(String counterName, long delta) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+    for (int attempt = 1; ; ++attempt) {
+      Key shardKey            = createShardKey(counterName, ThreadLocalRandom.current().nextInt(numShards));
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        Entity shard;
+        try {
+          shard = datastore.get(transaction, shardKey);
+        } catch (EntityNotFoundException e) {
+          shard = new Entity(shardKey);
+          shard.setUnindexedProperty(COUNT_PROPERTY, 0L);
+        }
+
+        shard.setUnindexedProperty(COUNT_PROPERTY, (Long) shard.getProperty(COUNT_PROPERTY) + delta);
+        datastore.put(transaction, shard);
+        transaction.commit();
+        break;
+      } catch (ConcurrentModificationException e) {
+        if (attempt >= MAX_TRANSACTION_RETRIES) {
+          throw e;
+        }
+        backOff(attempt);
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+
+    cache.computeIfPresent(counterName,
+        (name, cached) -> new CachedCount(cached.count + delta, cached.expirationMillis));
+  }
+
+  /**
+   * Returns the value of the counter, 0 for counters that were never incremented.
+   **/
+  public long getCount(String counterName) {
+    CachedCount cached = cache.get(counterName);
+    if (cached != null && cached.expirationMillis > System.currentTimeMillis()) {
+      return cached.count;
+    }
+
+    List<Key> shardKeys = new ArrayList<Key>();
+    for (int shard = 0; shard < numShards; ++shard) {
+      shardKeys.add(createShardKey(counterName, shard));
+    }
+
+    long count = 0;
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (Entity shard : datastore.get(shardKeys).values()) {
+      count += (Long) shard.getProperty(COUNT_PROPERTY);
+    }
+
+    cache.put(counterName, new CachedCount(count, System.currentTimeMillis() + CACHE_EXPIRATION_MILLIS));
+    return count;
+  }
+
+  /**
+   * Deletes the given counters.
+   * Shard keys are built from the counter names, as a kind query is eventually consistent and could miss
+   * shards written just before, and they are deleted MAX_BATCH_SIZE keys at a time as Datastore requires.
+   **/
+  public void reset(Collection<String> counterNames) {
+    DatastoreService datastore  = DatastoreServiceFactory.getDatastoreService();
+    List<Key> shardKeys         = new ArrayList<Key>();
+
+    for (String counterName : counterNames) {
+      for (int shard = 0; shard < numShards; ++shard) {
+        shardKeys.add(createShardKey(counterName, shard));
+      }
+    }
+
+    for (int start = 0; start < shardKeys.size(); start += MAX_BATCH_SIZE) {
+      datastore.delete(shardKeys.subList(start, Math.min(start + MAX_BATCH_SIZE, shardKeys.size())));
+    }
+    cache.keySet().removeAll(counterNames);
+  }
+
+  /**
+   * Utility function to wait a random, growing amount of time before retrying a contended transaction.
+   **/
+  private void backOff(int attempt) {
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(RETRY_BACKOFF_MILLIS * attempt + 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Key createShardKey(String counterName, int shard) {
+    return KeyFactory.createKey(shardKind, counterName + SHARD_SEPARATOR + shard);
+  }
+}
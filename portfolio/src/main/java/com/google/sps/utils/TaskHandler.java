@@ -0,0 +1,19 @@
+package com.google.sps.utils;
+
+import java.util.HashMap;
+
+/**
+ * Runs the tasks of a TaskQueue.
+ * handle() may be called several times for the same task and has to be idempotent.
+ **/
+public interface TaskHandler {
+  /**
+   * Runs a task. Throwing makes the queue retry the task later.
+   **/
+  void handle(HashMap<String, String> parameters) throws Exception;
+
+  /**
+   * Called instead of another retry once the task failed its last attempt.
+   **/
+  void deadLetter(HashMap<String, String> parameters, Exception cause);
+}
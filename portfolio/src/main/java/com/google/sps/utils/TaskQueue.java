@@ -0,0 +1,18 @@
+package com.google.sps.utils;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Queue of background tasks. Every task is described by its parameters only,
+ * what is done with them is up to the TaskHandler of the queue.
+ *
+ * Implementations retry failing tasks with exponential back off and hand them to
+ * TaskHandler.deadLetter() once they run out of attempts.
+ **/
+public interface TaskQueue {
+  /**
+   * Adds a batch of tasks to the queue. Returns before the tasks are run.
+   **/
+  void enqueue(List<HashMap<String, String>> tasks);
+}
@@ -1,7 +1,8 @@
 const AUTH_STATUS_URL           = '/auth-status';
-const LOGIN_URL                 = '/auth-login';
-const LOGOUT_URL                = '/auth-logout';
-const GOOGLE_EMAIL_DOMAIN       = '@google.com';
+const EMAIL_ID                  = 'email';
+const IS_GOOGLER_ID             = 'is-googler';
+const LOGIN_URL_ID              = 'login-url';
+const LOGOUT_URL_ID             = 'logout-url';
 const HIDDEN_ATTRIBUTE          = 'hidden';
 const HREF_ATTRIBUTE            = 'href';
 const LOGIN_LOGOUT_BUTTON_ID    = 'login-logout-button';
@@ -10,6 +11,8 @@ const LOGOUT_MESSAGE            = 'Logout';
 const GOOGLER_ELEMENT_IDS       = ['comment-controls', 'comment-nav'];
 const NON_GOOGLER_ELEMENT_IDS   = ['comment-no-access-warning'];
 
+let authStatusPromise           = null;
+
 /**
  * Functions to run when page first loads.
  **/
@@ -21,26 +24,17 @@ window.addEventListener('load', function() {
 /**
  * Loads login / logout button according to the user status.
  * The button will redirect back to the page where the user click the button.
- * Clears previously loaded comments when called multiple times (done by setting innerHTML = '').
- * 'redirect' magic string is intentionally left as is.
- * This is because constants are taken literally when making objects.
  **/
 async function loadLoginLogoutButton() {
   const button      = document.getElementById(LOGIN_LOGOUT_BUTTON_ID);
-  const parameters  = {'redirect': window.location.pathname};
+  const authStatus  = await getAuthStatus();
 
-  if (await userIsLoggedIn()) {
-    const logoutFetchUrl    = constructFetchQueryUrl(LOGOUT_URL, parameters);
-    const logoutUrlJson     = await fetch(logoutFetchUrl);
-    const logoutUrl         = await logoutUrlJson.json();
-    button.setAttribute(HREF_ATTRIBUTE, logoutUrl);
-    button.innerText        = LOGOUT_MESSAGE;
+  if (userIsLoggedIn(authStatus)) {
+    button.setAttribute(HREF_ATTRIBUTE, authStatus[LOGOUT_URL_ID]);
+    button.innerText = LOGOUT_MESSAGE;
   } else {
-    const loginFetchUrl     = constructFetchQueryUrl(LOGIN_URL, parameters);
-    const loginUrlJson      = await fetch(loginFetchUrl);
-    const loginUrl          = await loginUrlJson.json();
-    button.setAttribute(HREF_ATTRIBUTE, loginUrl);
-    button.innerText        = LOGIN_MESSAGE;
+    button.setAttribute(HREF_ATTRIBUTE, authStatus[LOGIN_URL_ID]);
+    button.innerText = LOGIN_MESSAGE;
   }
 
   button.removeAttribute(HIDDEN_ATTRIBUTE);
@@ -51,7 +45,7 @@ async function loadLoginLogoutButton() {
  * To add more elements, simply include it in the GOOGLER_ELEMENT_IDS or NON_GOOGLER_ELEMENT_IDS.
  **/
 async function adjustDisplayToStatus() {
-  if (await userIsGoogler()) {
+  if ((await getAuthStatus())[IS_GOOGLER_ID]) {
     for (id of GOOGLER_ELEMENT_IDS) {
       let element = document.getElementById(id);
       element.removeAttribute(HIDDEN_ATTRIBUTE);
@@ -64,19 +58,24 @@ async function adjustDisplayToStatus() {
   }
 }
 
-async function userIsGoogler() {
-  return (await userIsLoggedIn()) && (await getUserEmail()).includes(GOOGLE_EMAIL_DOMAIN);
-}
-
-async function userIsLoggedIn() {
-  return await getUserEmail() !== null;
+/**
+ * Email is absent from the status when the user is not logged in.
+ **/
+function userIsLoggedIn(authStatus) {
+  return authStatus[EMAIL_ID] !== undefined;
 }
 
 /**
- * Gets user email. Returns null if not logged in. 
+ * Gets the email, login and logout links of the user in one request, made once per page load.
+ * 'redirect' magic string is intentionally left as is.
+ * This is because constants are taken literally when making objects.
  **/
-async function getUserEmail() {
-  const emailJson = await fetch(AUTH_STATUS_URL);
-  const email = await emailJson.json();
-  return email;
+function getAuthStatus() {
+  if (authStatusPromise === null) {
+    const parameters    = {'redirect': window.location.pathname};
+    const fetchUrl      = AUTH_STATUS_URL + '?' + new URLSearchParams(parameters).toString();
+    authStatusPromise   = fetch(fetchUrl).then(response => response.json());
+  }
+
+  return authStatusPromise;
 }
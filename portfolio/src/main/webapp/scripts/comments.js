@@ -1,6 +1,16 @@
 const GET_COMMENT_URL           = '/comment-get';
 const POST_COMMENT_URL          = '/comment-post';
 const DELETE_COMMENT_URL        = '/comment-delete';
+const COUNT_COMMENT_URL         = '/comment-count';
+const STREAM_COMMENT_URL        = '/comment-stream';
+const VERSION_EVENT             = 'version';
+const COMMENT_EVENT             = 'comment';
+const DELETE_EVENT              = 'delete';
+const COMMENT_ID_ATTRIBUTE      = 'data-comment-id';
+const COMMENT_TIMESTAMP_ID      = 'timestamp';
+const TOO_MANY_REQUESTS_STATUS  = 429;
+const COMMENTS_TOTAL_ID         = 'comments-total';
+const RESPONSE_TOTAL_ID         = 'total';
 const COMMENT_SECTION_ID        = 'comments-list';
 const COMMENTS_NUMBER_ID        = 'comments-number';
 const COMMENT_TEXT_ID           = 'comment-text';
@@ -20,9 +30,68 @@ const UNDEFINED_STRING          = 'undefined';
  **/
 window.addEventListener('load', function() {
   loadComments();
+  loadCommentsTotal();
   addElementListeners();
+  subscribeToComments();
 });
 
+/**
+ * Follows comment changes pushed by the server instead of polling GET_COMMENT_URL.
+ * The version event is sent on every (re)connection, the feed is only reloaded if comments changed since
+ * the last version seen, e.g. while disconnected or on another server instance.
+ * New comments are added to the first page as they arrive.
+ * When the stream is turned off on the server, it answers 204 and EventSource does not reconnect.
+ **/
+function subscribeToComments() {
+  let lastVersion     = null;
+  const eventSource   = new EventSource(STREAM_COMMENT_URL);
+
+  eventSource.addEventListener(VERSION_EVENT, function(event) {
+    if (lastVersion !== null && lastVersion !== event.data) {
+      const currCursorString = document.getElementById(CURR_COMMENT_ID).value;
+      loadComments(currCursorString);
+      loadCommentsTotal();
+    }
+    lastVersion = event.data;
+  });
+
+  eventSource.addEventListener(COMMENT_EVENT, function(event) {
+    addStreamedComment(JSON.parse(event.data));
+    loadCommentsTotal();
+  });
+
+  eventSource.addEventListener(DELETE_EVENT, function() {
+    loadComments();
+    loadCommentsTotal();
+  });
+}
+
+/**
+ * Adds a comment received from the stream at the bottom of the comment section, where the newest comment is.
+ * Only done on the first page, skipping comments that are already shown.
+ * The oldest comment is removed to keep the number of comments shown.
+ **/
+function addStreamedComment(commentProperties) {
+  const currCursorString = document.getElementById(CURR_COMMENT_ID).value;
+  if (currCursorString && currCursorString !== UNDEFINED_STRING) {
+    return;
+  }
+
+  const commentSection  = document.getElementById(COMMENT_SECTION_ID);
+  const commentElement  = createCommentElement(commentProperties);
+  const commentId       = commentElement.getAttribute(COMMENT_ID_ATTRIBUTE);
+  if (commentSection.querySelector('[' + COMMENT_ID_ATTRIBUTE + '="' + commentId + '"]')) {
+    return;
+  }
+
+  commentSection.append(commentElement);
+
+  const commentsNumber = Math.max(document.getElementById(COMMENTS_NUMBER_ID).value, 5);
+  while (commentSection.children.length > commentsNumber) {
+    commentSection.removeChild(commentSection.firstElementChild);
+  }
+}
+
 /**
  * Functions to add listeners to elements in the page
  **/
@@ -83,32 +152,63 @@ async function loadComments(cursorString) {
 
   await updateCommentNav(cursorString, prevCursorString, nextCursorString, responseObject);
 
-  let commentsLanguage      = document.getElementById(COMMENT_LANGUAGE_ID).value;
-  if (commentsLanguage === UNDEFINED_STRING) {
-    commentsLanguage        = COMMENT_TEXT_ID;
-  }
-
   const commentSection      = document.getElementById(COMMENT_SECTION_ID);
   commentSection.innerHTML  = '';
 
   for (var i = 0; i < commentsObject.length; ++i) {
-    let commentProperties   = commentsObject[i].propertyMap;
-    let commentText         = commentProperties[commentsLanguage];
-    let commentLdap         = commentProperties[COMMENT_LDAP_ID];
-    let commentElement      = createCommentChild(commentLdap + ': ' + commentText);
-    commentSection.prepend(commentElement);
+    commentSection.prepend(createCommentElement(commentsObject[i]));
   }
 }
 
+/**
+ * Helper function to create the element of a comment in the selected language.
+ * The element is tagged with the LDAP and timestamp of the comment so that it can be recognized later.
+ **/
+function createCommentElement(commentProperties) {
+  const commentsLanguage  = getCommentsLanguage();
+  const commentText       = commentProperties[commentsLanguage];
+  const commentLdap       = commentProperties[COMMENT_LDAP_ID];
+  const commentElement    = createCommentChild(commentLdap + ': ' + commentText);
+
+  commentElement.setAttribute(COMMENT_ID_ATTRIBUTE, commentLdap + ':' + commentProperties[COMMENT_TIMESTAMP_ID]);
+  return commentElement;
+}
+
+/**
+ * Loads the total number of comments shown in the comment section.
+ * The total comes from a counter on the server so this does not depend on the number of comments.
+ **/
+async function loadCommentsTotal() {
+  const responseJson    = await fetch(COUNT_COMMENT_URL);
+  const responseObject  = await responseJson.json();
+
+  document.getElementById(COMMENTS_TOTAL_ID).innerText = responseObject[RESPONSE_TOTAL_ID] + ' comments';
+}
+
+/**
+ * Helper function to get the property name holding the comment text in the selected language.
+ * If no translation is requested, the original comment text property is used.
+ **/
+function getCommentsLanguage() {
+  const commentsLanguage = document.getElementById(COMMENT_LANGUAGE_ID).value;
+  if (commentsLanguage === UNDEFINED_STRING) {
+    return COMMENT_TEXT_ID;
+  }
+
+  return commentsLanguage;
+}
+
 /**
  * Helper function to get response from GET_COMMENT_URL.
- * 'comments-number' and 'cursor' magic string is intentionally left as is.
+ * Only the text in the selected language is requested from the server.
+ * 'comments-number', 'cursor' and 'lang' magic string is intentionally left as is.
  * This is because constants are taken literally when making objects.
  **/
 async function getCommentResponse(cursorString) {
   const commentsNumber      = document.getElementById(COMMENTS_NUMBER_ID).value;
+  const commentsLanguage    = getCommentsLanguage();
 
-  const parameters      = {'comments-number': commentsNumber, 'cursor': cursorString};
+  const parameters      = {'comments-number': commentsNumber, 'cursor': cursorString, 'lang': commentsLanguage};
   const fetchUrl        = constructFetchQueryUrl(GET_COMMENT_URL, parameters);
 
   const responseJson    = await fetch(fetchUrl);
@@ -120,6 +220,7 @@ async function getCommentResponse(cursorString) {
 /**
  * Function used to post a new comment typed in COMMENT_TEXT_ID element.
  * Clears out the typed comment and reloads the comments section.
+ * If the server rejects the post for being over the rate limit, the typed comment is restored instead.
  * 'comments-number' magic string is intentionally left as is.
  * This is because constants are taken literally when making objects.
  **/
@@ -129,14 +230,22 @@ async function postComment() {
   document.getElementById(COMMENT_TEXT_ID).value = '';
 
   const fetchUrl = constructFetchQueryUrl(POST_COMMENT_URL, parameters);
-  await fetchPost(fetchUrl);
+  const response = await fetchPost(fetchUrl);
+
+  if (response.status === TOO_MANY_REQUESTS_STATUS) {
+    document.getElementById(COMMENT_TEXT_ID).value = commentText;
+    alert('Too many comments, try again in ' + response.headers.get('Retry-After') + ' seconds.');
+    return;
+  }
 
   loadComments();
+  loadCommentsTotal();
 }
 
 async function deleteComment() {
   await fetchPost(DELETE_COMMENT_URL);
   loadComments();
+  loadCommentsTotal();
 }
 
 async function fetchPost(url) {
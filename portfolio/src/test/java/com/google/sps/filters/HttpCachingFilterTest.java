@@ -0,0 +1,165 @@
+package com.google.sps.filters;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+/** Tests for the conditional request and compression handling of HttpCachingFilter. */
+@RunWith(JUnit4.class)
+public final class HttpCachingFilterTest {
+  private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+  private static final String BODY              = "[{\"comment-text\":\"hello\"}]";
+
+  private final HttpCachingFilter filter = new HttpCachingFilter();
+
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+  private ByteArrayOutputStream sentBody;
+
+  @Before
+  public void setUp() throws IOException {
+    request   = mock(HttpServletRequest.class);
+    response  = mock(HttpServletResponse.class);
+    sentBody  = new ByteArrayOutputStream();
+
+    when(request.getMethod()).thenReturn("GET");
+    when(response.getStatus()).thenReturn(HttpServletResponse.SC_OK);
+    when(response.getContentType()).thenReturn(JSON_CONTENT_TYPE);
+    when(response.getCharacterEncoding()).thenReturn("UTF-8");
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        sentBody.write(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {}
+    });
+  }
+
+  @Test
+  public void jsonResponseGetsEtagAndBody() throws Exception {
+    filter.doFilter(request, response, writing(BODY));
+
+    verify(response).setHeader("ETag", HttpCachingFilter.createEtag(BODY.getBytes(StandardCharsets.UTF_8)));
+    verify(response).setHeader("Cache-Control", "private, no-cache");
+    Assert.assertEquals(BODY, sentBody.toString("UTF-8"));
+  }
+
+  @Test
+  public void matchingIfNoneMatchReturnsNotModified() throws Exception {
+    String etag = HttpCachingFilter.createEtag(BODY.getBytes(StandardCharsets.UTF_8));
+    when(request.getHeader("If-None-Match")).thenReturn("\"other\", " + etag);
+
+    filter.doFilter(request, response, writing(BODY));
+
+    verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Assert.assertEquals(0, sentBody.size());
+  }
+
+  @Test
+  public void staleIfNoneMatchReturnsFullBody() throws Exception {
+    String staleEtag = HttpCachingFilter.createEtag("[]".getBytes(StandardCharsets.UTF_8));
+    when(request.getHeader("If-None-Match")).thenReturn(staleEtag);
+
+    filter.doFilter(request, response, writing(BODY));
+
+    verify(response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Assert.assertEquals(BODY, sentBody.toString("UTF-8"));
+  }
+
+  @Test
+  public void etagComparisonIsWeak() {
+    Assert.assertTrue(HttpCachingFilter.matchesEtag("\"abc\"", "W/\"abc\""));
+    Assert.assertTrue(HttpCachingFilter.matchesEtag("*", "W/\"abc\""));
+    Assert.assertFalse(HttpCachingFilter.matchesEtag(null, "W/\"abc\""));
+  }
+
+  @Test
+  public void largeResponseIsGzippedWhenAccepted() throws Exception {
+    StringBuilder largeBody = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      largeBody.append(BODY);
+    }
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+    filter.doFilter(request, response, writing(largeBody.toString()));
+
+    verify(response).setHeader("Content-Encoding", "gzip");
+    Assert.assertEquals(largeBody.toString(), gunzip(sentBody.toByteArray()));
+  }
+
+  @Test
+  public void versionedRequestIsCachedForAYear() throws Exception {
+    when(request.getParameter("v")).thenReturn("1a2b3c4d");
+    when(response.getContentType()).thenReturn("text/css");
+
+    filter.doFilter(request, response, writing("body {}"));
+
+    ArgumentCaptor<String> cacheControl = ArgumentCaptor.forClass(String.class);
+    verify(response).setHeader(eq("Cache-Control"), cacheControl.capture());
+    Assert.assertTrue(cacheControl.getValue().contains("immutable"));
+  }
+
+  @Test
+  public void versionedErrorIsNotCached() throws Exception {
+    when(request.getParameter("v")).thenReturn("1a2b3c4d");
+    when(response.getStatus()).thenReturn(HttpServletResponse.SC_NOT_FOUND);
+
+    filter.doFilter(request, response, writing("not found"));
+
+    verify(response, never()).setHeader(eq("Cache-Control"), anyString());
+  }
+
+  @Test
+  public void errorsArePassedThrough() throws Exception {
+    filter.doFilter(request, response, (req, res) -> ((HttpServletResponse) res).sendError(400));
+
+    verify(response).sendError(400);
+    verify(response, never()).setHeader(eq("ETag"), anyString());
+  }
+
+  private static FilterChain writing(String body) {
+    return (req, res) -> {
+      res.setContentType(JSON_CONTENT_TYPE);
+      res.getWriter().print(body);
+    };
+  }
+
+  private static String gunzip(byte[] compressed) throws IOException {
+    ByteArrayOutputStream plain = new ByteArrayOutputStream();
+    try (GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      byte[] buffer = new byte[1024];
+      for (int read; (read = gzipStream.read(buffer)) > 0; ) {
+        plain.write(buffer, 0, read);
+      }
+    }
+
+    return plain.toString("UTF-8");
+  }
+}
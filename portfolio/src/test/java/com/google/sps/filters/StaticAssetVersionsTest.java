@@ -0,0 +1,54 @@
+package com.google.sps.filters;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks that pages reference local scripts and styles with the content hash of the current file.
+ * The assets are cached for a year, so a stale hash means visitors keep the old version.
+ */
+@RunWith(JUnit4.class)
+public final class StaticAssetVersionsTest {
+  private static final String WEBAPP_PATH     = "src/main/webapp";
+  private static final int HASH_HEX_LENGTH    = 8;
+  private static final Pattern ASSET_PATTERN  =
+      Pattern.compile("(?:href|src)=\"((?:scripts/[^\"?]+|style\\.css))(?:\\?v=([0-9a-f]*))?\"");
+
+  @Test
+  public void pagesReferenceCurrentAssetHashes() throws Exception {
+    File[] pages = new File(WEBAPP_PATH).listFiles((dir, name) -> name.endsWith(".html"));
+    Assert.assertNotNull(pages);
+
+    for (File page : pages) {
+      String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8);
+      Matcher matcher = ASSET_PATTERN.matcher(html);
+
+      while (matcher.find()) {
+        String asset        = matcher.group(1);
+        String expectedHash = hashAsset(new File(WEBAPP_PATH, asset));
+
+        Assert.assertEquals("Reference " + asset + "?v=" + expectedHash + " in " + page.getName(),
+            expectedHash, matcher.group(2));
+      }
+    }
+  }
+
+  private static String hashAsset(File asset) throws Exception {
+    byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(asset.toPath()));
+
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest) {
+      hex.append(String.format("%02x", b));
+    }
+
+    return hex.substring(0, HASH_HEX_LENGTH);
+  }
+}
@@ -0,0 +1,76 @@
+package com.google.sps.servlets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the combined /auth-status response and the cached login and logout links. */
+@RunWith(JUnit4.class)
+public final class AuthCheckServletTest {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalUserServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvEmail("tester@google.com")
+      .setEnvAuthDomain("google.com");
+
+  private final AuthCheckServlet servlet = new AuthCheckServlet();
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void statusHoldsEmailAndLinks() throws Exception {
+    JsonObject status = JsonParser.parseString(get("/auth-status", "/index.html")).getAsJsonObject();
+
+    Assert.assertEquals("tester@google.com", status.get("email").getAsString());
+    Assert.assertTrue(status.get("is-googler").getAsBoolean());
+    Assert.assertTrue(status.get("logout-url").getAsString().contains("index.html"));
+    Assert.assertTrue(status.get("login-url").getAsString().contains("index.html"));
+    Assert.assertEquals(status.get("logout-url").getAsString(),
+        JsonParser.parseString(get("/auth-logout", "/index.html")).getAsString());
+  }
+
+  @Test
+  public void offSiteRedirectIsReplaced() throws Exception {
+    String link = JsonParser.parseString(get("/auth-login", "https://example.com/")).getAsString();
+
+    Assert.assertFalse(link.contains("example.com"));
+    Assert.assertEquals(JsonParser.parseString(get("/auth-login", "/")).getAsString(), link);
+  }
+
+  private String get(String uri, String redirect) throws Exception {
+    HttpServletRequest request    = mock(HttpServletRequest.class);
+    HttpServletResponse response  = mock(HttpServletResponse.class);
+    StringWriter body             = new StringWriter();
+
+    when(request.getRequestURI()).thenReturn(uri);
+    when(request.getParameter("redirect")).thenReturn(redirect);
+    when(request.getScheme()).thenReturn("http");
+    when(request.getServerName()).thenReturn("localhost");
+    when(request.getServerPort()).thenReturn(8080);
+    when(response.getWriter()).thenReturn(new PrintWriter(body, true));
+
+    servlet.doGet(request, response);
+    return body.toString();
+  }
+}
@@ -0,0 +1,110 @@
+package com.google.sps.servlets;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Stress test that runs comment posts, reads and deletes from many threads against a single servlet instance,
+ * the way App Engine does once threadsafe is enabled.
+ */
+@RunWith(JUnit4.class)
+public final class CommentDataServletConcurrencyTest {
+  private static final int THREADS              = 8;
+  private static final int REQUESTS_PER_THREAD  = 40;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvEmail("tester@google.com")
+      .setEnvAuthDomain("google.com");
+
+  private CommentDataServletHarness servlet;
+
+  @Before
+  public void setUp() throws Exception {
+    helper.setUp();
+    servlet = new CommentDataServletHarness((text, languageCode) -> languageCode + ":" + text);
+  }
+
+  @After
+  public void tearDown() {
+    servlet.getTranslationQueue().shutdown();
+    helper.tearDown();
+  }
+
+  @Test
+  public void concurrentPostGetAndDelete() throws Exception {
+    ApiProxy.Environment environment  = ApiProxy.getCurrentEnvironment();
+    ExecutorService executor          = Executors.newFixedThreadPool(THREADS);
+
+    List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+    for (int thread = 0; thread < THREADS; ++thread) {
+      int threadNumber = thread;
+      String language  = thread % 2 == 0 ? "ja" : "en";
+      workers.add(() -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        try {
+          String cursor = null;
+          for (int i = 0; i < REQUESTS_PER_THREAD; ++i) {
+            if (i % 20 == 19) {
+              servlet.send("POST", "/comment-delete", new HashMap<String, String>());
+            } else if (i % 2 == 0) {
+              HashMap<String, String> parameters = new HashMap<String, String>();
+              parameters.put("comment-text", "comment " + threadNumber + "-" + i);
+              servlet.send("POST", "/comment-post", parameters);
+            } else {
+              HashMap<String, String> parameters = new HashMap<String, String>();
+              parameters.put("comments-number", "5");
+              parameters.put("lang", language);
+              if (cursor != null) {
+                parameters.put("cursor", cursor);
+              }
+
+              String json     = servlet.send("GET", "/comment-get", parameters);
+              JsonObject page = JsonParser.parseString(json).getAsJsonObject();
+              Assert.assertTrue(page.has("result"));
+              cursor = page.get("next-cursor").isJsonNull() ? null : page.get("next-cursor").getAsString();
+            }
+          }
+        } finally {
+          ApiProxy.setEnvironmentForCurrentThread(null);
+        }
+        return null;
+      });
+    }
+
+    for (Future<Void> result : executor.invokeAll(workers)) {
+      result.get();
+    }
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    Assert.assertTrue(servlet.getTranslationQueue().awaitIdle(10000));
+
+    servlet.send("POST", "/comment-delete", new HashMap<String, String>());
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    parameters.put("comment-text", "last comment");
+    servlet.send("POST", "/comment-post", parameters);
+
+    String json       = servlet.send("GET", "/comment-count", new HashMap<String, String>());
+    JsonObject count  = JsonParser.parseString(json).getAsJsonObject();
+    Assert.assertEquals(1, count.get("total").getAsLong());
+  }
+}
@@ -0,0 +1,126 @@
+package com.google.sps.servlets;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.sps.utils.LocalTaskQueue;
+import com.google.sps.utils.RateLimiter;
+import com.google.sps.utils.TaskHandler;
+import com.google.sps.utils.TaskQueue;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.function.BiFunction;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * CommentDataServlet set up for tests: translations come from a function instead of the Translation API
+ * and translation tasks run on a LocalTaskQueue. Posts are not rate limited unless a limiter is given.
+ * Requests are sent through mocked requests and responses.
+ * Needs the local Datastore and Memcache stubs to be set up.
+ */
+final class CommentDataServletHarness extends CommentDataServlet {
+  private static final String DATASTORE_INDEXES_PATH  = "src/main/webapp/WEB-INF/datastore-indexes.xml";
+  private static final int TRANSLATION_CONCURRENCY    = 4;
+  private static final int TRANSLATION_ATTEMPTS       = 5;
+
+  private final BiFunction<String, String, String> translator;
+  private final RateLimiter postRateLimiter;
+  private LocalTaskQueue translationQueue;
+  private boolean prefetchEnabled;
+
+  CommentDataServletHarness(BiFunction<String, String, String> translator) throws Exception {
+    this(translator, new RateLimiter(Double.MAX_VALUE, Double.MAX_VALUE));
+  }
+
+  CommentDataServletHarness(BiFunction<String, String, String> translator, RateLimiter postRateLimiter)
+      throws Exception {
+    this.translator       = translator;
+    this.postRateLimiter  = postRateLimiter;
+
+    ServletContext context = mock(ServletContext.class);
+    when(context.getResourceAsStream("/WEB-INF/datastore-indexes.xml")).thenAnswer(invocation -> {
+      try {
+        return new FileInputStream(DATASTORE_INDEXES_PATH);
+      } catch (FileNotFoundException e) {
+        return null;
+      }
+    });
+
+    ServletConfig config = mock(ServletConfig.class);
+    when(config.getServletContext()).thenReturn(context);
+    init(config);
+  }
+
+  @Override
+  protected String translate(String commentText, String languageCode) {
+    return translator.apply(commentText, languageCode);
+  }
+
+  @Override
+  protected TaskQueue createTranslationQueue(TaskHandler handler) {
+    translationQueue = new LocalTaskQueue(handler, TRANSLATION_CONCURRENCY, TRANSLATION_ATTEMPTS, 1, 10);
+    return translationQueue;
+  }
+
+  @Override
+  protected RateLimiter createPostRateLimiter() {
+    return postRateLimiter;
+  }
+
+  @Override
+  protected boolean isPrefetchEnabled() {
+    return prefetchEnabled;
+  }
+
+  void setPrefetchEnabled(boolean prefetchEnabled) {
+    this.prefetchEnabled = prefetchEnabled;
+  }
+
+  LocalTaskQueue getTranslationQueue() {
+    return translationQueue;
+  }
+
+  /**
+   * Utility function to send a request to the servlet and return the response body.
+   * Throws an AssertionError if the servlet responds with an error.
+   */
+  String send(String method, String uri, HashMap<String, String> parameters) throws Exception {
+    HttpServletRequest request    = mock(HttpServletRequest.class);
+    HttpServletResponse response  = mock(HttpServletResponse.class);
+    StringWriter body             = new StringWriter();
+
+    when(request.getMethod()).thenReturn(method);
+    when(request.getRequestURI()).thenReturn(uri);
+    when(request.getParameterNames()).thenReturn(Collections.enumeration(parameters.keySet()));
+    when(request.getParameter(anyString())).thenAnswer(invocation -> parameters.get(invocation.getArgument(0)));
+    when(request.getParameterValues(anyString())).thenAnswer(invocation -> {
+      String value = parameters.get(invocation.getArgument(0));
+      return value == null ? null : new String[] {value};
+    });
+    when(response.getWriter()).thenReturn(new PrintWriter(body));
+    doAnswer(invocation -> {
+      throw new AssertionError(uri + " responded with " + invocation.getArgument(0));
+    }).when(response).sendError(anyInt(), anyString());
+    doAnswer(invocation -> {
+      throw new AssertionError(uri + " responded with " + invocation.getArgument(0));
+    }).when(response).sendError(anyInt());
+
+    if (method.equals("POST")) {
+      doPost(request, response);
+    } else {
+      doGet(request, response);
+    }
+
+    return body.toString();
+  }
+}
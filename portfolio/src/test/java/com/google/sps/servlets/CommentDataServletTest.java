@@ -0,0 +1,31 @@
+package com.google.sps.servlets;
+
+import com.google.sps.utils.DatastoreIndexes;
+import com.google.sps.utils.QuerySpec;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the queries declared by CommentDataServlet. */
+@RunWith(JUnit4.class)
+public final class CommentDataServletTest {
+  private static final String DATASTORE_INDEXES_PATH = "src/main/webapp/WEB-INF/datastore-indexes.xml";
+
+  @Test
+  public void everyQueryHasAnIndex() throws Exception {
+    Set<String> declaredShapes;
+    try (InputStream xml = new FileInputStream(DATASTORE_INDEXES_PATH)) {
+      declaredShapes = DatastoreIndexes.loadShapes(xml);
+    }
+
+    List<QuerySpec> missing = DatastoreIndexes.findMissing(CommentDataServlet.getQuerySpecs(), declaredShapes);
+
+    Assert.assertTrue("Add to " + DATASTORE_INDEXES_PATH + ":\n" + DatastoreIndexes.toXml(missing),
+        missing.isEmpty());
+  }
+}
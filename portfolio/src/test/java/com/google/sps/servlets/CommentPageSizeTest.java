@@ -0,0 +1,86 @@
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the page size bounds of /comment-get and the batched deletes of /comment-delete. */
+@RunWith(JUnit4.class)
+public final class CommentPageSizeTest {
+  private static final int STORED_COMMENTS = 620;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvEmail("tester@google.com")
+      .setEnvAuthDomain("google.com");
+
+  private CommentDataServletHarness servlet;
+
+  @Before
+  public void setUp() throws Exception {
+    helper.setUp();
+    servlet = new CommentDataServletHarness((text, languageCode) -> text);
+
+    List<Entity> comments = new ArrayList<Entity>();
+    for (int i = 0; i < STORED_COMMENTS; ++i) {
+      Entity comment = new Entity("Comment");
+      comment.setProperty("ldap", "tester");
+      comment.setProperty("timestamp", (long) i);
+      comment.setProperty("comment-text", "comment " + i);
+      comments.add(comment);
+    }
+    DatastoreServiceFactory.getDatastoreService().put(comments);
+  }
+
+  @After
+  public void tearDown() {
+    servlet.getTranslationQueue().shutdown();
+    helper.tearDown();
+  }
+
+  @Test
+  public void pageSizeIsCapped() throws Exception {
+    JsonObject page = getPage("1000000", null);
+    Assert.assertEquals(100, page.getAsJsonArray("result").size());
+
+    JsonObject nextPage = getPage("1000000", page.get("next-cursor").getAsString());
+    Assert.assertEquals("comment 519",
+        nextPage.getAsJsonArray("result").get(0).getAsJsonObject().get("comment-text").getAsString());
+  }
+
+  @Test
+  public void pageSizeHasMinimum() throws Exception {
+    Assert.assertEquals(5, getPage("-3", null).getAsJsonArray("result").size());
+  }
+
+  @Test
+  public void deleteRemovesMoreThanOneBatch() throws Exception {
+    servlet.send("POST", "/comment-delete", new HashMap<String, String>());
+
+    Assert.assertEquals(0, getPage("5", null).getAsJsonArray("result").size());
+  }
+
+  private JsonObject getPage(String commentsNumber, String cursor) throws Exception {
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    parameters.put("comments-number", commentsNumber);
+    if (cursor != null) {
+      parameters.put("cursor", cursor);
+    }
+
+    return JsonParser.parseString(servlet.send("GET", "/comment-get", parameters)).getAsJsonObject();
+  }
+}
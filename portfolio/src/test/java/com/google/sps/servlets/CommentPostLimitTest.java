@@ -0,0 +1,75 @@
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.utils.RateLimiter;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the validation and rate limiting of posted comments. */
+@RunWith(JUnit4.class)
+public final class CommentPostLimitTest {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvEmail("tester@google.com")
+      .setEnvAuthDomain("google.com");
+
+  private CommentDataServletHarness servlet;
+
+  @Before
+  public void setUp() throws Exception {
+    helper.setUp();
+    // A single token that is never refilled.
+    servlet = new CommentDataServletHarness((text, languageCode) -> text, new RateLimiter(1, 0));
+  }
+
+  @After
+  public void tearDown() {
+    servlet.getTranslationQueue().shutdown();
+    helper.tearDown();
+  }
+
+  @Test
+  public void blankCommentsDoNotTakeTokens() throws Exception {
+    assertRejected(null, "400");
+    assertRejected("   ", "400");
+
+    post("hello");
+
+    assertRejected("hello again", "429");
+    Assert.assertEquals(1, countComments());
+  }
+
+  private void post(String commentText) throws Exception {
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    if (commentText != null) {
+      parameters.put("comment-text", commentText);
+    }
+    servlet.send("POST", "/comment-post", parameters);
+  }
+
+  private void assertRejected(String commentText, String status) throws Exception {
+    try {
+      post(commentText);
+      Assert.fail("Accepted " + commentText);
+    } catch (AssertionError e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().endsWith("responded with " + status));
+    }
+  }
+
+  private int countComments() {
+    return DatastoreServiceFactory.getDatastoreService()
+        .prepare(new Query("Comment"))
+        .countEntities(FetchOptions.Builder.withDefaults());
+  }
+}
@@ -0,0 +1,110 @@
+package com.google.sps.servlets;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that pages prefetched by DataServlet.doGet are served in place of a query, and only while fresh. */
+@RunWith(JUnit4.class)
+public final class CommentPrefetchTest {
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvEmail("tester@google.com")
+      .setEnvAuthDomain("google.com");
+
+  private CommentDataServletHarness servlet;
+
+  @Before
+  public void setUp() throws Exception {
+    helper.setUp();
+    servlet = new CommentDataServletHarness((text, languageCode) -> text);
+    servlet.setPrefetchEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    servlet.getTranslationQueue().shutdown();
+    helper.tearDown();
+  }
+
+  /** The second page comes from the first query, the third one is queried again along with the fourth. */
+  @Test
+  public void nextPageIsServedFromPrefetch() throws Exception {
+    for (int i = 0; i < 12; ++i) {
+      postComment("comment " + i);
+    }
+    long hitsBefore = getPrefetchStat("hits");
+
+    JsonObject firstPage  = getPage(null);
+    JsonObject secondPage = getPage(firstPage.get("next-cursor").getAsString());
+    JsonObject thirdPage  = getPage(secondPage.get("next-cursor").getAsString());
+
+    Assert.assertEquals(hitsBefore + 1, getPrefetchStat("hits"));
+    assertComments(firstPage, 11, 10, 9, 8, 7);
+    assertComments(secondPage, 6, 5, 4, 3, 2);
+    assertComments(thirdPage, 1, 0);
+    Assert.assertFalse(secondPage.has("prev-cursor"));
+    Assert.assertEquals(firstPage.get("next-cursor"), thirdPage.get("prev-cursor"));
+  }
+
+  @Test
+  public void prefetchedPageIsDroppedAfterChange() throws Exception {
+    for (int i = 0; i < 10; ++i) {
+      postComment("comment " + i);
+    }
+    long staleBefore = getPrefetchStat("stale");
+
+    JsonObject firstPage = getPage(null);
+    postComment("comment 10");
+    JsonObject secondPage = getPage(firstPage.get("next-cursor").getAsString());
+
+    Assert.assertEquals(staleBefore + 1, getPrefetchStat("stale"));
+    assertComments(secondPage, 4, 3, 2, 1, 0);
+  }
+
+  /** Waits for the translations as they change the comment and make prefetched pages stale. */
+  private void postComment(String text) throws Exception {
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    parameters.put("comment-text", text);
+    servlet.send("POST", "/comment-post", parameters);
+    Assert.assertTrue(servlet.getTranslationQueue().awaitIdle(TIMEOUT_MILLIS));
+    Thread.sleep(2);
+  }
+
+  private JsonObject getPage(String cursor) throws Exception {
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    parameters.put("comments-number", "5");
+    if (cursor != null) {
+      parameters.put("cursor", cursor);
+    }
+
+    return JsonParser.parseString(servlet.send("GET", "/comment-get", parameters)).getAsJsonObject();
+  }
+
+  private long getPrefetchStat(String name) throws Exception {
+    String json = servlet.send("GET", "/comment-cache-stats", new HashMap<String, String>());
+    return JsonParser.parseString(json).getAsJsonObject().getAsJsonObject("prefetch").get(name).getAsLong();
+  }
+
+  private static void assertComments(JsonObject page, int... expectedNumbers) {
+    JsonArray results = page.getAsJsonArray("result");
+    Assert.assertEquals(expectedNumbers.length, results.size());
+    for (int i = 0; i < expectedNumbers.length; ++i) {
+      Assert.assertEquals("comment " + expectedNumbers[i],
+          results.get(i).getAsJsonObject().get("comment-text").getAsString());
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.google.sps.servlets;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for /comment-search and how it follows posts, translations and deletes. */
+@RunWith(JUnit4.class)
+public final class CommentSearchTest {
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvEmail("tester@google.com")
+      .setEnvAuthDomain("google.com");
+
+  private CommentDataServletHarness servlet;
+
+  @Before
+  public void setUp() throws Exception {
+    helper.setUp();
+    servlet = new CommentDataServletHarness((text, languageCode) -> languageCode.equals("id")
+        ? text.replace("hello", "halo")
+        : text);
+  }
+
+  @After
+  public void tearDown() {
+    servlet.getTranslationQueue().shutdown();
+    helper.tearDown();
+  }
+
+  @Test
+  public void findsCommentsByOriginalTextAndTranslation() throws Exception {
+    postComment("hello world");
+    postComment("goodbye world");
+
+    Assert.assertEquals(2, search("world", 5, 0).get("matches").getAsInt());
+    Assert.assertEquals(1, search("goodbye", 5, 0).get("matches").getAsInt());
+
+    JsonArray results = search("halo", 5, 0).getAsJsonArray("result");
+    Assert.assertEquals(1, results.size());
+    Assert.assertEquals("hello world", results.get(0).getAsJsonObject().get("comment-text").getAsString());
+  }
+
+  @Test
+  public void paginatesRankedMatches() throws Exception {
+    for (int i = 0; i < 7; ++i) {
+      postComment("comment " + i);
+    }
+
+    JsonObject firstPage  = search("comment", 5, 0);
+    JsonObject secondPage = search("comment", 5, firstPage.get("next-offset").getAsInt());
+
+    Assert.assertEquals(5, firstPage.getAsJsonArray("result").size());
+    Assert.assertEquals(2, secondPage.getAsJsonArray("result").size());
+    Assert.assertFalse(secondPage.has("next-offset"));
+    Assert.assertEquals(0, secondPage.get("prev-offset").getAsInt());
+  }
+
+  @Test
+  public void deletedCommentsLeaveTheIndex() throws Exception {
+    postComment("hello world");
+
+    servlet.send("POST", "/comment-delete", new HashMap<String, String>());
+
+    Assert.assertEquals(0, search("hello", 5, 0).get("matches").getAsInt());
+    Assert.assertEquals(0, search("halo", 5, 0).get("matches").getAsInt());
+  }
+
+  private void postComment(String text) throws Exception {
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    parameters.put("comment-text", text);
+    servlet.send("POST", "/comment-post", parameters);
+
+    Assert.assertTrue(servlet.getTranslationQueue().awaitIdle(TIMEOUT_MILLIS));
+  }
+
+  private JsonObject search(String query, int commentsNumber, int offset) throws Exception {
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    parameters.put("q", query);
+    parameters.put("comments-number", String.valueOf(commentsNumber));
+    parameters.put("offset", String.valueOf(offset));
+
+    return JsonParser.parseString(servlet.send("GET", "/comment-search", parameters)).getAsJsonObject();
+  }
+}
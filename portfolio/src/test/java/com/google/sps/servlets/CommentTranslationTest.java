@@ -0,0 +1,105 @@
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the background translation of posted comments. */
+@RunWith(JUnit4.class)
+public final class CommentTranslationTest {
+  private static final String COMMENT_TEXT  = "hello";
+  private static final long TIMEOUT_MILLIS  = 10000;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig(), new LocalMemcacheServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvEmail("tester@google.com")
+      .setEnvAuthDomain("google.com");
+
+  private CommentDataServletHarness servlet;
+
+  @After
+  public void tearDown() {
+    servlet.getTranslationQueue().shutdown();
+    helper.tearDown();
+  }
+
+  @Test
+  public void translationsReplaceOriginalText() throws Exception {
+    postAndWait((text, languageCode) -> languageCode + ":" + text);
+
+    Assert.assertEquals("ja:" + COMMENT_TEXT, getFirstComment("ja"));
+    Assert.assertEquals("ru:" + COMMENT_TEXT, getFirstComment("ru"));
+    Assert.assertEquals(0, countDeadLetters());
+  }
+
+  @Test
+  public void failedTranslationIsRetried() throws Exception {
+    AtomicInteger japaneseAttempts = new AtomicInteger();
+
+    postAndWait((text, languageCode) -> {
+      if (languageCode.equals("ja") && japaneseAttempts.incrementAndGet() < 3) {
+        throw new IllegalStateException("Translation API unavailable");
+      }
+      return languageCode + ":" + text;
+    });
+
+    Assert.assertEquals(3, japaneseAttempts.get());
+    Assert.assertEquals("ja:" + COMMENT_TEXT, getFirstComment("ja"));
+    Assert.assertEquals(0, countDeadLetters());
+  }
+
+  @Test
+  public void translationFailingEveryAttemptIsDeadLettered() throws Exception {
+    postAndWait((text, languageCode) -> {
+      if (languageCode.equals("ru")) {
+        throw new IllegalStateException("Translation API unavailable");
+      }
+      return languageCode + ":" + text;
+    });
+
+    Assert.assertEquals(COMMENT_TEXT, getFirstComment("ru"));
+    Assert.assertEquals("ja:" + COMMENT_TEXT, getFirstComment("ja"));
+    Assert.assertEquals(1, countDeadLetters());
+  }
+
+  private void postAndWait(BiFunction<String, String, String> translator) throws Exception {
+    helper.setUp();
+    servlet = new CommentDataServletHarness(translator);
+
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    parameters.put("comment-text", COMMENT_TEXT);
+    servlet.send("POST", "/comment-post", parameters);
+
+    Assert.assertTrue(servlet.getTranslationQueue().awaitIdle(TIMEOUT_MILLIS));
+  }
+
+  private String getFirstComment(String languageCode) throws Exception {
+    HashMap<String, String> parameters = new HashMap<String, String>();
+    parameters.put("lang", languageCode);
+
+    JsonObject page = JsonParser.parseString(servlet.send("GET", "/comment-get", parameters)).getAsJsonObject();
+    return page.getAsJsonArray("result").get(0).getAsJsonObject().get(languageCode).getAsString();
+  }
+
+  private int countDeadLetters() {
+    List<Entity> deadLetters = DatastoreServiceFactory.getDatastoreService()
+        .prepare(new Query("TranslationDeadLetter")).asList(FetchOptions.Builder.withDefaults());
+    return deadLetters.size();
+  }
+}
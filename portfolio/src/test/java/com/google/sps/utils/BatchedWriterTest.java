@@ -0,0 +1,167 @@
+package com.google.sps.utils;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.api.datastore.Key;
+import com.google.apphosting.api.ApiProxy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for BatchedWriter running against the local Datastore stub. */
+@RunWith(JUnit4.class)
+public final class BatchedWriterTest {
+  private static final String KIND = "Comment";
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private int countEntities() {
+    return datastore.prepare(new Query(KIND)).countEntities(FetchOptions.Builder.withDefaults());
+  }
+
+  @Test
+  public void putStoresEntityBeforeReturning() throws Exception {
+    BatchedWriter writer = new BatchedWriter(DatastoreServiceFactory.getAsyncDatastoreService(), 10, 5, 100);
+
+    writer.put(new Entity(KIND));
+
+    Assert.assertEquals(1, countEntities());
+    Assert.assertEquals(0, writer.getQueueSize());
+  }
+
+  @Test
+  public void concurrentPutsAreAllStored() throws Exception {
+    final BatchedWriter writer  =
+        new BatchedWriter(DatastoreServiceFactory.getAsyncDatastoreService(), 16, 8, 10000);
+    final ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    ExecutorService executor    = Executors.newFixedThreadPool(8);
+
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int thread = 0; thread < 8; ++thread) {
+      futures.add(executor.submit(() -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        for (int i = 0; i < 25; ++i) {
+          writer.put(new Entity(KIND));
+        }
+        return null;
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(200, countEntities());
+    Assert.assertEquals(0, writer.getQueueSize());
+  }
+
+  /** The second batch holds a rejected entity, it is written again one entity at a time. */
+  @Test
+  public void failedBatchOnlyFailsRejectedEntity() throws Exception {
+    final Entity first                = new Entity(KIND, "first");
+    final Entity rejected             = new Entity(KIND, "rejected");
+    final Entity accepted             = new Entity(KIND, "accepted");
+    final CountDownLatch firstBatch   = new CountDownLatch(1);
+    final List<Integer> batchSizes    = Collections.synchronizedList(new ArrayList<Integer>());
+
+    AsyncDatastoreService datastore = mock(AsyncDatastoreService.class);
+    when(datastore.put(ArgumentMatchers.<Iterable<Entity>>any())).thenAnswer(invocation -> {
+      List<Entity> batch = new ArrayList<Entity>();
+      for (Entity entity : invocation.<Iterable<Entity>>getArgument(0)) {
+        batch.add(entity);
+      }
+      batchSizes.add(batch.size());
+
+      // Holds the first batch so that the other puts queue up behind it.
+      if (batch.contains(first)) {
+        firstBatch.await();
+      }
+      return batch.contains(rejected) ? failedPut() : CompletableFuture.completedFuture(new ArrayList<Key>());
+    });
+    when(datastore.put(any(Entity.class))).thenAnswer(invocation ->
+        rejected.equals(invocation.getArgument(0)) ? failedPut() : CompletableFuture.completedFuture(null));
+
+    final BatchedWriter writer  = new BatchedWriter(datastore, 10, 5, 1000);
+    ExecutorService executor    = Executors.newFixedThreadPool(3);
+
+    Future<?> firstPut = executor.submit(() -> {
+      writer.put(first);
+      return null;
+    });
+    while (batchSizes.isEmpty()) {
+      Thread.sleep(1);
+    }
+    Future<?> rejectedPut = executor.submit(() -> {
+      writer.put(rejected);
+      return null;
+    });
+    Future<?> acceptedPut = executor.submit(() -> {
+      writer.put(accepted);
+      return null;
+    });
+    while (writer.getQueueSize() < 2) {
+      Thread.sleep(1);
+    }
+    firstBatch.countDown();
+
+    firstPut.get();
+    acceptedPut.get();
+    try {
+      rejectedPut.get();
+      Assert.fail("The put of the rejected entity should fail");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(Arrays.asList(1, 2), batchSizes);
+    Assert.assertEquals(0, writer.getQueueSize());
+  }
+
+  private static <T> CompletableFuture<T> failedPut() {
+    CompletableFuture<T> future = new CompletableFuture<T>();
+    future.completeExceptionally(new DatastoreFailureException("rejected"));
+    return future;
+  }
+}
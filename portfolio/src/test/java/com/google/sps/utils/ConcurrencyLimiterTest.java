@@ -0,0 +1,81 @@
+package com.google.sps.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the concurrency bound and rejections of ConcurrencyLimiter. */
+@RunWith(JUnit4.class)
+public final class ConcurrencyLimiterTest {
+
+  @Test
+  public void concurrentCallsAreBounded() throws Exception {
+    ConcurrencyLimiter limiter  = new ConcurrencyLimiter(2, 10000);
+    AtomicInteger running       = new AtomicInteger();
+    AtomicInteger maxRunning    = new AtomicInteger();
+    ExecutorService executor    = Executors.newFixedThreadPool(8);
+
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < 16; ++i) {
+      int value = i;
+      results.add(executor.submit(() -> limiter.call(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        return value;
+      })));
+    }
+
+    for (int i = 0; i < results.size(); ++i) {
+      Assert.assertEquals(i, (int) results.get(i).get());
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(2, maxRunning.get());
+    Assert.assertEquals(16L, limiter.getSnapshot().get("admitted"));
+    Assert.assertEquals(0, limiter.getSnapshot().get("running"));
+  }
+
+  @Test
+  public void callerIsRejectedAfterWaiting() throws Exception {
+    ConcurrencyLimiter limiter  = new ConcurrencyLimiter(1, 10);
+    CountDownLatch started      = new CountDownLatch(1);
+    CountDownLatch release      = new CountDownLatch(1);
+    ExecutorService executor    = Executors.newSingleThreadExecutor();
+
+    Future<Boolean> holder = executor.submit(() -> limiter.call(() -> {
+      started.countDown();
+      try {
+        return release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        return false;
+      }
+    }));
+    Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+    try {
+      limiter.call(() -> true);
+      Assert.fail("Expected the call to be rejected");
+    } catch (RejectedExecutionException e) {
+      Assert.assertEquals(1L, limiter.getSnapshot().get("rejected"));
+    }
+
+    release.countDown();
+    Assert.assertTrue(holder.get());
+    executor.shutdown();
+  }
+}
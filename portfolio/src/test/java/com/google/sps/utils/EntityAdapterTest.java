@@ -0,0 +1,101 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Golden-output tests for the JSON written by EntityAdapter. */
+@RunWith(JUnit4.class)
+public final class EntityAdapterTest {
+  private static final List<String> PROPERTY_NAMES = Arrays.asList("ldap", "ja");
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private static Entity createComment(String ldap, long timestamp) {
+    Entity comment = new Entity("Comment");
+    comment.setProperty("ldap", ldap);
+    comment.setProperty("timestamp", timestamp);
+    comment.setProperty("comment-text", "hello");
+    comment.setProperty("en", "hello");
+    comment.setProperty("ja", "こんにちは");
+    return comment;
+  }
+
+  @Test
+  public void writesOnlyRequestedProperties() {
+    String json = Parse.toJson(createComment("nhusin", 1593561600000L), PROPERTY_NAMES);
+
+    Assert.assertEquals("{\"ldap\":\"nhusin\",\"ja\":\"こんにちは\"}", json);
+  }
+
+  @Test
+  public void skipsMissingProperties() {
+    Entity comment = new Entity("Comment");
+    comment.setProperty("ldap", "nhusin");
+
+    String json = Parse.toJson(comment, PROPERTY_NAMES);
+
+    Assert.assertEquals("{\"ldap\":\"nhusin\"}", json);
+  }
+
+  @Test
+  public void unwrapsTextAndNumbers() {
+    Entity comment = new Entity("Comment");
+    comment.setProperty("timestamp", 1593561600000L);
+    comment.setProperty("comment-text", new Text("long text"));
+
+    String json = Parse.toJson(comment, Arrays.asList("timestamp", "comment-text"));
+
+    Assert.assertEquals("{\"timestamp\":1593561600000,\"comment-text\":\"long text\"}", json);
+  }
+
+  @Test
+  public void writesEntityListInsideResultMap() {
+    List<Entity> comments = new ArrayList<Entity>();
+    comments.add(createComment("alice", 2L));
+    comments.add(createComment("bob", 1L));
+
+    HashMap<String, Object> resultMap = new LinkedHashMap<String, Object>();
+    resultMap.put("next-cursor", "abc");
+    resultMap.put("result", comments);
+
+    String json = Parse.toJson(resultMap, PROPERTY_NAMES);
+
+    Assert.assertEquals("{\"next-cursor\":\"abc\",\"result\":["
+        + "{\"ldap\":\"alice\",\"ja\":\"こんにちは\"},"
+        + "{\"ldap\":\"bob\",\"ja\":\"こんにちは\"}]}", json);
+  }
+
+  @Test
+  public void reusesGsonForEqualPropertyLists() {
+    List<String> propertyNames = new ArrayList<String>(PROPERTY_NAMES);
+
+    Assert.assertSame(Parse.getEntityGson(PROPERTY_NAMES), Parse.getEntityGson(propertyNames));
+
+    propertyNames.add("en");
+    Assert.assertNotSame(Parse.getEntityGson(PROPERTY_NAMES), Parse.getEntityGson(propertyNames));
+    Assert.assertEquals("{\"ldap\":\"nhusin\",\"ja\":\"こんにちは\"}",
+        Parse.toJson(createComment("nhusin", 1L), PROPERTY_NAMES));
+  }
+}
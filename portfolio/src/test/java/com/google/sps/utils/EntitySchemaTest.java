@@ -0,0 +1,111 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the property whitelist and limits of EntitySchema. */
+@RunWith(JUnit4.class)
+public final class EntitySchemaTest {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+
+  private EntitySchema schema;
+  private Entity entity;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    schema = new EntitySchema()
+        .addField("title", EntitySchema.FieldType.STRING, 10, true)
+        .addField("body", EntitySchema.FieldType.TEXT, 10000, false)
+        .addField("votes", EntitySchema.FieldType.LONG, 10, true);
+    entity = new Entity("Post");
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void undeclaredPropertiesAreIgnored() {
+    schema.setProperty(entity, "injected", "value");
+
+    Assert.assertFalse(entity.hasProperty("injected"));
+  }
+
+  @Test
+  public void propertiesAreStoredWithDeclaredTypeAndIndexing() {
+    schema.setProperty(entity, "title", "hello");
+    schema.setProperty(entity, "body", "long body");
+    schema.setProperty(entity, "votes", "42");
+
+    Assert.assertEquals("hello", entity.getProperty("title"));
+    Assert.assertFalse(entity.isUnindexedProperty("title"));
+    Assert.assertEquals(new Text("long body"), entity.getProperty("body"));
+    Assert.assertTrue(entity.isUnindexedProperty("body"));
+    Assert.assertEquals(42L, entity.getProperty("votes"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void valuesOverMaxLengthAreRejected() {
+    schema.setProperty(entity, "title", "longer than ten");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void malformedLongsAreRejected() {
+    schema.setProperty(entity, "votes", "many");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void indexedStringsOverIndexLimitAreRejected() {
+    EntitySchema wideSchema = new EntitySchema().addField("title", EntitySchema.FieldType.STRING, 1000, true);
+    StringBuilder title     = new StringBuilder();
+    for (int i = 0; i < 1000; ++i) {
+      title.append("字");
+    }
+
+    wideSchema.setProperty(entity, "title", title.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void textFieldsCannotBeIndexed() {
+    new EntitySchema().addField("body", EntitySchema.FieldType.TEXT, 10000, true);
+  }
+
+  @Test
+  public void requiredFieldsRejectBlankValues() {
+    schema.addRequiredField("author", EntitySchema.FieldType.STRING, 10, true);
+
+    for (String value : new String[] {null, "", "   "}) {
+      try {
+        schema.setProperty(entity, "author", value);
+        Assert.fail("Accepted " + value);
+      } catch (IllegalArgumentException e) {
+        Assert.assertEquals("author is required", e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void missingRequiredFieldsAreRejected() {
+    schema.addRequiredField("author", EntitySchema.FieldType.STRING, 10, true);
+    schema.setProperty(entity, "title", "hello");
+
+    try {
+      schema.checkRequiredFields(entity);
+      Assert.fail("Accepted an entity without author");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals("author is required", e.getMessage());
+    }
+
+    schema.setProperty(entity, "author", "tester");
+    schema.checkRequiredFields(entity);
+  }
+}
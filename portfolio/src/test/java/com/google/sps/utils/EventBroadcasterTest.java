@@ -0,0 +1,63 @@
+package com.google.sps.utils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the fan-out and bounded buffers of EventBroadcaster. */
+@RunWith(JUnit4.class)
+public final class EventBroadcasterTest {
+
+  @Test
+  public void everySubscriberReceivesEventsInOrder() {
+    EventBroadcaster broadcaster      = new EventBroadcaster();
+    AtomicInteger notifications       = new AtomicInteger();
+    EventBroadcaster.Subscriber first = broadcaster.subscribe(4, notifications::incrementAndGet);
+    EventBroadcaster.Subscriber other = broadcaster.subscribe(4, notifications::incrementAndGet);
+
+    broadcaster.publish("comment", "one");
+    broadcaster.publish("delete", "two");
+
+    for (EventBroadcaster.Subscriber subscriber : new EventBroadcaster.Subscriber[] {first, other}) {
+      List<EventBroadcaster.Event> events = subscriber.takeEvents();
+      Assert.assertEquals(2, events.size());
+      Assert.assertEquals("comment", events.get(0).getType());
+      Assert.assertEquals("two", events.get(1).getData());
+      Assert.assertTrue(events.get(0).getId() < events.get(1).getId());
+      Assert.assertTrue(subscriber.takeEvents().isEmpty());
+    }
+    Assert.assertEquals(4, notifications.get());
+  }
+
+  @Test
+  public void fullBufferMarksSubscriberOverflowed() {
+    EventBroadcaster broadcaster            = new EventBroadcaster();
+    EventBroadcaster.Subscriber slow        = broadcaster.subscribe(2, () -> {});
+    EventBroadcaster.Subscriber fast        = broadcaster.subscribe(2, () -> {});
+
+    broadcaster.publish("comment", "one");
+    broadcaster.publish("comment", "two");
+    fast.takeEvents();
+    broadcaster.publish("comment", "three");
+
+    Assert.assertTrue(slow.isOverflowed());
+    Assert.assertFalse(fast.isOverflowed());
+    Assert.assertEquals(2, slow.takeEvents().size());
+    Assert.assertEquals("three", fast.takeEvents().get(0).getData());
+  }
+
+  @Test
+  public void unsubscribedSubscriberReceivesNothing() {
+    EventBroadcaster broadcaster      = new EventBroadcaster();
+    EventBroadcaster.Subscriber gone  = broadcaster.subscribe(4, () -> {});
+
+    broadcaster.unsubscribe(gone);
+    broadcaster.publish("comment", "one");
+
+    Assert.assertEquals(0, broadcaster.getSubscriberCount());
+    Assert.assertTrue(gone.takeEvents().isEmpty());
+  }
+}
@@ -0,0 +1,60 @@
+package com.google.sps.utils;
+
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the bucketing and percentiles of LatencyHistogram. */
+@RunWith(JUnit4.class)
+public final class LatencyHistogramTest {
+  @Test
+  public void emptyHistogramReportsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getPercentileMicros(99));
+  }
+
+  @Test
+  public void smallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 10; ++micros) {
+      histogram.recordMicros(micros);
+    }
+
+    Assert.assertEquals(5, histogram.getPercentileMicros(50));
+    Assert.assertEquals(10, histogram.getPercentileMicros(100));
+  }
+
+  @Test
+  public void percentilesAreWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 100000; ++micros) {
+      histogram.recordMicros(micros);
+    }
+
+    assertWithinPercent(50000, histogram.getPercentileMicros(50), 7);
+    assertWithinPercent(99000, histogram.getPercentileMicros(99), 7);
+    Assert.assertEquals(100000, histogram.getPercentileMicros(100));
+  }
+
+  @Test
+  public void summaryHasCountMeanAndMax() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(1000000);
+    histogram.recordNanos(3000000);
+
+    Map<String, Long> summary = histogram.getSummary();
+
+    Assert.assertEquals(2L, (long) summary.get("count"));
+    Assert.assertEquals(2000L, (long) summary.get("mean-us"));
+    Assert.assertEquals(3000L, (long) summary.get("max-us"));
+  }
+
+  private static void assertWithinPercent(long expected, long actual, double percent) {
+    Assert.assertTrue("expected about " + expected + " but was " + actual,
+        Math.abs(actual - expected) <= expected * percent / 100);
+  }
+}
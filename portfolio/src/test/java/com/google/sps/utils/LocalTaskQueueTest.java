@@ -0,0 +1,101 @@
+package com.google.sps.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the retries, dead-lettering and concurrency bound of LocalTaskQueue. */
+@RunWith(JUnit4.class)
+public final class LocalTaskQueueTest {
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  /** Handler failing the first failures attempts of every task. */
+  private static class FlakyHandler implements TaskHandler {
+    private final int failures;
+    private final AtomicInteger attempts      = new AtomicInteger();
+    private final AtomicInteger running       = new AtomicInteger();
+    private final AtomicInteger maxRunning    = new AtomicInteger();
+    private final List<Long> attemptMillis    = new CopyOnWriteArrayList<Long>();
+    private final List<String> deadLetters    = new CopyOnWriteArrayList<String>();
+
+    private FlakyHandler(int failures) {
+      this.failures = failures;
+    }
+
+    @Override
+    public void handle(HashMap<String, String> parameters) throws Exception {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      attemptMillis.add(System.currentTimeMillis());
+      try {
+        Thread.sleep(5);
+        if (attempts.incrementAndGet() <= failures) {
+          throw new IllegalStateException("attempt " + attempts.get() + " failed");
+        }
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+
+    @Override
+    public void deadLetter(HashMap<String, String> parameters, Exception cause) {
+      deadLetters.add(parameters.get("task"));
+    }
+  }
+
+  @Test
+  public void failedTaskIsRetriedWithBackoff() throws Exception {
+    FlakyHandler handler  = new FlakyHandler(2);
+    LocalTaskQueue queue  = new LocalTaskQueue(handler, 1, 5, 20, 1000);
+
+    queue.enqueue(Collections.singletonList(createTask("a")));
+
+    Assert.assertTrue(queue.awaitIdle(TIMEOUT_MILLIS));
+    Assert.assertEquals(3, handler.attempts.get());
+    Assert.assertTrue(handler.deadLetters.isEmpty());
+    Assert.assertTrue(handler.attemptMillis.get(2) - handler.attemptMillis.get(1)
+        >= handler.attemptMillis.get(1) - handler.attemptMillis.get(0));
+    queue.shutdown();
+  }
+
+  @Test
+  public void taskIsDeadLetteredAfterLastAttempt() throws Exception {
+    FlakyHandler handler  = new FlakyHandler(Integer.MAX_VALUE);
+    LocalTaskQueue queue  = new LocalTaskQueue(handler, 1, 3, 1, 10);
+
+    queue.enqueue(Collections.singletonList(createTask("a")));
+
+    Assert.assertTrue(queue.awaitIdle(TIMEOUT_MILLIS));
+    Assert.assertEquals(3, handler.attempts.get());
+    Assert.assertEquals(Collections.singletonList("a"), handler.deadLetters);
+    queue.shutdown();
+  }
+
+  @Test
+  public void concurrencyIsBounded() throws Exception {
+    FlakyHandler handler  = new FlakyHandler(0);
+    LocalTaskQueue queue  = new LocalTaskQueue(handler, 2, 1, 1, 10);
+
+    List<HashMap<String, String>> tasks = new CopyOnWriteArrayList<HashMap<String, String>>();
+    for (int i = 0; i < 20; ++i) {
+      tasks.add(createTask(String.valueOf(i)));
+    }
+    queue.enqueue(tasks);
+
+    Assert.assertTrue(queue.awaitIdle(TIMEOUT_MILLIS));
+    Assert.assertEquals(20, handler.attempts.get());
+    Assert.assertTrue(handler.maxRunning.get() <= 2);
+    queue.shutdown();
+  }
+
+  private static HashMap<String, String> createTask(String name) {
+    HashMap<String, String> task = new HashMap<String, String>();
+    task.put("task", name);
+    return task;
+  }
+}
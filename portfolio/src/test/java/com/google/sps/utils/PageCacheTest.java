@@ -0,0 +1,145 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for PageCache running against the local Memcache stub. */
+@RunWith(JUnit4.class)
+public final class PageCacheTest {
+  private static final String KIND              = "Comment";
+  private static final String QUERY             = "Comment:timestamp desc,en asc,ldap asc";
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalMemcacheServiceTestConfig());
+
+  private PageCache cache;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    cache = new PageCache(2);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void missThenHit() {
+    String pageKey = PageCache.createPageKey(5, QUERY, null);
+
+    Assert.assertNull(cache.get(KIND, pageKey));
+
+    cache.put(KIND, pageKey, cache.getVersion(KIND), null, "cursor-1", "page-0");
+    PageCache.CachedPage page = cache.get(KIND, pageKey);
+
+    Assert.assertEquals("page-0", page.getJson());
+    Assert.assertEquals("cursor-1", page.getNextCursor());
+    Assert.assertEquals(1L, cache.getStats().get("hits"));
+    Assert.assertEquals(1L, cache.getStats().get("misses"));
+    Assert.assertEquals("memcache", cache.getStats().get("backend"));
+  }
+
+  @Test
+  public void invalidateMakesPagesStale() {
+    String pageKey = PageCache.createPageKey(5, QUERY, null);
+    cache.put(KIND, pageKey, cache.getVersion(KIND), null, "cursor-1", "page-0");
+
+    cache.invalidate(KIND);
+
+    Assert.assertNull(cache.get(KIND, pageKey));
+    Assert.assertEquals(1L, cache.getStats().get("stale-hits"));
+  }
+
+  @Test
+  public void pageQueriedBeforeInvalidateIsStale() {
+    String pageKey  = PageCache.createPageKey(5, QUERY, null);
+    long version    = cache.getVersion(KIND);
+
+    // A write lands between the query and put().
+    cache.invalidate(KIND);
+    cache.put(KIND, pageKey, version, null, "cursor-1", "page-before-write");
+
+    Assert.assertNull(cache.get(KIND, pageKey));
+  }
+
+  @Test
+  public void evictedVersionDoesNotGoBack() throws Exception {
+    String pageKey  = PageCache.createPageKey(5, QUERY, null);
+    long version    = cache.getVersion(KIND);
+    cache.put(KIND, pageKey, version, null, "cursor-1", "page-0");
+    cache.invalidate(KIND);
+    cache.invalidate(KIND);
+
+    Thread.sleep(5);
+    MemcacheServiceFactory.getMemcacheService().delete("page-cache-version|" + KIND);
+
+    Assert.assertTrue(cache.getVersion(KIND) > version + 2);
+    Assert.assertNull(cache.get(KIND, pageKey));
+  }
+
+  @Test
+  public void invalidateOnlyAffectsItsNamespace() {
+    String pageKey = PageCache.createPageKey(5, QUERY, null);
+    cache.put(KIND, pageKey, cache.getVersion(KIND), null, "cursor-1", "page-0");
+    cache.put("Marker", pageKey, cache.getVersion("Marker"), null, "cursor-1", "marker-page-0");
+
+    cache.invalidate("Marker");
+
+    Assert.assertEquals("page-0", cache.get(KIND, pageKey).getJson());
+  }
+
+  @Test
+  public void onlyFirstPagesAreCached() {
+    String firstKey   = PageCache.createPageKey(5, QUERY, null);
+    String secondKey  = PageCache.createPageKey(5, QUERY, "cursor-1");
+    String thirdKey   = PageCache.createPageKey(5, QUERY, "cursor-2");
+
+    cache.put(KIND, firstKey, cache.getVersion(KIND), null, "cursor-1", "page-0");
+    cache.put(KIND, secondKey, cache.getVersion(KIND), "cursor-1", "cursor-2", "page-1");
+    cache.put(KIND, thirdKey, cache.getVersion(KIND), "cursor-2", "cursor-3", "page-2");
+
+    Assert.assertEquals("page-1", cache.get(KIND, secondKey).getJson());
+    Assert.assertNull(cache.get(KIND, thirdKey));
+  }
+
+  @Test
+  public void pagesWithUnknownCursorAreNotCached() {
+    String pageKey = PageCache.createPageKey(5, QUERY, "unknown-cursor");
+
+    cache.put(KIND, pageKey, cache.getVersion(KIND), "unknown-cursor", "cursor-1", "page-?");
+
+    Assert.assertNull(cache.get(KIND, pageKey));
+  }
+
+  @Test
+  public void pageSizeAndQueryArePartOfKey() {
+    cache.put(KIND, PageCache.createPageKey(5, QUERY, null), cache.getVersion(KIND), null, "cursor-1", "page-0");
+
+    Assert.assertNull(cache.get(KIND, PageCache.createPageKey(10, QUERY, null)));
+    Assert.assertNull(cache.get(KIND, PageCache.createPageKey(5, "Comment:timestamp desc,ja asc,ldap asc", null)));
+  }
+
+  @Test
+  public void fallsBackToInProcessStoreWithoutAppEngine() {
+    helper.tearDown();
+    PageCache localCache  = new PageCache(2);
+    String pageKey        = PageCache.createPageKey(5, QUERY, null);
+
+    localCache.put(KIND, pageKey, localCache.getVersion(KIND), null, "cursor-1", "page-0");
+    Assert.assertEquals("page-0", localCache.get(KIND, pageKey).getJson());
+    Assert.assertEquals("in-process", localCache.getStats().get("backend"));
+
+    localCache.invalidate(KIND);
+    Assert.assertNull(localCache.get(KIND, pageKey));
+    helper.setUp();
+  }
+}
@@ -0,0 +1,95 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the index shapes and queries built by QuerySpec. */
+@RunWith(JUnit4.class)
+public final class QuerySpecTest {
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private static QuerySpec createCommentQuery() {
+    return new QuerySpec("Comment")
+        .withSort("timestamp", SortDirection.DESCENDING)
+        .withProjection("ldap", String.class)
+        .withProjection("timestamp", Long.class)
+        .withProjection("en", String.class);
+  }
+
+  @Test
+  public void indexShapeListsEqualitySortThenProjections() {
+    Assert.assertEquals("Comment:timestamp desc,en asc,ldap asc", createCommentQuery().getIndexShape());
+    Assert.assertEquals("Comment:ldap asc,timestamp desc,en asc",
+        createCommentQuery().withEqualityFilter("ldap", "nhusin").getIndexShape());
+  }
+
+  @Test
+  public void filterValuesAndLowerBoundDoNotChangeShape() {
+    Assert.assertEquals(createCommentQuery().withEqualityFilter("ldap", "a").getIndexShape(),
+        createCommentQuery().withEqualityFilter("ldap", "b").withLowerBound(10L).getIndexShape());
+  }
+
+  @Test
+  public void singlePropertyQueriesUseBuiltInIndexes() {
+    Assert.assertFalse(new QuerySpec("Comment").withSort("timestamp", SortDirection.DESCENDING)
+        .needsCompositeIndex());
+    Assert.assertTrue(createCommentQuery().needsCompositeIndex());
+  }
+
+  @Test
+  public void missingIndexesAreReported() {
+    QuerySpec indexed   = createCommentQuery();
+    QuerySpec unindexed = createCommentQuery().withEqualityFilter("ldap", null);
+
+    List<QuerySpec> missing = DatastoreIndexes.findMissing(Arrays.asList(indexed, unindexed),
+        new HashSet<String>(Arrays.asList(indexed.getIndexShape())));
+
+    Assert.assertEquals(Arrays.asList(unindexed), missing);
+  }
+
+  @Test
+  public void queryAppliesFiltersAndProjections() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (long timestamp = 0; timestamp < 6; ++timestamp) {
+      Entity comment = new Entity("Comment");
+      comment.setProperty("ldap", timestamp % 2 == 0 ? "alice" : "bob");
+      comment.setProperty("timestamp", timestamp);
+      comment.setProperty("en", "comment " + timestamp);
+      comment.setProperty("ja", "コメント");
+      datastore.put(comment);
+    }
+
+    QuerySpec querySpec   = createCommentQuery().withEqualityFilter("ldap", "alice").withLowerBound(2L);
+    List<Entity> results  = datastore.prepare(querySpec.toQuery()).asList(FetchOptions.Builder.withDefaults());
+
+    Assert.assertEquals(2, results.size());
+    Assert.assertEquals(4L, results.get(0).getProperty("timestamp"));
+    Assert.assertEquals("comment 2", results.get(1).getProperty("en"));
+    Assert.assertFalse(results.get(0).hasProperty("ja"));
+  }
+}
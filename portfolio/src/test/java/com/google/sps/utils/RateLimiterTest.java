@@ -0,0 +1,65 @@
+package com.google.sps.utils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the token buckets of RateLimiter, driven by a fake clock. */
+@RunWith(JUnit4.class)
+public final class RateLimiterTest {
+  private final AtomicLong nowNanos     = new AtomicLong();
+  private final RateLimiter rateLimiter = new RateLimiter(3, 0.5, nowNanos::get);
+
+  @Test
+  public void burstIsAllowedThenRejected() {
+    for (int i = 0; i < 3; ++i) {
+      Assert.assertTrue(rateLimiter.tryAcquire("alice"));
+    }
+
+    Assert.assertFalse(rateLimiter.tryAcquire("alice"));
+    Assert.assertEquals(2000, rateLimiter.getRetryAfterMillis("alice"));
+  }
+
+  @Test
+  public void tokensRefillOverTime() {
+    for (int i = 0; i < 3; ++i) {
+      rateLimiter.tryAcquire("alice");
+    }
+
+    advanceSeconds(1);
+    Assert.assertFalse(rateLimiter.tryAcquire("alice"));
+    advanceSeconds(1);
+    Assert.assertTrue(rateLimiter.tryAcquire("alice"));
+
+    advanceSeconds(60);
+    for (int i = 0; i < 3; ++i) {
+      Assert.assertTrue(rateLimiter.tryAcquire("alice"));
+    }
+    Assert.assertFalse(rateLimiter.tryAcquire("alice"));
+  }
+
+  @Test
+  public void keysHaveSeparateBuckets() {
+    for (int i = 0; i < 4; ++i) {
+      rateLimiter.tryAcquire("alice");
+    }
+
+    Assert.assertTrue(rateLimiter.tryAcquire("bob"));
+    Assert.assertEquals(0, rateLimiter.getRetryAfterMillis("bob"));
+
+    Map<String, Object> snapshot = rateLimiter.getSnapshot();
+    Assert.assertEquals(2, snapshot.get("tracked-keys"));
+    Assert.assertEquals(4L, snapshot.get("allowed"));
+    Assert.assertEquals(1L, snapshot.get("rejected"));
+    Assert.assertEquals(1L, ((Map<?, ?>) snapshot.get("rejected-keys")).get("alice"));
+    Assert.assertFalse(((Map<?, ?>) snapshot.get("rejected-keys")).containsKey("bob"));
+  }
+
+  private void advanceSeconds(long seconds) {
+    nowNanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+}
@@ -0,0 +1,104 @@
+package com.google.sps.utils;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the tokenizer, ranking and incremental updates of SearchIndex. */
+@RunWith(JUnit4.class)
+public final class SearchIndexTest {
+  private static final String POSTING_KIND = "Posting";
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private SearchIndex index;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    index = new SearchIndex(POSTING_KIND);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void tokenizeLowercasesAndDropsStopWords() {
+    Assert.assertEquals(Arrays.asList("hello", "world", "42"), SearchIndex.tokenize("Hello, the World! 42 a"));
+  }
+
+  @Test
+  public void tokenizeSplitsCjkIntoCharacterPairs() {
+    Assert.assertEquals(Arrays.asList("こん", "んに", "にち", "ちは", "abc"), SearchIndex.tokenize("こんにちは abc"));
+  }
+
+  @Test
+  public void documentsMatchingMoreTermsRankFirst() {
+    Key partial = createKey(1);
+    Key full    = createKey(2);
+    index.index(partial, 1, Collections.singletonList("pizza party"));
+    index.index(full, 2, Collections.singletonList("pizza pasta party"));
+
+    Assert.assertEquals(Arrays.asList(full, partial), index.search("pasta pizza", 2));
+  }
+
+  @Test
+  public void rareTermsOutweighCommonTerms() {
+    Key common  = createKey(1);
+    Key rare    = createKey(2);
+    index.index(common, 1, Collections.singletonList("hello hello"));
+    index.index(rare, 2, Collections.singletonList("zebra"));
+    index.index(createKey(3), 3, Collections.singletonList("hello"));
+    index.index(createKey(4), 4, Collections.singletonList("hello"));
+
+    Assert.assertEquals(rare, index.search("hello zebra", 4).get(0));
+  }
+
+  @Test
+  public void updateRemovesVanishedTerms() {
+    Key document = createKey(1);
+    index.index(document, 1, Collections.singletonList("bonjour"));
+
+    index.update(document, 1, Collections.singletonList("bonjour"), Collections.singletonList("hello"));
+
+    Assert.assertTrue(index.search("bonjour", 1).isEmpty());
+    Assert.assertEquals(Collections.singletonList(document), index.search("hello", 1));
+  }
+
+  @Test
+  public void removeDeletesEveryPostingOfTheDocument() {
+    Key removed = createKey(1);
+    Key kept    = createKey(2);
+    index.index(removed, 1, Arrays.asList("hello world", "bonjour"));
+    index.index(kept, 2, Collections.singletonList("hello"));
+
+    HashMap<Key, List<String>> removedTexts = new HashMap<Key, List<String>>();
+    removedTexts.put(removed, Arrays.asList("hello world", "bonjour"));
+    index.remove(removedTexts);
+
+    Assert.assertEquals(Collections.singletonList(kept), index.search("hello world bonjour", 1));
+    Assert.assertEquals(1, DatastoreServiceFactory.getDatastoreService().prepare(new Query(POSTING_KIND))
+        .countEntities(FetchOptions.Builder.withDefaults()));
+  }
+
+  private static Key createKey(long id) {
+    return KeyFactory.createKey("Comment", id);
+  }
+}
@@ -0,0 +1,111 @@
+package com.google.sps.utils;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for ShardedCounter running against the local Datastore stub. */
+@RunWith(JUnit4.class)
+public final class ShardedCounterTest {
+  private static final String SHARD_KIND = "TestCounterShard";
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void unknownCounterIsZero() {
+    Assert.assertEquals(0, new ShardedCounter(SHARD_KIND, 4).getCount("total"));
+  }
+
+  @Test
+  public void incrementsAreVisibleThroughCacheAndDatastore() {
+    ShardedCounter counter = new ShardedCounter(SHARD_KIND, 4);
+    Assert.assertEquals(0, counter.getCount("total"));
+
+    for (int i = 0; i < 10; ++i) {
+      counter.increment("total", 1);
+    }
+    counter.increment("author:alice", 3);
+
+    Assert.assertEquals(10, counter.getCount("total"));
+    Assert.assertEquals(10, new ShardedCounter(SHARD_KIND, 4).getCount("total"));
+    Assert.assertEquals(3, new ShardedCounter(SHARD_KIND, 4).getCount("author:alice"));
+  }
+
+  @Test
+  public void resetClearsGivenCounters() {
+    ShardedCounter counter = new ShardedCounter(SHARD_KIND, 4);
+    counter.increment("total", 5);
+    counter.increment("author:alice", 5);
+    counter.increment("author:bob", 5);
+
+    counter.reset(Arrays.asList("total", "author:alice"));
+
+    Assert.assertEquals(0, counter.getCount("total"));
+    Assert.assertEquals(0, counter.getCount("author:alice"));
+    Assert.assertEquals(5, counter.getCount("author:bob"));
+  }
+
+  @Test
+  public void resetDeletesMoreShardsThanOneBatch() {
+    ShardedCounter counter  = new ShardedCounter(SHARD_KIND, 20);
+    List<String> names      = new ArrayList<String>();
+    for (int i = 0; i < 30; ++i) {
+      names.add("author:" + i);
+      counter.increment("author:" + i, 1);
+    }
+
+    counter.reset(names);
+
+    for (String name : names) {
+      Assert.assertEquals(0, new ShardedCounter(SHARD_KIND, 20).getCount(name));
+    }
+  }
+
+  @Test
+  public void concurrentIncrementsAreNotLost() throws Exception {
+    final ShardedCounter counter            = new ShardedCounter(SHARD_KIND, 32);
+    final ApiProxy.Environment environment  = ApiProxy.getCurrentEnvironment();
+    ExecutorService executor                = Executors.newFixedThreadPool(8);
+
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int thread = 0; thread < 8; ++thread) {
+      futures.add(executor.submit(() -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        for (int i = 0; i < 20; ++i) {
+          counter.increment("total", 1);
+        }
+        return null;
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(160, new ShardedCounter(SHARD_KIND, 32).getCount("total"));
+  }
+}
@@ -0,0 +1,210 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts page views in memory and adds them to a sharded Datastore counter every
+ * flushIntervalMillis, so a view costs no Datastore call and the count survives restarts and
+ * includes the views of every instance.
+ *
+ * <p>The counter is split over NUM_SHARDS entities of kind SHARD_KIND. A flush adds the views of
+ * this instance to a random shard in a transaction, so instances flushing at the same time rarely
+ * touch the same entity, and then reads every shard back by key to get the total. Counts shown
+ * between flushes are that total plus the views counted here since the last flush.
+ *
+ * <p>A commit that fails may still have been applied, e.g. after a timeout. Every write has an id
+ * that the shard keeps among its last MAX_WRITE_IDS writes, and a failed write is retried by the
+ * next flush on the same shard with the same id, so it is added at most once.
+ *
+ * <p>Flushes run on request threads, from increment() and getCount(), because App Engine API
+ * calls are only allowed from threads that belong to a request. Views counted since the last
+ * flush are lost if the instance shuts down.
+ */
+public final class PageViewCounter {
+
+  private static final Logger logger = Logger.getLogger(PageViewCounter.class.getName());
+  private static final String SHARD_KIND = "PageViewShard";
+  private static final String COUNT_PROPERTY = "count";
+  private static final String WRITE_IDS_PROPERTY = "writeIds";
+  private static final int NUM_SHARDS = 20;
+  private static final int MAX_ATTEMPTS = 3;
+  private static final int MAX_WRITE_IDS = 50;
+
+  private final long flushIntervalMillis;
+  private final LongAdder unflushed = new LongAdder();
+  private final ReentrantLock flushLock = new ReentrantLock();
+
+  /** Total of the shards when they were last read, plus the views being written. */
+  private volatile long persisted = 0;
+  private volatile long lastFlushMillis = 0;
+  /** Write that failed and has to be retried as is, only used while holding flushLock. */
+  private ShardWrite failedWrite;
+
+  public PageViewCounter(long flushIntervalMillis) {
+    this.flushIntervalMillis = flushIntervalMillis;
+  }
+
+  /** Counts a page view. */
+  public void increment() {
+    unflushed.increment();
+    flushIfDue();
+  }
+
+  /** Returns the number of page views of every instance, up to the last flush of the others. */
+  public long getCount() {
+    flushIfDue();
+    return persisted + unflushed.sum();
+  }
+
+  /** Writes the views counted since the last flush, unless another request is already doing it. */
+  public void flush() {
+    if (!flushLock.tryLock()) {
+      return;
+    }
+    try {
+      lastFlushMillis = System.currentTimeMillis();
+      DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+      if (failedWrite == null) {
+        // Views counted after sum() stay in the adder for the next flush. They are taken out of
+        // unflushed before being added to persisted, so getCount() may miss them for a moment but
+        // never counts them twice.
+        long delta = unflushed.sum();
+        if (delta != 0) {
+          unflushed.add(-delta);
+          persisted += delta;
+          failedWrite = new ShardWrite(
+              UUID.randomUUID().toString(), ThreadLocalRandom.current().nextInt(NUM_SHARDS), delta);
+        }
+      }
+      if (failedWrite != null) {
+        addToShard(datastore, failedWrite);
+        failedWrite = null;
+      }
+
+      persisted = readTotal(datastore);
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void flushIfDue() {
+    if (System.currentTimeMillis() - lastFlushMillis < flushIntervalMillis) {
+      return;
+    }
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      // The views are kept in memory, the request that triggered the flush should not fail.
+      logger.log(Level.WARNING, "Could not flush page views", e);
+    }
+  }
+
+  /**
+   * Adds the views of a write to its shard, unless the shard already has its id. Retries when the
+   * shard is being written by another flush.
+   */
+  @SuppressWarnings("unchecked")
+  private static void addToShard(DatastoreService datastore, ShardWrite write) {
+    Key key = getShardKey(write.shard);
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        Entity shard;
+        try {
+          shard = datastore.get(transaction, key);
+        } catch (EntityNotFoundException e) {
+          shard = new Entity(key);
+          shard.setProperty(COUNT_PROPERTY, 0L);
+        }
+
+        List<String> writeIds = new ArrayList<>();
+        if (shard.hasProperty(WRITE_IDS_PROPERTY)) {
+          writeIds.addAll((Collection<String>) shard.getProperty(WRITE_IDS_PROPERTY));
+        }
+        if (writeIds.contains(write.id)) {
+          return;
+        }
+        writeIds.add(write.id);
+        if (writeIds.size() > MAX_WRITE_IDS) {
+          writeIds.remove(0);
+        }
+
+        shard.setProperty(COUNT_PROPERTY, (Long) shard.getProperty(COUNT_PROPERTY) + write.delta);
+        shard.setUnindexedProperty(WRITE_IDS_PROPERTY, writeIds);
+        datastore.put(transaction, shard);
+        transaction.commit();
+        return;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  /** Returns the sum of every shard. Reads by key are strongly consistent, unlike queries. */
+  private static long readTotal(DatastoreService datastore) {
+    List<Key> keys = new ArrayList<>();
+    for (int i = 0; i < NUM_SHARDS; i++) {
+      keys.add(getShardKey(i));
+    }
+
+    long total = 0;
+    for (Entity shard : datastore.get(keys).values()) {
+      total += (Long) shard.getProperty(COUNT_PROPERTY);
+    }
+    return total;
+  }
+
+  private static Key getShardKey(int shard) {
+    return KeyFactory.createKey(SHARD_KIND, "shard-" + shard);
+  }
+
+  /** Views to add to a shard, with the id that makes retrying the write safe. */
+  private static final class ShardWrite {
+    private final String id;
+    private final int shard;
+    private final long delta;
+
+    private ShardWrite(String id, int shard, long delta) {
+      this.id = id;
+      this.shard = shard;
+      this.delta = delta;
+    }
+  }
+}
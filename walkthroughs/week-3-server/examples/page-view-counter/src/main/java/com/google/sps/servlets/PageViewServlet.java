@@ -14,24 +14,33 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.data.PageViewCounter;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet that returns HTML that contains the page view count. */
+/**
+ * Servlet that returns HTML that contains the page view count.
+ *
+ * <p>Views are counted by a PageViewCounter, which writes them to Datastore every
+ * FLUSH_INTERVAL_MILLIS, so the count can lag that much behind the views of other instances.
+ */
 @WebServlet("/page-views")
 public class PageViewServlet extends HttpServlet {
 
-  private int pageViews = 0;
+  private static final long FLUSH_INTERVAL_MILLIS = 5 * 1000;
+
+  private final PageViewCounter pageViews = new PageViewCounter(FLUSH_INTERVAL_MILLIS);
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    pageViews++;
+    pageViews.increment();
 
     response.setContentType("text/html;");
     response.getWriter().println("<h1>Page Views</h1>");
-    response.getWriter().println("<p>This page has been viewed " + pageViews + " times.</p>");
+    response.getWriter().println(
+        "<p>This page has been viewed " + pageViews.getCount() + " times.</p>");
   }
 }
@@ -0,0 +1,156 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for PageViewCounter and the shards it writes to the local Datastore stub. */
+@RunWith(JUnit4.class)
+public final class PageViewCounterTest {
+
+  private static final int THREADS = 8;
+  private static final int VIEWS_PER_THREAD = 200;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void concurrentIncrementsAreSpreadOverShards() throws Exception {
+    // Every increment tries to flush.
+    PageViewCounter counter = new PageViewCounter(0);
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < THREADS; thread++) {
+      futures.add(executor.submit(() -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        for (int i = 0; i < VIEWS_PER_THREAD; i++) {
+          counter.increment();
+          Assert.assertTrue(counter.getCount() <= THREADS * VIEWS_PER_THREAD);
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    counter.flush();
+
+    List<Entity> shards = getShards();
+    long total = 0;
+    for (Entity shard : shards) {
+      total += (Long) shard.getProperty("count");
+    }
+    Assert.assertTrue("Only " + shards.size() + " shards were written", shards.size() > 1);
+    Assert.assertEquals(THREADS * VIEWS_PER_THREAD, total);
+    Assert.assertEquals(total, counter.getCount());
+    Assert.assertEquals(total, new PageViewCounter(0).getCount());
+  }
+
+  @Test
+  public void timedOutShardWriteIsRetriedOnce() {
+    PageViewCounter counter = new PageViewCounter(Long.MAX_VALUE);
+    for (int i = 0; i < 5; i++) {
+      counter.increment();
+    }
+
+    timeOutNextShardCommit();
+    try {
+      counter.flush();
+      Assert.fail("Expected the flush to fail");
+    } catch (ApiProxy.ApiDeadlineExceededException expected) {
+      // The shard was written anyway.
+    }
+    counter.flush();
+
+    List<Entity> shards = getShards();
+    Assert.assertEquals(1, shards.size());
+    Assert.assertEquals(5L, shards.get(0).getProperty("count"));
+    Assert.assertEquals(1, ((Collection<?>) shards.get(0).getProperty("writeIds")).size());
+    Assert.assertEquals(5, counter.getCount());
+  }
+
+  private static List<Entity> getShards() {
+    List<Entity> shards = new ArrayList<>();
+    DatastoreServiceFactory.getDatastoreService()
+        .prepare(new Query("PageViewShard"))
+        .asIterable()
+        .forEach(shards::add);
+    return shards;
+  }
+
+  /**
+   * Lets the next shard commit reach the Datastore stub, then reports it as timed out to
+   * PageViewCounter, so the write is applied but looks failed.
+   */
+  private static void timeOutNextShardCommit() {
+    ApiProxy.Delegate<ApiProxy.Environment> stub = ApiProxy.getDelegate();
+    AtomicBoolean pending = new AtomicBoolean(true);
+    ApiProxy.setDelegate((ApiProxy.Delegate<?>) Proxy.newProxyInstance(
+        PageViewCounterTest.class.getClassLoader(),
+        new Class<?>[] {ApiProxy.Delegate.class},
+        (proxy, method, args) -> {
+          boolean timeOut = method.getName().equals("makeAsyncCall")
+              && "Commit".equals(args[2])
+              && pending.getAndSet(false);
+          try {
+            Object result = method.invoke(stub, args);
+            if (!timeOut) {
+              return result;
+            }
+            ((Future<?>) result).get();
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+          CompletableFuture<byte[]> timedOut = new CompletableFuture<>();
+          timedOut.completeExceptionally(
+              new ApiProxy.ApiDeadlineExceededException("datastore_v3", "Commit"));
+          return timedOut;
+        }));
+  }
+}
@@ -0,0 +1,150 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only series of one count per year, e.g. sightings by year.
+ *
+ * <p>Counts are stored in an int array indexed by year - firstYear, with 0 for the years missing
+ * from the data, next to the prefix sums of that array. The total of any range of years is then a
+ * difference of two prefix sums, so every value of a range, downsampled or rolling average query
+ * takes constant time however long the series is.
+ */
+public final class YearSeries {
+
+  private final int firstYear;
+  private final int[] counts;
+  private final long[] prefixSums;
+
+  private YearSeries(int firstYear, int[] counts) {
+    this.firstYear = firstYear;
+    this.counts = counts;
+    this.prefixSums = new long[counts.length + 1];
+    for (int i = 0; i < counts.length; i++) {
+      prefixSums[i + 1] = prefixSums[i] + counts[i];
+    }
+  }
+
+  /** Parses a CSV stream with one "year,count" line per year. Years may come in any order. */
+  public static YearSeries parseCsv(InputStream csv) throws IOException {
+    int[] years = new int[64];
+    int[] values = new int[64];
+    int size = 0;
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      String[] cells = line.split(",");
+      if (cells.length < 2) {
+        throw new IOException("Expected year,count but got: " + line);
+      }
+      if (size == years.length) {
+        years = Arrays.copyOf(years, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      try {
+        years[size] = Integer.parseInt(cells[0].trim());
+        values[size] = Integer.parseInt(cells[1].trim());
+      } catch (NumberFormatException e) {
+        throw new IOException("Expected year,count but got: " + line, e);
+      }
+      size++;
+    }
+
+    if (size == 0) {
+      return new YearSeries(0, new int[0]);
+    }
+    int firstYear = Arrays.stream(years, 0, size).min().getAsInt();
+    int lastYear = Arrays.stream(years, 0, size).max().getAsInt();
+    int[] counts = new int[lastYear - firstYear + 1];
+    for (int i = 0; i < size; i++) {
+      counts[years[i] - firstYear] += values[i];
+    }
+    return new YearSeries(firstYear, counts);
+  }
+
+  public boolean isEmpty() {
+    return counts.length == 0;
+  }
+
+  public int getFirstYear() {
+    return firstYear;
+  }
+
+  public int getLastYear() {
+    return firstYear + counts.length - 1;
+  }
+
+  /** Returns the count of a year, 0 outside the series. */
+  public int get(int year) {
+    int index = year - firstYear;
+    return index >= 0 && index < counts.length ? counts[index] : 0;
+  }
+
+  /** Returns the total of the years from fromYear to toYear, both included. */
+  public long sum(long fromYear, long toYear) {
+    long from = Math.max(0, fromYear - firstYear);
+    long to = Math.min(counts.length - 1, toYear - firstYear);
+    return from > to ? 0 : prefixSums[(int) to + 1] - prefixSums[(int) from];
+  }
+
+  /** Returns the count of every year from fromYear to toYear, by year. */
+  public Map<Integer, Number> getRange(int fromYear, int toYear) {
+    return getBuckets(fromYear, toYear, 1);
+  }
+
+  /**
+   * Returns the totals of consecutive buckets of bucketYears years from fromYear to toYear, by the
+   * first year of the bucket. The last bucket stops at toYear. Years are added as longs, so a
+   * bucket larger than the range is a single bucket rather than an overflow.
+   */
+  public Map<Integer, Number> getBuckets(int fromYear, int toYear, int bucketYears) {
+    if (bucketYears < 1) {
+      throw new IllegalArgumentException("bucketYears should be at least 1: " + bucketYears);
+    }
+    Map<Integer, Number> buckets = new LinkedHashMap<>();
+    for (long year = fromYear; year <= toYear; year += bucketYears) {
+      buckets.put((int) year, sum(year, Math.min(toYear, year + bucketYears - 1)));
+    }
+    return buckets;
+  }
+
+  /**
+   * Returns, for every year from fromYear to toYear, the average count of that year and the
+   * windowYears - 1 years before it. Years before the series count as 0.
+   */
+  public Map<Integer, Number> getRollingAverages(int fromYear, int toYear, int windowYears) {
+    if (windowYears < 1) {
+      throw new IllegalArgumentException("windowYears should be at least 1: " + windowYears);
+    }
+    Map<Integer, Number> averages = new LinkedHashMap<>();
+    for (long year = fromYear; year <= toYear; year++) {
+      averages.put((int) year, (double) sum(year - windowYears + 1, year) / windowYears);
+    }
+    return averages;
+  }
+}
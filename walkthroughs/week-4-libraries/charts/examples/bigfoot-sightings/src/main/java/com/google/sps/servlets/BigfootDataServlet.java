@@ -15,41 +15,115 @@
 package com.google.sps.servlets;
 
 import com.google.gson.Gson;
+import com.google.sps.data.YearSeries;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.Scanner;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Returns bigfoot data as a JSON object, e.g. {"2017": 52, "2018": 34}] */
+/**
+ * Returns bigfoot data as a JSON object, e.g. {"2017": 52, "2018": 34}
+ *
+ * <p>Optional parameters select part of the series:
+ *
+ * <ul>
+ *   <li>from and to: the first and last year, by default those of the data.
+ *   <li>bucket: returns the total of every bucket of that many years instead, by first year.
+ *   <li>window: returns the average of every year and the window - 1 years before it instead,
+ *       at most the number of years of the data.
+ * </ul>
+ *
+ * e.g. /bigfoot-data?from=1970&to=2010&bucket=5
+ *
+ * <p>The data never changes while the servlet runs, so the JSON of every set of parameters is
+ * cached, and browsers may cache it as well.
+ */
 @WebServlet("/bigfoot-data")
 public class BigfootDataServlet extends HttpServlet {
 
-  private LinkedHashMap<Integer, Integer> bigfootSightings = new LinkedHashMap<>();
+  private static final String CSV_DATA_PATH = "/WEB-INF/bigfoot-sightings-by-year.csv";
+  private static final int MAX_CACHED_RESPONSES = 1000;
+  private static final int MAX_AGE_SECONDS = 60 * 60;
 
-  @Override
-  public void init() {
-    Scanner scanner = new Scanner(getServletContext().getResourceAsStream(
-        "/WEB-INF/bigfoot-sightings-by-year.csv"));
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      String[] cells = line.split(",");
+  private final Gson gson = new Gson();
+  private YearSeries bigfootSightings;
 
-      Integer year = Integer.valueOf(cells[0]);
-      Integer sightings = Integer.valueOf(cells[1]);
+  /** JSON by normalized parameters. Cleared when it grows past MAX_CACHED_RESPONSES. */
+  private final Map<String, byte[]> responseCache = new ConcurrentHashMap<>();
 
-      bigfootSightings.put(year, sightings);
+  @Override
+  public void init() throws ServletException {
+    try (InputStream csv = getServletContext().getResourceAsStream(CSV_DATA_PATH)) {
+      bigfootSightings = YearSeries.parseCsv(csv);
+    } catch (IOException e) {
+      throw new ServletException("Could not load the bigfoot data", e);
     }
-    scanner.close();
   }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    response.setContentType("application/json");
-    Gson gson = new Gson();
-    String json = gson.toJson(bigfootSightings);
-    response.getWriter().println(json);
+    int from;
+    int to;
+    int bucket;
+    int window;
+    try {
+      from = Math.max(bigfootSightings.getFirstYear(),
+          getIntParameter(request, "from", bigfootSightings.getFirstYear()));
+      to = Math.min(bigfootSightings.getLastYear(),
+          getIntParameter(request, "to", bigfootSightings.getLastYear()));
+      bucket = getIntParameter(request, "bucket", 1);
+      window = getIntParameter(request, "window", 1);
+      if (bucket < 1 || window < 1) {
+        throw new IllegalArgumentException("bucket and window should be at least 1");
+      }
+      if (bucket > 1 && window > 1) {
+        throw new IllegalArgumentException("Use either bucket or window");
+      }
+      int seriesYears = bigfootSightings.getLastYear() - bigfootSightings.getFirstYear() + 1;
+      // An empty series answers {} to anything.
+      if (!bigfootSightings.isEmpty() && window > seriesYears) {
+        throw new IllegalArgumentException("window should be at most " + seriesYears);
+      }
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+
+    // Any bucket of the whole range gives the same single bucket.
+    int bucketYears = Math.min(bucket, Math.max(1, to - from + 1));
+
+    if (responseCache.size() > MAX_CACHED_RESPONSES) {
+      responseCache.clear();
+    }
+    String key = from + "/" + to + "/" + bucketYears + "/" + window;
+    byte[] json = responseCache.computeIfAbsent(key, k -> {
+      Map<Integer, Number> series = window > 1
+          ? bigfootSightings.getRollingAverages(from, to, window)
+          : bigfootSightings.getBuckets(from, to, bucketYears);
+      return gson.toJson(series).getBytes(StandardCharsets.UTF_8);
+    });
+
+    response.setContentType("application/json; charset=UTF-8");
+    response.setHeader("Cache-Control", "public, max-age=" + MAX_AGE_SECONDS);
+    response.setContentLength(json.length);
+    response.getOutputStream().write(json);
+  }
+
+  private static int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+    String value = request.getParameter(name);
+    if (value == null || value.isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " should be a number");
+    }
   }
 }
@@ -15,9 +15,25 @@
 google.charts.load('current', {'packages':['corechart']});
 google.charts.setOnLoadCallback(drawChart);
 
-/** Fetches bigfoot sightings data and uses it to create a chart. */
+/**
+ * Fetches the part of the bigfoot sightings data selected in the form and uses
+ * it to create a chart. Redraws the chart whenever the form is submitted.
+ */
 function drawChart() {
-  fetch('/bigfoot-data').then(response => response.json())
+  const form = document.getElementById('series-form');
+  form.onsubmit = (event) => {
+    event.preventDefault();
+    drawChart();
+  };
+
+  const params = new URLSearchParams(form.elements['series'].value);
+  ['from', 'to'].forEach((name) => {
+    if (form.elements[name].value !== '') {
+      params.append(name, form.elements[name].value);
+    }
+  });
+
+  fetch('/bigfoot-data?' + params.toString()).then(response => response.json())
   .then((bigfootSightings) => {
     const data = new google.visualization.DataTable();
     data.addColumn('string', 'Year');
@@ -0,0 +1,105 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the parsing and the range queries of YearSeries. */
+@RunWith(JUnit4.class)
+public final class YearSeriesTest {
+
+  private static YearSeries parse(String csv) throws IOException {
+    return YearSeries.parseCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static Map<Integer, Number> mapOf(Object... yearsAndValues) {
+    Map<Integer, Number> map = new LinkedHashMap<>();
+    for (int i = 0; i < yearsAndValues.length; i += 2) {
+      map.put((Integer) yearsAndValues[i], (Number) yearsAndValues[i + 1]);
+    }
+    return map;
+  }
+
+  @Test
+  public void parsesUnorderedYearsWithGaps() throws Exception {
+    YearSeries series = parse("2003,4\n\n2000, 1\r\n2003,2\n2001,3\n");
+
+    Assert.assertEquals(2000, series.getFirstYear());
+    Assert.assertEquals(2003, series.getLastYear());
+    Assert.assertEquals(1, series.get(2000));
+    Assert.assertEquals(0, series.get(2002));
+    Assert.assertEquals(6, series.get(2003));
+    Assert.assertEquals(0, series.get(1999));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsLinesWithoutCount() throws Exception {
+    parse("2000,1\n2001\n");
+  }
+
+  @Test
+  public void sumsClampToTheSeries() throws Exception {
+    YearSeries series = parse("2000,1\n2001,2\n2002,4\n");
+
+    Assert.assertEquals(7, series.sum(1990, 2010));
+    Assert.assertEquals(6, series.sum(2001, 2002));
+    Assert.assertEquals(0, series.sum(2002, 2001));
+    Assert.assertEquals(0, series.sum(2010, 2020));
+  }
+
+  @Test
+  public void bucketsStopAtToYear() throws Exception {
+    YearSeries series = parse("2000,1\n2001,2\n2002,4\n2003,8\n2004,16\n");
+
+    Assert.assertEquals(mapOf(2000, 3L, 2002, 12L, 2004, 16L), series.getBuckets(2000, 2004, 2));
+    Assert.assertEquals(mapOf(2001, 2L, 2002, 4L), series.getRange(2001, 2002));
+  }
+
+  @Test
+  public void hugeBucketNearTheEndOfIntDoesNotOverflow() throws Exception {
+    int lastYear = Integer.MAX_VALUE;
+    YearSeries series = parse((lastYear - 1) + ",1\n" + lastYear + ",2\n");
+
+    Assert.assertEquals(mapOf(lastYear - 1, 3L),
+        series.getBuckets(lastYear - 1, lastYear, Integer.MAX_VALUE));
+    Assert.assertEquals(mapOf(lastYear - 1, 1L, lastYear, 2L),
+        series.getBuckets(lastYear - 1, lastYear, 1));
+  }
+
+  @Test
+  public void rollingAveragesCountYearsBeforeTheSeriesAsZero() throws Exception {
+    YearSeries series = parse("2000,2\n2001,4\n2002,6\n");
+
+    Assert.assertEquals(mapOf(2000, 1.0, 2001, 3.0, 2002, 5.0),
+        series.getRollingAverages(2000, 2002, 2));
+  }
+
+  @Test
+  public void emptySeriesHasNoBuckets() throws Exception {
+    YearSeries series = parse("\n");
+
+    Assert.assertTrue(series.isEmpty());
+    Assert.assertTrue(
+        series.getBuckets(series.getFirstYear(), series.getLastYear(), 1).isEmpty());
+  }
+}
@@ -0,0 +1,255 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tallies votes by name for one instance and merges the tallies of all instances through Datastore.
+ *
+ * <p>vote() only bumps an in-memory LongAdder. At most once every flushIntervalMillis, the next
+ * call to vote() or getJson() also writes what this instance tallied since the previous write and
+ * reads back what every instance has written. getJson() answers with those stored totals plus the
+ * local votes that are still waiting, so a voter sees their own vote right away, while the votes
+ * of other instances show up after their next write.
+ *
+ * <p>The totals live in one VOTE_KIND entity per name, under a shared parent. Keeping them in one
+ * entity group lets a write update several names atomically and lets the read use an ancestor
+ * query, which is strongly consistent. The group is limited to about one write per second, far
+ * above what a write per instance every few seconds needs.
+ *
+ * <p>Datastore can report a failed commit that actually went through, for instance on a deadline.
+ * The counter therefore tags each write with an id and records the last MAX_FLUSH_IDS ids in a
+ * FLUSH_KIND entity, inside the same transaction. A write that failed is sent again unchanged,
+ * with the same id, and skipped if that id is already recorded.
+ *
+ * <p>There is no background thread, because App Engine only lets request threads call its APIs.
+ * Votes tallied but not written yet are lost when the instance goes away.
+ */
+public final class VoteCounter {
+
+  private static final Logger logger = Logger.getLogger(VoteCounter.class.getName());
+  private static final String VOTE_KIND = "Vote";
+  private static final String VOTES_PROPERTY = "votes";
+  private static final String FLUSH_KIND = "VoteFlushes";
+  private static final String FLUSH_IDS_PROPERTY = "ids";
+  private static final int MAX_FLUSH_IDS = 50;
+  private static final Key PARENT_KEY = KeyFactory.createKey("Votes", "totals");
+  private static final Key FLUSHES_KEY = KeyFactory.createKey(PARENT_KEY, FLUSH_KIND, "recent");
+
+  private final long flushIntervalMillis;
+  private final Supplier<String> flushIds;
+  private final Gson gson = new Gson();
+  private final ConcurrentHashMap<String, LongAdder> pending = new ConcurrentHashMap<>();
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final AtomicLong version = new AtomicLong();
+
+  /** Totals when they were last read, plus the votes being written. */
+  private volatile Map<String, Long> persisted = new HashMap<>();
+  private volatile long lastFlushMillis = 0;
+  private volatile Snapshot snapshot = new Snapshot(-1, "{}");
+  /** Votes taken out of pending and not written yet, only used while holding flushLock. */
+  private VoteWrite unwritten;
+
+  public VoteCounter(long flushIntervalMillis) {
+    this(flushIntervalMillis, () -> UUID.randomUUID().toString());
+  }
+
+  /** Creates a counter that takes the id of each write from flushIds. Used by tests. */
+  VoteCounter(long flushIntervalMillis, Supplier<String> flushIds) {
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.flushIds = flushIds;
+  }
+
+  /** Counts a vote. */
+  public void vote(String name) {
+    pending.computeIfAbsent(name, key -> new LongAdder()).increment();
+    version.incrementAndGet();
+    flushIfDue();
+  }
+
+  /**
+   * Returns the totals as a JSON object from vote name to count, including the votes of this
+   * instance that are not flushed yet. The JSON is only rebuilt when a count changed.
+   */
+  public String getJson() {
+    flushIfDue();
+
+    Snapshot current = snapshot;
+    long currentVersion = version.get();
+    if (current.version == currentVersion) {
+      return current.json;
+    }
+
+    Map<String, Long> totals = new TreeMap<>(persisted);
+    pending.forEach((name, votes) -> totals.merge(name, votes.sum(), Long::sum));
+    totals.values().removeIf(votes -> votes == 0);
+
+    current = new Snapshot(currentVersion, gson.toJson(totals));
+    snapshot = current;
+    return current.json;
+  }
+
+  /** Writes the votes counted since the last flush, unless another request is already doing it. */
+  public void flush() {
+    if (!flushLock.tryLock()) {
+      return;
+    }
+    try {
+      lastFlushMillis = System.currentTimeMillis();
+
+      if (unwritten == null) {
+        Map<String, Long> deltas = new HashMap<>();
+        pending.forEach((name, votes) -> {
+          // Votes counted after sum() stay in the adder for the next flush.
+          long delta = votes.sum();
+          if (delta != 0) {
+            votes.add(-delta);
+            deltas.put(name, delta);
+          }
+        });
+
+        if (!deltas.isEmpty()) {
+          // Taken out of pending first, so getJson() may miss them for a moment but never counts
+          // them twice.
+          Map<String, Long> totals = new HashMap<>(persisted);
+          deltas.forEach((name, delta) -> totals.merge(name, delta, Long::sum));
+          persisted = totals;
+          version.incrementAndGet();
+          unwritten = new VoteWrite(flushIds.get(), deltas);
+        }
+      }
+
+      DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+      if (unwritten != null) {
+        // A failed write is kept and retried as is by the next flush.
+        addVotes(datastore, unwritten);
+        unwritten = null;
+      }
+
+      Map<String, Long> totals = new HashMap<>();
+      Query query = new Query(VOTE_KIND).setAncestor(PARENT_KEY);
+      for (Entity entity : datastore.prepare(query).asIterable()) {
+        totals.put(entity.getKey().getName(), (Long) entity.getProperty(VOTES_PROPERTY));
+      }
+
+      if (!totals.equals(persisted)) {
+        persisted = totals;
+        version.incrementAndGet();
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void flushIfDue() {
+    if (System.currentTimeMillis() - lastFlushMillis < flushIntervalMillis) {
+      return;
+    }
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      // The votes are kept in memory, the request that triggered the flush should not fail.
+      logger.log(Level.WARNING, "Could not flush votes", e);
+    }
+  }
+
+  /** Adds the votes of a write to the totals, unless a write with the same id was already added. */
+  @SuppressWarnings("unchecked")
+  private static void addVotes(DatastoreService datastore, VoteWrite write) {
+    Transaction transaction = datastore.beginTransaction();
+    try {
+      List<Key> keys = new ArrayList<>();
+      keys.add(FLUSHES_KEY);
+      for (String name : write.deltas.keySet()) {
+        keys.add(KeyFactory.createKey(PARENT_KEY, VOTE_KIND, name));
+      }
+      Map<Key, Entity> stored = datastore.get(transaction, keys);
+
+      Entity flushes = stored.getOrDefault(FLUSHES_KEY, new Entity(FLUSHES_KEY));
+      List<String> flushIds = new ArrayList<>();
+      if (flushes.hasProperty(FLUSH_IDS_PROPERTY)) {
+        flushIds.addAll((Collection<String>) flushes.getProperty(FLUSH_IDS_PROPERTY));
+      }
+      if (flushIds.contains(write.id)) {
+        return;
+      }
+      flushIds.add(write.id);
+      if (flushIds.size() > MAX_FLUSH_IDS) {
+        flushIds.remove(0);
+      }
+      flushes.setUnindexedProperty(FLUSH_IDS_PROPERTY, flushIds);
+
+      List<Entity> updated = new ArrayList<>();
+      updated.add(flushes);
+      for (Key key : keys.subList(1, keys.size())) {
+        Entity entity = stored.getOrDefault(key, new Entity(key));
+        long votes =
+            entity.hasProperty(VOTES_PROPERTY) ? (Long) entity.getProperty(VOTES_PROPERTY) : 0;
+        entity.setProperty(VOTES_PROPERTY, votes + write.deltas.get(key.getName()));
+        updated.add(entity);
+      }
+      datastore.put(transaction, updated);
+      transaction.commit();
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+  }
+
+  /** Votes to add to the totals, with the id that makes retrying the write safe. */
+  private static final class VoteWrite {
+    private final String id;
+    private final Map<String, Long> deltas;
+
+    private VoteWrite(String id, Map<String, Long> deltas) {
+      this.id = id;
+      this.deltas = deltas;
+    }
+  }
+
+  /** JSON of the totals at a version. */
+  private static final class Snapshot {
+    private final long version;
+    private final String json;
+
+    private Snapshot(long version, String json) {
+      this.version = version;
+      this.json = json;
+    }
+  }
+}
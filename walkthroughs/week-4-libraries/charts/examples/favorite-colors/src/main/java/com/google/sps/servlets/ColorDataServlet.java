@@ -14,35 +14,47 @@
 
 package com.google.sps.servlets;
 
-import com.google.gson.Gson;
+import com.google.sps.data.VoteCounter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-
+/**
+ * Counts votes for favorite colors and returns the totals as a JSON object, e.g. {"Red": 3}.
+ *
+ * <p>Votes are counted by a VoteCounter, which keeps them in memory and writes them to Datastore
+ * every FLUSH_INTERVAL_MILLIS, so the totals can lag that much behind the votes of other instances.
+ */
 @WebServlet("/color-data")
 public class ColorDataServlet extends HttpServlet {
 
-  private Map<String, Integer> colorVotes = new HashMap<>();
+  private static final long FLUSH_INTERVAL_MILLIS = 10 * 1000;
+
+  /** The colors of the form in index.html. Anything else is rejected. */
+  private static final Set<String> COLORS =
+      new HashSet<>(Arrays.asList("Red", "Orange", "Yellow", "Green", "Blue", "Violet"));
+
+  private final VoteCounter colorVotes = new VoteCounter(FLUSH_INTERVAL_MILLIS);
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("application/json");
-    Gson gson = new Gson();
-    String json = gson.toJson(colorVotes);
-    response.getWriter().println(json);
+    response.getWriter().println(colorVotes.getJson());
   }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String color = request.getParameter("color");
-    int currentVotes = colorVotes.containsKey(color) ? colorVotes.get(color) : 0;
-    colorVotes.put(color, currentVotes + 1);
+    if (color == null || !COLORS.contains(color)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown color");
+      return;
+    }
+    colorVotes.vote(color);
 
     response.sendRedirect("/index.html");
   }
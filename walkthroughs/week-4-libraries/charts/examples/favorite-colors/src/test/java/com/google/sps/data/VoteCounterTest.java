@@ -0,0 +1,145 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for VoteCounter. Each VoteCounter stands for one App Engine instance, all of them sharing
+ * the local Datastore stub.
+ */
+@RunWith(JUnit4.class)
+public final class VoteCounterTest {
+
+  /** Only flushes when the test calls flush(). */
+  private static final long NEVER = Long.MAX_VALUE;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void instancesSeeEachOtherAfterFlushing() {
+    VoteCounter first = new VoteCounter(NEVER);
+    VoteCounter second = new VoteCounter(NEVER);
+    vote(first, "red", 2);
+    vote(first, "blue", 1);
+    vote(second, "red", 3);
+
+    Assert.assertEquals("{\"blue\":1,\"red\":2}", first.getJson());
+    Assert.assertEquals("{\"red\":3}", second.getJson());
+
+    first.flush();
+    second.flush();
+    first.flush();
+
+    Assert.assertEquals("{\"blue\":1,\"red\":5}", first.getJson());
+    Assert.assertEquals("{\"blue\":1,\"red\":5}", second.getJson());
+  }
+
+  @Test
+  public void writeWithKnownIdIsSkipped() {
+    // The second write reuses the id of the first, as a retry of a write that went through does.
+    VoteCounter first = new VoteCounter(NEVER, () -> "write-1");
+    VoteCounter second = new VoteCounter(NEVER, () -> "write-1");
+    vote(first, "green", 4);
+    vote(second, "green", 4);
+
+    first.flush();
+    second.flush();
+
+    Assert.assertEquals(4, getVotes(new VoteCounter(0).getJson(), "green"));
+  }
+
+  @Test
+  public void jsonIsReusedUntilACountChanges() {
+    VoteCounter counter = new VoteCounter(NEVER);
+    vote(counter, "red", 1);
+
+    String json = counter.getJson();
+    Assert.assertSame(json, counter.getJson());
+
+    vote(counter, "red", 1);
+    String updated = counter.getJson();
+    Assert.assertNotSame(json, updated);
+    Assert.assertEquals(2, getVotes(updated, "red"));
+
+    counter.flush();
+    String flushed = counter.getJson();
+    counter.flush();
+    Assert.assertSame(flushed, counter.getJson());
+  }
+
+  @Test
+  public void votesFromManyThreadsAreAllStored() throws Exception {
+    // Every vote and every read also flushes.
+    VoteCounter counter = new VoteCounter(0);
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+
+    List<Thread> threads = new ArrayList<>();
+    for (String color : new String[] {"red", "green", "blue", "red"}) {
+      threads.add(new Thread(() -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        vote(counter, color, 150);
+        counter.getJson();
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    counter.flush();
+
+    JsonObject totals = JsonParser.parseString(new VoteCounter(0).getJson()).getAsJsonObject();
+    Assert.assertEquals(300, totals.get("red").getAsLong());
+    Assert.assertEquals(150, totals.get("green").getAsLong());
+    Assert.assertEquals(150, totals.get("blue").getAsLong());
+    Assert.assertEquals(totals, JsonParser.parseString(counter.getJson()));
+  }
+
+  private static void vote(VoteCounter counter, String name, int votes) {
+    for (int i = 0; i < votes; i++) {
+      counter.vote(name);
+    }
+  }
+
+  private static long getVotes(String json, String name) {
+    JsonObject totals = JsonParser.parseString(json).getAsJsonObject();
+    return totals.has(name) ? totals.get(name).getAsLong() : 0;
+  }
+}
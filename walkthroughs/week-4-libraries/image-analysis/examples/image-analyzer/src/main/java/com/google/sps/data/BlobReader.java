@@ -0,0 +1,175 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads blobs from Blobstore, which only returns up to BlobstoreService.MAX_BLOB_FETCH_SIZE bytes
+ * per fetchData call.
+ *
+ * <p>readAll() knows the size of the blob, so it fills a single array of exactly that size and
+ * fetches up to parallelism chunks at the same time. openStream() fetches one chunk at a time as it
+ * is read, for callers that do not need the whole blob in memory at once.
+ *
+ * <p>On App Engine, API calls can only be made from threads that belong to a request, so the
+ * threadFactory should come from ThreadManager.currentRequestThreadFactory() and the reader should
+ * only be used during that request.
+ */
+public final class BlobReader {
+
+  private final BlobstoreService blobstoreService;
+  private final int chunkSize;
+  private final int parallelism;
+  private final ThreadFactory threadFactory;
+
+  public BlobReader(BlobstoreService blobstoreService, int chunkSize, int parallelism,
+      ThreadFactory threadFactory) {
+    this.blobstoreService = blobstoreService;
+    this.chunkSize = chunkSize;
+    this.parallelism = parallelism;
+    this.threadFactory = threadFactory;
+  }
+
+  /** Returns the size bytes of a blob, size being BlobInfo.getSize(). */
+  public byte[] readAll(BlobKey blobKey, long size) throws IOException {
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IOException("Blob is too large to read into an array: " + size + " bytes");
+    }
+    byte[] bytes = new byte[(int) size];
+    int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+    if (chunks <= 1) {
+      readChunk(blobKey, bytes, 0);
+      return bytes;
+    }
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(parallelism, chunks), threadFactory);
+    try {
+      List<Future<Void>> reads = new ArrayList<>();
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        int start = chunk * chunkSize;
+        reads.add(executor.submit(() -> {
+          readChunk(blobKey, bytes, start);
+          return null;
+        }));
+      }
+      for (Future<Void> read : reads) {
+        read.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading blob " + blobKey, e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException
+          ? (IOException) e.getCause()
+          : new IOException("Could not read blob " + blobKey, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return bytes;
+  }
+
+  /** Returns a stream of the size bytes of a blob, fetched one chunk at a time as they are read. */
+  public InputStream openStream(BlobKey blobKey, long size) {
+    return new BlobInputStream(blobKey, size);
+  }
+
+  /** Fetches the chunk starting at start into bytes. */
+  private void readChunk(BlobKey blobKey, byte[] bytes, int start) throws IOException {
+    int length = Math.min(chunkSize, bytes.length - start);
+    if (length == 0) {
+      return;
+    }
+    // The end index of fetchData is inclusive.
+    byte[] chunk = blobstoreService.fetchData(blobKey, start, start + length - 1);
+    if (chunk.length != length) {
+      throw new IOException("Blob " + blobKey + " returned " + chunk.length + " bytes at " + start
+          + ", expected " + length);
+    }
+    System.arraycopy(chunk, 0, bytes, start, length);
+  }
+
+  /** Stream over a blob that holds at most one chunk in memory. */
+  private final class BlobInputStream extends InputStream {
+    private final BlobKey blobKey;
+    private final long size;
+    private long chunkStart = 0;
+    private byte[] chunk = new byte[0];
+    private int offset = 0;
+
+    private BlobInputStream(BlobKey blobKey, long size) {
+      this.blobKey = blobKey;
+      this.size = size;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return chunk[offset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int start, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int read = Math.min(length, chunk.length - offset);
+      System.arraycopy(chunk, offset, buffer, start, read);
+      offset += read;
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return chunk.length - offset;
+    }
+
+    /** Fetches the next chunk if the current one is used up. Returns false at the end of the blob. */
+    private boolean fill() throws IOException {
+      if (offset < chunk.length) {
+        return true;
+      }
+      long next = chunkStart + chunk.length;
+      if (next >= size) {
+        return false;
+      }
+      long end = Math.min(size, next + chunkSize) - 1;
+      chunk = blobstoreService.fetchData(blobKey, next, end);
+      if (chunk.length == 0) {
+        throw new IOException(
+            "Blob " + blobKey + " ended at " + next + ", expected " + size + " bytes");
+      }
+      chunkStart = next;
+      offset = 0;
+      return true;
+    }
+  }
+}
@@ -14,6 +14,7 @@
 
 package com.google.servlets;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.blobstore.BlobInfo;
 import com.google.appengine.api.blobstore.BlobInfoFactory;
 import com.google.appengine.api.blobstore.BlobKey;
@@ -30,7 +31,8 @@ import com.google.cloud.vision.v1.Feature;
 import com.google.cloud.vision.v1.Image;
 import com.google.cloud.vision.v1.ImageAnnotatorClient;
 import com.google.protobuf.ByteString;
-import java.io.ByteArrayOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.sps.data.BlobReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
@@ -50,6 +52,8 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/image-analysis")
 public class ImageAnalysisServlet extends HttpServlet {
 
+  private static final int BLOB_FETCH_PARALLELISM = 4;
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
 
@@ -58,20 +62,21 @@ public class ImageAnalysisServlet extends HttpServlet {
     // Get the message entered by the user.
     String message = request.getParameter("message");
 
-    // Get the BlobKey that points to the image uploaded by the user.
-    BlobKey blobKey = getBlobKey(request, "image");
+    // Get the BlobInfo of the image uploaded by the user.
+    BlobInfo blobInfo = getBlobInfo(request, "image");
 
     // User didn't upload a file, so render an error message.
-    if (blobKey == null) {
+    if (blobInfo == null) {
       out.println("Please upload an image file.");
       return;
     }
+    BlobKey blobKey = blobInfo.getBlobKey();
 
     // Get the URL of the image that the user uploaded.
     String imageUrl = getUploadedFileUrl(blobKey);
 
     // Get the labels of the image that the user uploaded.
-    byte[] blobBytes = getBlobBytes(blobKey);
+    byte[] blobBytes = getBlobBytes(blobInfo);
     List<EntityAnnotation> imageLabels = getImageLabels(blobBytes);
 
     // Output some HTML that shows the data the user entered.
@@ -90,10 +95,10 @@ public class ImageAnalysisServlet extends HttpServlet {
   }
 
   /**
-   * Returns the BlobKey that points to the file uploaded by the user, or null if the user didn't
-   * upload a file.
+   * Returns the BlobInfo of the file uploaded by the user, or null if the user didn't upload a
+   * file.
    */
-  private BlobKey getBlobKey(HttpServletRequest request, String formInputElementName) {
+  private BlobInfo getBlobInfo(HttpServletRequest request, String formInputElementName) {
     BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
     Map<String, List<BlobKey>> blobs = blobstoreService.getUploads(request);
     List<BlobKey> blobKeys = blobs.get("image");
@@ -113,35 +118,19 @@ public class ImageAnalysisServlet extends HttpServlet {
       return null;
     }
 
-    return blobKey;
+    return blobInfo;
   }
 
   /**
-   * Blobstore stores files as binary data. This function retrieves the binary data stored at the
-   * BlobKey parameter.
+   * Blobstore stores files as binary data. This function retrieves the binary data of the blob
+   * described by the BlobInfo parameter, fetching up to BLOB_FETCH_PARALLELISM chunks at a time into
+   * an array of the size of the blob.
    */
-  private byte[] getBlobBytes(BlobKey blobKey) throws IOException {
-    BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
-    ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
-
-    int fetchSize = BlobstoreService.MAX_BLOB_FETCH_SIZE;
-    long currentByteIndex = 0;
-    boolean continueReading = true;
-    while (continueReading) {
-      // end index is inclusive, so we have to subtract 1 to get fetchSize bytes
-      byte[] b =
-          blobstoreService.fetchData(blobKey, currentByteIndex, currentByteIndex + fetchSize - 1);
-      outputBytes.write(b);
-
-      // if we read fewer bytes than we requested, then we reached the end
-      if (b.length < fetchSize) {
-        continueReading = false;
-      }
-
-      currentByteIndex += fetchSize;
-    }
-
-    return outputBytes.toByteArray();
+  private byte[] getBlobBytes(BlobInfo blobInfo) throws IOException {
+    BlobReader blobReader = new BlobReader(BlobstoreServiceFactory.getBlobstoreService(),
+        BlobstoreService.MAX_BLOB_FETCH_SIZE, BLOB_FETCH_PARALLELISM,
+        ThreadManager.currentRequestThreadFactory());
+    return blobReader.readAll(blobInfo.getBlobKey(), blobInfo.getSize());
   }
 
   /**
@@ -149,7 +138,8 @@ public class ImageAnalysisServlet extends HttpServlet {
    * represented by the binary data stored in imgBytes.
    */
   private List<EntityAnnotation> getImageLabels(byte[] imgBytes) throws IOException {
-    ByteString byteString = ByteString.copyFrom(imgBytes);
+    // imgBytes is not modified afterwards, so it does not need to be copied.
+    ByteString byteString = UnsafeByteOperations.unsafeWrap(imgBytes);
     Image image = Image.newBuilder().setContent(byteString).build();
 
     Feature feature = Feature.newBuilder().setType(Feature.Type.LABEL_DETECTION).build();
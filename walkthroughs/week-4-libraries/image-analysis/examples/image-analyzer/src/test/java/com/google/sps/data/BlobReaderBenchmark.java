@@ -0,0 +1,138 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalBlobstoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+/**
+ * Times BlobReader.readAll() and openStream() against the local Blobstore stub, next to the
+ * sequential loop ImageAnalysisServlet used before. The stub answers from the local disk, so each
+ * FetchData call is delayed by FETCH_LATENCY_MILLIS, roughly the latency of a fetch on App Engine.
+ *
+ * <p>Not a test, run it with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=com.google.sps.data.BlobReaderBenchmark \
+ *     -Dexec.classpathScope=test
+ * </pre>
+ */
+public final class BlobReaderBenchmark {
+
+  private static final long FETCH_LATENCY_MILLIS = 20;
+  private static final int BLOB_SIZE = 10 * 1024 * 1024 + 12345;
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws IOException {
+    LocalServiceTestHelper helper = new LocalServiceTestHelper(
+        new LocalDatastoreServiceTestConfig(), new LocalBlobstoreServiceTestConfig());
+    helper.setUp();
+    try {
+      run();
+    } finally {
+      helper.tearDown();
+    }
+  }
+
+  private static void run() throws IOException {
+    byte[] blob = BlobReaderTest.createBytes(BLOB_SIZE);
+    BlobKey blobKey = BlobReaderTest.storeBlob(blob);
+    delayFetches();
+
+    BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
+    int chunkSize = BlobstoreService.MAX_BLOB_FETCH_SIZE;
+    BlobReader reader = new BlobReader(
+        blobstoreService, chunkSize, 4, BlobReaderTest.createRequestThreadFactory());
+
+    System.out.println("Blob of " + BLOB_SIZE + " bytes, " + FETCH_LATENCY_MILLIS + "ms per fetch");
+    for (int round = 1; round <= ROUNDS; round++) {
+      long start = System.nanoTime();
+      check(blob, readSequentially(blobstoreService, blobKey, chunkSize));
+      long sequential = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      check(blob, reader.readAll(blobKey, BLOB_SIZE));
+      long parallel = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      ByteArrayOutputStream streamed = new ByteArrayOutputStream(BLOB_SIZE);
+      try (InputStream stream = reader.openStream(blobKey, BLOB_SIZE)) {
+        byte[] buffer = new byte[8192];
+        for (int length; (length = stream.read(buffer)) != -1; ) {
+          streamed.write(buffer, 0, length);
+        }
+      }
+      long stream = System.nanoTime() - start;
+      check(blob, streamed.toByteArray());
+
+      System.out.printf("Round %d: sequential %dms, readAll %dms, openStream %dms%n",
+          round, sequential / 1000000, parallel / 1000000, stream / 1000000);
+    }
+  }
+
+  /** The previous ImageAnalysisServlet.getBlobBytes, for comparison. */
+  private static byte[] readSequentially(
+      BlobstoreService blobstoreService, BlobKey blobKey, int fetchSize) throws IOException {
+    ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+    long currentByteIndex = 0;
+    while (true) {
+      byte[] b =
+          blobstoreService.fetchData(blobKey, currentByteIndex, currentByteIndex + fetchSize - 1);
+      outputBytes.write(b);
+      if (b.length < fetchSize) {
+        return outputBytes.toByteArray();
+      }
+      currentByteIndex += fetchSize;
+    }
+  }
+
+  /** Wraps the local services so that every Blobstore FetchData call takes FETCH_LATENCY_MILLIS. */
+  @SuppressWarnings("unchecked")
+  private static void delayFetches() {
+    ApiProxy.Delegate<ApiProxy.Environment> delegate = ApiProxy.getDelegate();
+    ApiProxy.setDelegate((ApiProxy.Delegate<ApiProxy.Environment>) Proxy.newProxyInstance(
+        ApiProxy.Delegate.class.getClassLoader(),
+        new Class<?>[] {ApiProxy.Delegate.class},
+        (proxy, method, methodArgs) -> {
+          if (method.getName().startsWith("make")
+              && "blobstore".equals(methodArgs[1])
+              && "FetchData".equals(methodArgs[2])) {
+            Thread.sleep(FETCH_LATENCY_MILLIS);
+          }
+          try {
+            return method.invoke(delegate, methodArgs);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        }));
+  }
+
+  private static void check(byte[] expected, byte[] actual) {
+    if (!Arrays.equals(expected, actual)) {
+      throw new AssertionError("Read bytes differ from the blob");
+    }
+  }
+}
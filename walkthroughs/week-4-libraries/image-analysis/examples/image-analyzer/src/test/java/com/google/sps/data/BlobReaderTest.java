@@ -0,0 +1,129 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.blobstore.BlobInfo;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.blobstore.dev.BlobStorageFactory;
+import com.google.appengine.tools.development.testing.LocalBlobstoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for BlobReader running against the local Blobstore stub. */
+@RunWith(JUnit4.class)
+public final class BlobReaderTest {
+
+  private static final int CHUNK_SIZE = BlobstoreService.MAX_BLOB_FETCH_SIZE;
+  private static final int[] SIZES = {0, CHUNK_SIZE, CHUNK_SIZE + 1, 5 * CHUNK_SIZE + 123};
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig(), new LocalBlobstoreServiceTestConfig());
+
+  private BlobReader reader;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    reader = new BlobReader(BlobstoreServiceFactory.getBlobstoreService(), CHUNK_SIZE, 4,
+        createRequestThreadFactory());
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void readAllReturnsTheWholeBlob() throws IOException {
+    for (int size : SIZES) {
+      byte[] blob = createBytes(size);
+      BlobKey blobKey = storeBlob(blob);
+
+      Assert.assertArrayEquals("Blob of " + size + " bytes", blob, reader.readAll(blobKey, size));
+    }
+  }
+
+  @Test
+  public void openStreamReturnsTheWholeBlob() throws IOException {
+    for (int size : SIZES) {
+      byte[] blob = createBytes(size);
+      BlobKey blobKey = storeBlob(blob);
+
+      ByteArrayOutputStream read = new ByteArrayOutputStream();
+      try (InputStream stream = reader.openStream(blobKey, size)) {
+        byte[] buffer = new byte[8192];
+        for (int length; (length = stream.read(buffer)) != -1; ) {
+          read.write(buffer, 0, length);
+        }
+        Assert.assertEquals(-1, stream.read());
+      }
+
+      Assert.assertArrayEquals("Blob of " + size + " bytes", blob, read.toByteArray());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void readAllFailsOnBlobShorterThanSize() throws IOException {
+    BlobKey blobKey = storeBlob(createBytes(CHUNK_SIZE));
+
+    reader.readAll(blobKey, CHUNK_SIZE + 1);
+  }
+
+  /**
+   * Like ThreadManager.currentRequestThreadFactory(), creates threads that can call the local
+   * services of the test's request. The SDK's own local request thread factory fails on newer
+   * JDKs such as 17.
+   */
+  static ThreadFactory createRequestThreadFactory() {
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    return runnable -> new Thread(() -> {
+      ApiProxy.setEnvironmentForCurrentThread(environment);
+      runnable.run();
+    });
+  }
+
+  static byte[] createBytes(int size) {
+    byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  /** Stores a blob the way the local Blobstore stores an upload. */
+  static BlobKey storeBlob(byte[] bytes) throws IOException {
+    BlobKey blobKey = new BlobKey("blob-" + bytes.length + "-" + System.nanoTime());
+    try (OutputStream output = BlobStorageFactory.getBlobStorage().storeBlob(blobKey)) {
+      output.write(bytes);
+    }
+    BlobStorageFactory.getBlobInfoStorage().saveBlobInfo(new BlobInfo(
+        blobKey, "application/octet-stream", new Date(), "image.png", bytes.length));
+    return blobKey;
+  }
+}
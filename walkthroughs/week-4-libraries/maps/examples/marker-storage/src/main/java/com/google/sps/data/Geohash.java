@@ -0,0 +1,121 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geohash encoding of coordinates. A geohash names a cell of the map, and every extra character
+ * splits the cell into 32 smaller ones, so all the points of a cell share its geohash as a prefix.
+ *
+ * <p>See https://en.wikipedia.org/wiki/Geohash for the format.
+ */
+public final class Geohash {
+
+  private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+  private Geohash() {}
+
+  /**
+   * Returns the geohash of the cell of the given precision (number of characters) holding a point.
+   */
+  public static String encode(double lat, double lng, int precision) {
+    double minLat = -90;
+    double maxLat = 90;
+    double minLng = -180;
+    double maxLng = 180;
+
+    StringBuilder geohash = new StringBuilder(precision);
+    boolean lngBit = true;
+    int bits = 0;
+    int value = 0;
+    while (geohash.length() < precision) {
+      if (lngBit) {
+        double middle = (minLng + maxLng) / 2;
+        value <<= 1;
+        if (lng >= middle) {
+          value |= 1;
+          minLng = middle;
+        } else {
+          maxLng = middle;
+        }
+      } else {
+        double middle = (minLat + maxLat) / 2;
+        value <<= 1;
+        if (lat >= middle) {
+          value |= 1;
+          minLat = middle;
+        } else {
+          maxLat = middle;
+        }
+      }
+      lngBit = !lngBit;
+
+      bits++;
+      if (bits == 5) {
+        geohash.append(BASE32[value]);
+        bits = 0;
+        value = 0;
+      }
+    }
+    return geohash.toString();
+  }
+
+  /**
+   * Returns the geohashes of the given precision whose cells cover the bounds, or null if that
+   * takes more than maxCells cells. Bounds crossing the antimeridian have a west longitude greater
+   * than their east longitude.
+   */
+  public static List<String> cover(
+      double south, double west, double north, double east, int precision, int maxCells) {
+    if (west > east) {
+      List<String> cells = cover(south, west, north, 180, precision, maxCells);
+      List<String> wrapped = cover(south, -180, north, east, precision, maxCells);
+      if (cells == null || wrapped == null || cells.size() + wrapped.size() > maxCells) {
+        return null;
+      }
+      cells.addAll(wrapped);
+      return cells;
+    }
+
+    int lngBits = (5 * precision + 1) / 2;
+    int latBits = 5 * precision / 2;
+    double cellWidth = 360.0 / (1L << lngBits);
+    double cellHeight = 180.0 / (1L << latBits);
+
+    long firstColumn = getIndex(west + 180, cellWidth, 1L << lngBits);
+    long lastColumn = getIndex(east + 180, cellWidth, 1L << lngBits);
+    long firstRow = getIndex(south + 90, cellHeight, 1L << latBits);
+    long lastRow = getIndex(north + 90, cellHeight, 1L << latBits);
+    if ((lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > maxCells) {
+      return null;
+    }
+
+    List<String> cells = new ArrayList<>();
+    for (long row = firstRow; row <= lastRow; row++) {
+      for (long column = firstColumn; column <= lastColumn; column++) {
+        double lat = -90 + (row + 0.5) * cellHeight;
+        double lng = -180 + (column + 0.5) * cellWidth;
+        cells.add(encode(lat, lng, precision));
+      }
+    }
+    return cells;
+  }
+
+  private static long getIndex(double offset, double cellSize, long cells) {
+    return Math.max(0, Math.min(cells - 1, (long) Math.floor(offset / cellSize)));
+  }
+}
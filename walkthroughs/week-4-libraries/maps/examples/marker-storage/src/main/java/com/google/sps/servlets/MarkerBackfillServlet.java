@@ -0,0 +1,120 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Text;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Adds the geohash properties to markers stored before they existed, so bounded queries can find
+ * them.
+ *
+ * <p>Markers are read in key order, in batches of BATCH_SIZE. The cursor after each batch is saved
+ * in the MarkerIndex entity, so a request that runs out of time, or fails, is picked up where it
+ * stopped by the next one. cron.xml calls this every 10 minutes; once every marker has been
+ * visited the entity is marked done and requests return right away. Only cron and app admins can
+ * call it.
+ */
+@WebServlet("/admin/backfill-geohashes")
+public class MarkerBackfillServlet extends HttpServlet {
+
+  private static final int BATCH_SIZE = 500;
+
+  /** Leaves plenty of the request deadline for the last batch. */
+  private static final long TIME_BUDGET_MILLIS = 30_000;
+
+  private static final Key PROGRESS_KEY = KeyFactory.createKey("MarkerIndex", "geohash");
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    boolean isAdmin = userService.isUserLoggedIn() && userService.isUserAdmin();
+    // App Engine strips this header from requests that do not come from cron.
+    if (!isAdmin && request.getHeader("X-Appengine-Cron") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    long deadline = System.currentTimeMillis() + TIME_BUDGET_MILLIS;
+    boolean done;
+    do {
+      done = backfillBatch(BATCH_SIZE);
+    } while (!done && System.currentTimeMillis() < deadline);
+
+    response.setContentType("text/plain");
+    response.getWriter().println(done ? "Done" : "In progress");
+  }
+
+  /**
+   * Adds the geohashes of the next batchSize markers, starting from the saved cursor. Returns true
+   * once every marker has been visited.
+   */
+  boolean backfillBatch(int batchSize) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity progress;
+    try {
+      progress = datastore.get(PROGRESS_KEY);
+    } catch (EntityNotFoundException e) {
+      progress = new Entity(PROGRESS_KEY);
+    }
+    if (Boolean.TRUE.equals(progress.getProperty("done"))) {
+      return true;
+    }
+
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(batchSize).chunkSize(batchSize);
+    Text cursor = (Text) progress.getProperty("cursor");
+    if (cursor != null) {
+      fetchOptions.startCursor(Cursor.fromWebSafeString(cursor.getValue()));
+    }
+    QueryResultList<Entity> markers =
+        datastore.prepare(new Query("Marker")).asQueryResultList(fetchOptions);
+
+    List<Entity> updated = new ArrayList<>();
+    for (Entity entity : markers) {
+      if (!MarkerServlet.hasGeohashes(entity)) {
+        MarkerServlet.setGeohashes(
+            entity, (double) entity.getProperty("lat"), (double) entity.getProperty("lng"));
+        updated.add(entity);
+      }
+    }
+    if (!updated.isEmpty()) {
+      datastore.put(updated);
+    }
+
+    boolean done = markers.size() < batchSize;
+    progress.setUnindexedProperty("cursor", new Text(markers.getCursor().toWebSafeString()));
+    progress.setUnindexedProperty("done", done);
+    datastore.put(progress);
+    return done;
+  }
+}
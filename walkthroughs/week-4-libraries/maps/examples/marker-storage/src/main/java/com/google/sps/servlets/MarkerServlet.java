@@ -17,13 +17,18 @@ package com.google.sps.servlets;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.data.Geohash;
 import com.google.sps.data.Marker;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -31,16 +36,54 @@ import javax.servlet.http.HttpServletResponse;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Whitelist;
 
-/** Handles fetching and saving markers data. */
+/**
+ * Handles fetching and saving markers data.
+ *
+ * <p>GET requests can pass a bounds parameter ("south,west,north,east", as produced by
+ * LatLngBounds.toUrlValue()) to only get the markers in that part of the map, at most MAX_MARKERS.
+ */
 @WebServlet("/markers")
 public class MarkerServlet extends HttpServlet {
 
+  private static final int MAX_MARKERS = 1000;
+
+  /**
+   * The cells covering the bounds reach past them, so a query reads more markers than it returns,
+   * but never more than this many.
+   */
+  private static final int MAX_MARKERS_READ = 4 * MAX_MARKERS;
+
+  /**
+   * Every marker stores the prefixes of its geohash at these precisions, as the properties
+   * geohash1 to geohash6. A precision 6 cell is about 1.2km by 0.6km.
+   */
+  private static final int[] GEOHASH_PRECISIONS = {1, 2, 3, 4, 5, 6};
+
+  /** Datastore allows at most 30 values in an IN filter. */
+  private static final int MAX_CELLS = 24;
+
   /** Responds with a JSON array containing marker data. */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("application/json");
 
-    Collection<Marker> markers = getMarkers();
+    String bounds = request.getParameter("bounds");
+    Collection<Marker> markers;
+    if (bounds == null) {
+      markers = getMarkers();
+    } else {
+      String[] parts = bounds.split(",");
+      try {
+        if (parts.length != 4) {
+          throw new IllegalArgumentException("Bounds should be south,west,north,east: " + bounds);
+        }
+        markers = getMarkers(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+            Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+      } catch (IllegalArgumentException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        return;
+      }
+    }
     Gson gson = new Gson();
     String json = gson.toJson(markers);
 
@@ -77,12 +120,78 @@ public class MarkerServlet extends HttpServlet {
     return markers;
   }
 
+  /**
+   * Fetches the markers inside bounds from Datastore, at most MAX_MARKERS out of the first
+   * MAX_MARKERS_READ the query returns. Bounds crossing the antimeridian have a west longitude
+   * greater than their east longitude.
+   *
+   * <p>The query asks for the geohash cells covering the bounds, at the finest stored precision
+   * that needs at most MAX_CELLS cells, so it only reads markers close to the bounds. Views too
+   * large for that, such as the whole world, read markers in any order.
+   */
+  Collection<Marker> getMarkers(double south, double west, double north, double east) {
+    if (!(south <= north) || Double.isNaN(west) || Double.isNaN(east)) {
+      throw new IllegalArgumentException(
+          "Invalid bounds: " + south + "," + west + "," + north + "," + east);
+    }
+
+    Query query = new Query("Marker");
+    for (int i = GEOHASH_PRECISIONS.length - 1; i >= 0; i--) {
+      int precision = GEOHASH_PRECISIONS[i];
+      List<String> cells = Geohash.cover(south, west, north, east, precision, MAX_CELLS);
+      if (cells != null) {
+        query.setFilter(cells.size() == 1
+            ? new FilterPredicate(getGeohashProperty(precision), FilterOperator.EQUAL, cells.get(0))
+            : new FilterPredicate(getGeohashProperty(precision), FilterOperator.IN, cells));
+        break;
+      }
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    PreparedQuery results = datastore.prepare(query);
+
+    Collection<Marker> markers = new ArrayList<>();
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(MAX_MARKERS_READ).chunkSize(500);
+    for (Entity entity : results.asIterable(fetchOptions)) {
+      double lat = (double) entity.getProperty("lat");
+      double lng = (double) entity.getProperty("lng");
+      boolean visibleLng = west <= east ? lng >= west && lng <= east : lng >= west || lng <= east;
+      if (lat < south || lat > north || !visibleLng) {
+        continue;
+      }
+
+      String content = (String) entity.getProperty("content");
+      markers.add(new Marker(lat, lng, content));
+      if (markers.size() == MAX_MARKERS) {
+        break;
+      }
+    }
+    return markers;
+  }
+
+  /** Tells whether a marker has its geohash properties, see MarkerBackfillServlet. */
+  static boolean hasGeohashes(Entity entity) {
+    return entity.hasProperty(getGeohashProperty(GEOHASH_PRECISIONS[0]));
+  }
+
+  static void setGeohashes(Entity entity, double lat, double lng) {
+    String geohash = Geohash.encode(lat, lng, GEOHASH_PRECISIONS[GEOHASH_PRECISIONS.length - 1]);
+    for (int precision : GEOHASH_PRECISIONS) {
+      entity.setProperty(getGeohashProperty(precision), geohash.substring(0, precision));
+    }
+  }
+
+  private static String getGeohashProperty(int precision) {
+    return "geohash" + precision;
+  }
+
   /** Stores a marker in Datastore. */
   public void storeMarker(Marker marker) {
     Entity markerEntity = new Entity("Marker");
     markerEntity.setProperty("lat", marker.getLat());
     markerEntity.setProperty("lng", marker.getLng());
     markerEntity.setProperty("content", marker.getContent());
+    setGeohashes(markerEntity, marker.getLat(), marker.getLng());
 
     DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     datastore.put(markerEntity);
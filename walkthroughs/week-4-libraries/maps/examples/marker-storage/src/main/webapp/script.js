@@ -17,6 +17,9 @@ let map;
 /* Editable marker that displays when a user clicks in the map. */
 let editMarker;
 
+/* Markers fetched from the backend that are currently on the map. */
+let displayedMarkers = [];
+
 /** Creates a map that allows users to add markers. */
 function createMap() {
   map = new google.maps.Map(
@@ -29,12 +32,18 @@ function createMap() {
     createMarkerForEdit(event.latLng.lat(), event.latLng.lng());
   });
 
-  fetchMarkers();
+  // Only the markers in view are fetched, again every time the map stops moving.
+  map.addListener('idle', fetchMarkers);
 }
 
-/** Fetches markers from the backend and adds them to the map. */
+/** Fetches the markers in view from the backend and shows them instead of the previous ones. */
 function fetchMarkers() {
-  fetch('/markers').then(response => response.json()).then((markers) => {
+  const params = new URLSearchParams();
+  params.append('bounds', map.getBounds().toUrlValue());
+
+  fetch('/markers?' + params.toString()).then(response => response.json()).then((markers) => {
+    displayedMarkers.forEach((marker) => marker.setMap(null));
+    displayedMarkers = [];
     markers.forEach(
         (marker) => {
             createMarkerForDisplay(marker.lat, marker.lng, marker.content)});
@@ -45,6 +54,7 @@ function fetchMarkers() {
 function createMarkerForDisplay(lat, lng, content) {
   const marker =
       new google.maps.Marker({position: {lat: lat, lng: lng}, map: map});
+  displayedMarkers.push(marker);
 
   const infoWindow = new google.maps.InfoWindow({content: content});
   marker.addListener('click', () => {
@@ -0,0 +1,90 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that MarkerBackfillServlet indexes old markers across batches. */
+@RunWith(JUnit4.class)
+public final class MarkerBackfillServletTest {
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private DatastoreService datastore;
+  private MarkerServlet markerServlet;
+  private MarkerBackfillServlet backfillServlet;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    markerServlet = new MarkerServlet();
+    backfillServlet = new MarkerBackfillServlet();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void testBackfillResumesFromSavedCursor() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      storeOldMarker(48.85 + i * 0.001, 2.35);
+    }
+    Assert.assertTrue(markerServlet.getMarkers(48.8, 2.3, 48.9, 2.4).isEmpty());
+
+    Assert.assertFalse(backfillServlet.backfillBatch(2));
+    Assert.assertEquals(2, markerServlet.getMarkers(48.8, 2.3, 48.9, 2.4).size());
+    Entity progress = datastore.get(KeyFactory.createKey("MarkerIndex", "geohash"));
+    Assert.assertNotNull(progress.getProperty("cursor"));
+
+    Assert.assertFalse(backfillServlet.backfillBatch(2));
+    Assert.assertTrue(backfillServlet.backfillBatch(2));
+    Assert.assertEquals(5, markerServlet.getMarkers(48.8, 2.3, 48.9, 2.4).size());
+  }
+
+  @Test
+  public void testFinishedBackfillReturnsRightAway() {
+    storeOldMarker(48.85, 2.35);
+    Assert.assertTrue(backfillServlet.backfillBatch(2));
+
+    // Left without geohashes on purpose: a finished backfill must not read markers again.
+    storeOldMarker(48.86, 2.35);
+    Assert.assertTrue(backfillServlet.backfillBatch(2));
+    Assert.assertEquals(1, markerServlet.getMarkers(48.8, 2.3, 48.9, 2.4).size());
+  }
+
+  /** Stores a marker the way it was stored before geohashes were added. */
+  private void storeOldMarker(double lat, double lng) {
+    Entity marker = new Entity("Marker");
+    marker.setProperty("lat", lat);
+    marker.setProperty("lng", lng);
+    marker.setProperty("content", "old");
+    datastore.put(marker);
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.Marker;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that the geohash queries of MarkerServlet find the same markers as a brute force scan. */
+@RunWith(JUnit4.class)
+public final class MarkerServletTest {
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private MarkerServlet servlet;
+  private List<Marker> stored;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    servlet = new MarkerServlet();
+    stored = new ArrayList<>();
+
+    // Markers all over the world, around a city, and on both sides of the antimeridian.
+    Random random = new Random(42);
+    for (int i = 0; i < 300; i++) {
+      store(random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180);
+    }
+    for (int i = 0; i < 300; i++) {
+      store(37.42 + random.nextGaussian() * 0.05, -122.08 + random.nextGaussian() * 0.05);
+    }
+    for (int i = 0; i < 100; i++) {
+      double lng = 179 + random.nextDouble() * 2;
+      store(-17 + random.nextDouble() * 2, lng > 180 ? lng - 360 : lng);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void testBoundedQueriesMatchBruteForce() {
+    double[][] bounds = {
+      {37.41, -122.09, 37.43, -122.07}, // Street level, precision 6 cells.
+      {37.3, -122.3, 37.6, -121.9}, // City.
+      {30, -130, 45, -110}, // Region.
+      {-60, -150, 70, 20}, // Continents, too many cells at any precision.
+      {-90, -180, 90, 180}, // World.
+      {-18, 178, -15, -178}, // Crossing the antimeridian.
+      {10, 10, 10.5, 10.5}, // Nothing there.
+    };
+
+    for (double[] bound : bounds) {
+      Set<String> expected = new HashSet<>();
+      for (Marker marker : stored) {
+        if (contains(bound, marker)) {
+          expected.add(toKey(marker));
+        }
+      }
+
+      Set<String> actual = new HashSet<>();
+      for (Marker marker : servlet.getMarkers(bound[0], bound[1], bound[2], bound[3])) {
+        actual.add(toKey(marker));
+      }
+
+      String message = "Bounds " + bound[0] + "," + bound[1] + "," + bound[2] + "," + bound[3];
+      Assert.assertEquals(message, expected, actual);
+    }
+  }
+
+  private void store(double lat, double lng) {
+    Marker marker = new Marker(lat, lng, "Marker " + stored.size());
+    servlet.storeMarker(marker);
+    stored.add(marker);
+  }
+
+  private static boolean contains(double[] bound, Marker marker) {
+    double south = bound[0];
+    double west = bound[1];
+    double north = bound[2];
+    double east = bound[3];
+    double lng = marker.getLng();
+    boolean inLng = west <= east ? lng >= west && lng <= east : lng >= west || lng <= east;
+    return marker.getLat() >= south && marker.getLat() <= north && inLng;
+  }
+
+  private static String toKey(Marker marker) {
+    return marker.getLat() + "," + marker.getLng() + "," + marker.getContent();
+  }
+}
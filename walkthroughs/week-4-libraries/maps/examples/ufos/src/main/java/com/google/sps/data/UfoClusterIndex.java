@@ -0,0 +1,169 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Clusters of UFO sightings for every zoom level from 0 to maxZoom, grouped by map tile.
+ *
+ * <p>At each zoom level the map is split into square cells of cellPixels screen pixels, and the
+ * sightings of a cell become one cluster placed at their average position. cellPixels is a power
+ * of two, so every cell is exactly four cells of the next zoom level and the clusters form a
+ * hierarchy: zooming in splits a cluster, it never moves sightings to a neighbouring cluster.
+ * Because of that each level can be computed straight from the sightings, and all levels are
+ * computed in parallel.
+ *
+ * <p>Tiles use the usual Web Mercator numbering: at zoom z the map is 2^z by 2^z tiles of 256
+ * pixels, with tile (0, 0) in the north-west corner.
+ */
+public final class UfoClusterIndex {
+
+  private static final int TILE_PIXELS = 256;
+
+  private final int maxZoom;
+  private final int cellsPerTile;
+  private final List<Map<Long, List<UfoCluster>>> levels;
+
+  public UfoClusterIndex(UfoDataset dataset, int maxZoom, int cellPixels) {
+    if (Integer.bitCount(cellPixels) != 1 || cellPixels > TILE_PIXELS) {
+      throw new IllegalArgumentException(
+          "cellPixels should be a power of two up to " + TILE_PIXELS + ": " + cellPixels);
+    }
+    this.maxZoom = maxZoom;
+    this.cellsPerTile = TILE_PIXELS / cellPixels;
+    this.levels = Collections.unmodifiableList(IntStream.rangeClosed(0, maxZoom)
+        .parallel()
+        .mapToObj(zoom -> buildLevel(dataset, zoom))
+        .collect(Collectors.toList()));
+  }
+
+  public int getMaxZoom() {
+    return maxZoom;
+  }
+
+  /** Returns the clusters of a tile, or an empty list if the tile has no sightings. */
+  public List<UfoCluster> getTile(int zoom, int x, int y) {
+    if (zoom < 0 || zoom > maxZoom) {
+      throw new IllegalArgumentException("Zoom should be between 0 and " + maxZoom + ": " + zoom);
+    }
+    return levels.get(zoom).getOrDefault(getKey(x, y), Collections.emptyList());
+  }
+
+  /**
+   * Returns the clusters of a zoom level whose position is inside the bounds. Only the tiles
+   * overlapping the bounds are read, unless the level has fewer non-empty tiles than that.
+   */
+  public List<UfoCluster> getClusters(int zoom, UfoIndex.Bounds bounds) {
+    if (zoom < 0 || zoom > maxZoom) {
+      throw new IllegalArgumentException("Zoom should be between 0 and " + maxZoom + ": " + zoom);
+    }
+    Map<Long, List<UfoCluster>> level = levels.get(zoom);
+    long tiles = 1L << zoom;
+    long firstX = toTile(toWorldX(bounds.getWest()), tiles);
+    long lastX = toTile(toWorldX(bounds.getEast()), tiles);
+    long firstY = toTile(toWorldY(bounds.getNorth()), tiles);
+    long lastY = toTile(toWorldY(bounds.getSouth()), tiles);
+    long columns = bounds.getWest() > bounds.getEast()
+        ? Math.min(tiles, tiles - firstX + lastX + 1)
+        : lastX - firstX + 1;
+
+    List<UfoCluster> clusters = new ArrayList<>();
+    if (columns * (lastY - firstY + 1) > level.size()) {
+      level.values().forEach(tile -> addInBounds(tile, bounds, clusters));
+      return clusters;
+    }
+    for (long column = 0; column < columns; column++) {
+      long x = (firstX + column) % tiles;
+      for (long y = firstY; y <= lastY; y++) {
+        addInBounds(level.getOrDefault(getKey(x, y), Collections.emptyList()), bounds, clusters);
+      }
+    }
+    return clusters;
+  }
+
+  /** Returns the number of non-empty tiles at a zoom level. */
+  public int getTileCount(int zoom) {
+    return levels.get(zoom).size();
+  }
+
+  private Map<Long, List<UfoCluster>> buildLevel(UfoDataset dataset, int zoom) {
+    long cells = (1L << zoom) * cellsPerTile;
+    Map<Long, double[]> sums = new HashMap<>();
+    for (int i = 0; i < dataset.size(); i++) {
+      double lat = dataset.getLat(i);
+      double lng = dataset.getLng(i);
+      long column = Math.min(cells - 1, (long) (toWorldX(lng) * cells));
+      long row = Math.min(cells - 1, (long) (toWorldY(lat) * cells));
+
+      double[] sum = sums.computeIfAbsent(getKey(column, row), key -> new double[3]);
+      sum[0] += lat;
+      sum[1] += lng;
+      sum[2]++;
+    }
+
+    Map<Long, List<UfoCluster>> tiles = new HashMap<>();
+    for (Map.Entry<Long, double[]> cell : sums.entrySet()) {
+      long column = cell.getKey() >>> 32;
+      long row = cell.getKey() & 0xffffffffL;
+      double[] sum = cell.getValue();
+
+      long tile = getKey(column / cellsPerTile, row / cellsPerTile);
+      tiles
+          .computeIfAbsent(tile, key -> new ArrayList<>())
+          .add(new UfoCluster(sum[0] / sum[2], sum[1] / sum[2], (int) sum[2]));
+    }
+    return tiles;
+  }
+
+  private static void addInBounds(
+      List<UfoCluster> tile, UfoIndex.Bounds bounds, List<UfoCluster> clusters) {
+    for (UfoCluster cluster : tile) {
+      if (bounds.contains(cluster.getLat(), cluster.getLng())) {
+        clusters.add(cluster);
+      }
+    }
+  }
+
+  private static long toTile(double world, long tiles) {
+    return Math.max(0, Math.min(tiles - 1, (long) Math.floor(world * tiles)));
+  }
+
+  private static long getKey(long x, long y) {
+    return (x << 32) | y;
+  }
+
+  /** Web Mercator x of a longitude, from 0 at -180 to 1 at 180. */
+  private static double toWorldX(double lng) {
+    return (lng + 180) / 360;
+  }
+
+  /** Web Mercator y of a latitude, from 0 at the top of the map to 1 at the bottom. */
+  private static double toWorldY(double lat) {
+    double sin = Math.sin(Math.toRadians(Math.max(-85, Math.min(85, lat))));
+    return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+  }
+
+  /** Latitude of a Web Mercator y, the inverse of toWorldY. */
+  static double toLat(double worldY) {
+    return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * worldY))));
+  }
+}
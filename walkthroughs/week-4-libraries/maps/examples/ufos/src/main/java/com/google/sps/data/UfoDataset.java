@@ -0,0 +1,290 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only set of UFO sightings, stored as parallel latitude and longitude columns instead of
+ * one object per sighting.
+ *
+ * <p>A dataset is either parsed from a CSV file with one "lat,lng" line per sighting, or mapped
+ * from the packed binary format written by {@link #writeBinary}. Mapped datasets are read
+ * straight from the file by the operating system, so they do not need to fit on the heap.
+ *
+ * <p>The binary format is the magic number, the number of sightings, then every latitude followed
+ * by every longitude, all little-endian:
+ *
+ * <pre>
+ *   int magic | int count | double[count] lats | double[count] lngs
+ * </pre>
+ *
+ * <p>To convert a CSV file, run this class with the CSV and binary file paths as arguments.
+ */
+public final class UfoDataset {
+
+  private static final int MAGIC = 0x55464f31; // "UFO1"
+  private static final int HEADER_BYTES = 2 * Integer.BYTES;
+  private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+  };
+
+  private final int size;
+  private final DoubleBuffer lats;
+  private final DoubleBuffer lngs;
+
+  private UfoDataset(int size, DoubleBuffer lats, DoubleBuffer lngs) {
+    this.size = size;
+    this.lats = lats;
+    this.lngs = lngs;
+  }
+
+  /** Creates a dataset holding the given coordinates. Both arrays must have the same length. */
+  public static UfoDataset of(double[] lats, double[] lngs) {
+    if (lats.length != lngs.length) {
+      throw new IllegalArgumentException(
+          "Got " + lats.length + " lats and " + lngs.length + " lngs");
+    }
+    return new UfoDataset(lats.length, DoubleBuffer.wrap(lats), DoubleBuffer.wrap(lngs));
+  }
+
+  /** Parses a CSV stream with one "lat,lng" line per sighting. Further columns are ignored. */
+  public static UfoDataset parseCsv(InputStream csv) throws IOException {
+    byte[] bytes = readAll(csv);
+    double[] lats = new double[1024];
+    double[] lngs = new double[1024];
+    int count = 0;
+
+    int position = 0;
+    int lineNumber = 0;
+    while (position < bytes.length) {
+      lineNumber++;
+      int lineEnd = position;
+      while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+        lineEnd++;
+      }
+
+      int end = lineEnd;
+      if (end > position && bytes[end - 1] == '\r') {
+        end--;
+      }
+
+      if (end > position) {
+        int comma = position;
+        while (comma < end && bytes[comma] != ',') {
+          comma++;
+        }
+        int lngEnd = comma + 1;
+        while (lngEnd < end && bytes[lngEnd] != ',') {
+          lngEnd++;
+        }
+        if (comma >= end) {
+          throw new IOException("Line " + lineNumber + " has no longitude");
+        }
+
+        if (count == lats.length) {
+          lats = Arrays.copyOf(lats, count * 2);
+          lngs = Arrays.copyOf(lngs, count * 2);
+        }
+        lats[count] = parseDouble(bytes, position, comma, lineNumber);
+        lngs[count] = parseDouble(bytes, comma + 1, lngEnd, lineNumber);
+        count++;
+      }
+
+      position = lineEnd + 1;
+    }
+
+    return of(Arrays.copyOf(lats, count), Arrays.copyOf(lngs, count));
+  }
+
+  /**
+   * Maps a dataset written by {@link #writeBinary}. The file stays mapped while the dataset is
+   * used.
+   */
+  public static UfoDataset mapBinary(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+        throw new IOException(path + " is not a UFO dataset");
+      }
+      int count = buffer.getInt(Integer.BYTES);
+      long expectedBytes = HEADER_BYTES + 2L * count * Double.BYTES;
+      if (count < 0 || channel.size() != expectedBytes) {
+        throw new IOException(
+            path + " should have " + expectedBytes + " bytes for " + count + " sightings");
+      }
+
+      DoubleBuffer columns = slice(buffer, HEADER_BYTES).asDoubleBuffer();
+      DoubleBuffer lats = ((DoubleBuffer) columns.duplicate().limit(count)).slice();
+      DoubleBuffer lngs = ((DoubleBuffer) columns.duplicate().position(count)).slice();
+      return new UfoDataset(count, lats, lngs);
+    }
+  }
+
+  /** Writes this dataset in the packed binary format read by {@link #mapBinary}. */
+  public void writeBinary(OutputStream output) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(size);
+    for (DoubleBuffer column : new DoubleBuffer[] {lats, lngs}) {
+      for (int i = 0; i < size; i++) {
+        if (buffer.remaining() < Double.BYTES) {
+          output.write(buffer.array(), 0, buffer.position());
+          buffer.clear();
+        }
+        buffer.putDouble(column.get(i));
+      }
+    }
+    output.write(buffer.array(), 0, buffer.position());
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double getLat(int index) {
+    return lats.get(index);
+  }
+
+  public double getLng(int index) {
+    return lngs.get(index);
+  }
+
+  /**
+   * Encodes every sighting as a JSON array of {"lat": ..., "lng": ...} objects, the format
+   * UfoDataServlet has always returned.
+   */
+  public byte[] toJsonBytes() {
+    StringBuilder json = new StringBuilder(size * 40 + 2);
+    json.append('[');
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"lat\":").append(getLat(i)).append(",\"lng\":").append(getLng(i)).append('}');
+    }
+    json.append(']');
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Parses a decimal number such as -122.7144313. Numbers with at most 15 significant digits and no
+   * exponent are computed as an integer divided by a power of ten, which is exact in that range.
+   * Anything else falls back to Double.parseDouble.
+   */
+  private static double parseDouble(byte[] bytes, int start, int end, int lineNumber)
+      throws IOException {
+    while (start < end && bytes[start] == ' ') {
+      start++;
+    }
+    while (end > start && bytes[end - 1] == ' ') {
+      end--;
+    }
+
+    int position = start;
+    boolean negative = false;
+    if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+      negative = bytes[position] == '-';
+      position++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = -1;
+    boolean sawDigit = false;
+    for (; position < end; position++) {
+      byte b = bytes[position];
+      if (isDigit(b)) {
+        sawDigit = true;
+        mantissa = mantissa * 10 + (b - '0');
+        if (mantissa > 0) {
+          digits++;
+        }
+        if (fractionDigits >= 0) {
+          fractionDigits++;
+        }
+      } else if (b == '.' && fractionDigits < 0) {
+        fractionDigits = 0;
+      } else {
+        break;
+      }
+    }
+
+    if (position == end && sawDigit && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+      double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+      return negative ? -value : value;
+    }
+
+    String text = new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    try {
+      return Double.parseDouble(text);
+    } catch (NumberFormatException e) {
+      throw new IOException("Line " + lineNumber + " has an invalid coordinate: " + text, e);
+    }
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset) {
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset);
+    return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static byte[] readAll(InputStream input) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] chunk = new byte[64 * 1024];
+    int read;
+    while ((read = input.read(chunk)) != -1) {
+      bytes.write(chunk, 0, read);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** Converts a CSV dataset to the binary format: UfoDataset input.csv output.bin */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: UfoDataset input.csv output.bin");
+      System.exit(1);
+    }
+
+    UfoDataset dataset;
+    try (InputStream csv = Files.newInputStream(Paths.get(args[0]))) {
+      dataset = parseCsv(csv);
+    }
+    try (OutputStream output = Files.newOutputStream(Paths.get(args[1]))) {
+      dataset.writeBinary(output);
+    }
+    System.out.println("Wrote " + dataset.size() + " sightings to " + args[1]);
+  }
+}
@@ -0,0 +1,198 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Grid index over the sightings of a UfoDataset, answering "which sightings are in this part of the
+ * map" without looking at every sighting.
+ *
+ * <p>The world is split into cells of CELL_DEGREES by CELL_DEGREES. The sightings of each cell are
+ * stored next to each other in one int array, so a viewport query only reads the cells it overlaps
+ * and checks the exact bounds on the sightings of the border cells.
+ */
+public final class UfoIndex {
+
+  private static final double CELL_DEGREES = 0.5;
+  private static final int COLUMNS = (int) (360 / CELL_DEGREES);
+  private static final int ROWS = (int) (180 / CELL_DEGREES);
+
+  private final UfoDataset dataset;
+  private final int[] cellStarts;
+  private final int[] sightings;
+
+  public UfoIndex(UfoDataset dataset) {
+    this.dataset = dataset;
+    this.cellStarts = new int[COLUMNS * ROWS + 1];
+    this.sightings = new int[dataset.size()];
+
+    int[] cells = new int[dataset.size()];
+    for (int i = 0; i < dataset.size(); i++) {
+      cells[i] = getCell(dataset.getLat(i), dataset.getLng(i));
+      cellStarts[cells[i] + 1]++;
+    }
+    for (int cell = 0; cell < COLUMNS * ROWS; cell++) {
+      cellStarts[cell + 1] += cellStarts[cell];
+    }
+
+    int[] next = cellStarts.clone();
+    for (int i = 0; i < dataset.size(); i++) {
+      sightings[next[cells[i]]++] = i;
+    }
+  }
+
+  public UfoDataset getDataset() {
+    return dataset;
+  }
+
+  /**
+   * Calls visitor with the index of every sighting inside the bounds. Bounds crossing the
+   * antimeridian have a west longitude greater than their east longitude.
+   */
+  public void forEachInBounds(Bounds bounds, IntConsumer visitor) {
+    if (bounds.west > bounds.east) {
+      forEachInRange(bounds.south, bounds.west, bounds.north, 180, false, visitor);
+      forEachInRange(bounds.south, -180, bounds.north, bounds.east, bounds.halfOpen, visitor);
+      return;
+    }
+    forEachInRange(bounds.south, bounds.west, bounds.north, bounds.east, bounds.halfOpen, visitor);
+  }
+
+  private void forEachInRange(double south, double west, double north, double east,
+      boolean halfOpen, IntConsumer visitor) {
+    int firstRow = getRow(south);
+    int lastRow = getRow(north);
+    int firstColumn = getColumn(west);
+    int lastColumn = getColumn(east);
+
+    for (int row = firstRow; row <= lastRow; row++) {
+      boolean borderRow = row == firstRow || row == lastRow;
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        boolean borderCell = borderRow || column == firstColumn || column == lastColumn;
+        int cell = row * COLUMNS + column;
+
+        for (int position = cellStarts[cell]; position < cellStarts[cell + 1]; position++) {
+          int i = sightings[position];
+          if (!borderCell || contains(i, south, west, north, east, halfOpen)) {
+            visitor.accept(i);
+          }
+        }
+      }
+    }
+  }
+
+  private boolean contains(int i, double south, double west, double north, double east,
+      boolean halfOpen) {
+    double lat = dataset.getLat(i);
+    double lng = dataset.getLng(i);
+    boolean inSouth = halfOpen ? lat > south : lat >= south;
+    boolean inEast = halfOpen ? lng < east : lng <= east;
+    return inSouth && lat <= north && lng >= west && inEast;
+  }
+
+  private static int getCell(double lat, double lng) {
+    return getRow(lat) * COLUMNS + getColumn(lng);
+  }
+
+  private static int getRow(double lat) {
+    return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((lat + 90) / CELL_DEGREES)));
+  }
+
+  private static int getColumn(double lng) {
+    return Math.max(0, Math.min(COLUMNS - 1, (int) Math.floor((lng + 180) / CELL_DEGREES)));
+  }
+
+  /** Part of the map, in degrees. */
+  public static final class Bounds {
+    private final double south;
+    private final double west;
+    private final double north;
+    private final double east;
+    /** Whether the south and east edges are excluded, so neighbouring bounds do not overlap. */
+    private final boolean halfOpen;
+
+    public Bounds(double south, double west, double north, double east) {
+      this(south, west, north, east, false);
+    }
+
+    private Bounds(double south, double west, double north, double east, boolean halfOpen) {
+      this.south = south;
+      this.west = west;
+      this.north = north;
+      this.east = east;
+      this.halfOpen = halfOpen;
+    }
+
+    /**
+     * Parses bounds in the "south,west,north,east" format of LatLngBounds.toUrlValue() in the Maps
+     * JavaScript API. Throws IllegalArgumentException if the value is not in that format.
+     */
+    public static Bounds parse(String value) {
+      String[] parts = value.split(",");
+      if (parts.length != 4) {
+        throw new IllegalArgumentException("Bounds should be south,west,north,east: " + value);
+      }
+
+      double south = Double.parseDouble(parts[0]);
+      double west = Double.parseDouble(parts[1]);
+      double north = Double.parseDouble(parts[2]);
+      double east = Double.parseDouble(parts[3]);
+      if (!(south <= north) || Double.isNaN(west) || Double.isNaN(east)) {
+        throw new IllegalArgumentException("Invalid bounds: " + value);
+      }
+      return new Bounds(south, west, north, east);
+    }
+
+    /**
+     * Returns the bounds of a Web Mercator map tile, see UfoClusterIndex. A sighting on the edge
+     * of two tiles belongs to the tile south or east of it, as in UfoClusterIndex, and the tiles on
+     * the edges of the map reach to the poles and past 180 so that every sighting is in a tile.
+     */
+    public static Bounds ofTile(int zoom, int x, int y) {
+      double tiles = 1L << zoom;
+      return new Bounds(
+          y == tiles - 1 ? Double.NEGATIVE_INFINITY : UfoClusterIndex.toLat((y + 1) / tiles),
+          x / tiles * 360 - 180,
+          y == 0 ? Double.POSITIVE_INFINITY : UfoClusterIndex.toLat(y / tiles),
+          x == tiles - 1 ? Double.POSITIVE_INFINITY : (x + 1) / tiles * 360 - 180,
+          true);
+    }
+
+    double getSouth() {
+      return south;
+    }
+
+    double getWest() {
+      return west;
+    }
+
+    double getNorth() {
+      return north;
+    }
+
+    double getEast() {
+      return east;
+    }
+
+    /** Returns whether a position is inside the bounds. */
+    public boolean contains(double lat, double lng) {
+      boolean inLat = (halfOpen ? lat > south : lat >= south) && lat <= north;
+      boolean inWest = lng >= west;
+      boolean inEast = halfOpen ? lng < east : lng <= east;
+      return inLat && (west > east ? inWest || inEast : inWest && inEast);
+    }
+  }
+}
@@ -14,45 +14,210 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.data.UfoSighting;
 import com.google.gson.Gson;
+import com.google.sps.data.UfoCluster;
+import com.google.sps.data.UfoClusterIndex;
+import com.google.sps.data.UfoDataset;
+import com.google.sps.data.UfoIndex;
+import com.google.sps.data.UfoSighting;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Returns UFO data as a JSON array, e.g. [{"lat": 38.4404675, "lng": -122.7144313}] */
+/**
+ * Returns UFO data as a JSON array, e.g. [{"lat": 38.4404675, "lng": -122.7144313}]
+ *
+ * <p>The data is read once at startup, from WEB-INF/ufo-data.bin if it exists and from
+ * WEB-INF/ufo-data.csv otherwise. The binary file is memory-mapped, which suits datasets that are
+ * too large to parse on every startup; create it with the UfoDataset class. The JSON response is
+ * also built once and then sent as is.
+ *
+ * <p>With z, x and y parameters only the sightings of that Web Mercator map tile are returned, as
+ * a JSON array of {"lat": ..., "lng": ..., "count": ...} clusters. Up to CLUSTER_MAX_ZOOM nearby
+ * sightings are grouped into clusters, precomputed for every zoom level at startup, so a tile holds
+ * at most a few dozen points however many sightings there are. Above it every sighting is sent
+ * with a count of 1. Tiles never change until the data does, so their JSON is cached and they can
+ * be cached by browsers too.
+ * e.g. /ufo-data?z=6&x=10&y=24
+ *
+ * <p>With a bounds parameter ("south,west,north,east") only the visible part of the map is
+ * returned, as a JSON object with "sightings" and "clusters" arrays. Up to CLUSTER_MAX_ZOOM, or
+ * when more than MAX_SIGHTINGS sightings are visible, the clusters of the zoom level are returned,
+ * and clusters of a single sighting are returned as that sighting.
+ * e.g. /ufo-data?bounds=32.5,-124.4,42.0,-114.1&zoom=6
+ */
 @WebServlet("/ufo-data")
 public class UfoDataServlet extends HttpServlet {
 
-  private Collection<UfoSighting> ufoSightings;
+  private static final String BINARY_DATA_PATH = "/WEB-INF/ufo-data.bin";
+  private static final String CSV_DATA_PATH = "/WEB-INF/ufo-data.csv";
+  private static final int CLUSTER_MAX_ZOOM = 12;
+  private static final int CLUSTER_PIXELS = 64;
+  private static final int MAX_ZOOM = 22;
+  private static final int MAX_SIGHTINGS = 1000;
+  private static final int MAX_CACHED_TILES = 10000;
+  private static final int TILE_MAX_AGE_SECONDS = 60 * 60;
 
-  @Override
-  public void init() {
-    ufoSightings = new ArrayList<>();
+  private final Gson gson = new Gson();
+  private UfoDataset ufoSightings;
+  private UfoIndex ufoIndex;
+  private UfoClusterIndex clusterIndex;
+  private byte[] json;
 
-    Scanner scanner = new Scanner(getServletContext().getResourceAsStream("/WEB-INF/ufo-data.csv"));
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      String[] cells = line.split(",");
+  /**
+   * JSON of the tiles requested so far, by "z/x/y". Cleared when it grows past MAX_CACHED_TILES.
+   */
+  private final Map<String, byte[]> tileCache = new ConcurrentHashMap<>();
 
-      double lat = Double.parseDouble(cells[0]);
-      double lng = Double.parseDouble(cells[1]);
-
-      ufoSightings.add(new UfoSighting(lat, lng));
+  @Override
+  public void init() throws ServletException {
+    try {
+      ufoSightings = loadDataset();
+    } catch (IOException e) {
+      throw new ServletException("Could not load the UFO data", e);
     }
-    scanner.close();
+    json = ufoSightings.toJsonBytes();
+    ufoIndex = new UfoIndex(ufoSightings);
+    clusterIndex = new UfoClusterIndex(ufoSightings, CLUSTER_MAX_ZOOM, CLUSTER_PIXELS);
   }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    response.setContentType("application/json");
-    Gson gson = new Gson();
-    String json = gson.toJson(ufoSightings);
-    response.getWriter().println(json);
+    response.setContentType("application/json; charset=UTF-8");
+
+    String boundsParameter = request.getParameter("bounds");
+    if (boundsParameter != null) {
+      Map<String, Object> visible;
+      try {
+        visible = getVisibleSightings(UfoIndex.Bounds.parse(boundsParameter), getZoom(request));
+      } catch (IllegalArgumentException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        return;
+      }
+      response.getWriter().println(gson.toJson(visible));
+      return;
+    }
+
+    byte[] body = json;
+    if (request.getParameter("z") != null) {
+      try {
+        body = getTileJson(getTileParameter(request, "z", MAX_ZOOM),
+            request.getParameter("x"), request.getParameter("y"));
+      } catch (IllegalArgumentException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        return;
+      }
+      response.setHeader("Cache-Control", "public, max-age=" + TILE_MAX_AGE_SECONDS);
+    }
+
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  /** Returns the JSON array of the clusters of a tile from tileCache, encoding it on a miss. */
+  private byte[] getTileJson(int zoom, String xParameter, String yParameter) {
+    int tiles = 1 << zoom;
+    int x = parseTileCoordinate("x", xParameter, tiles);
+    int y = parseTileCoordinate("y", yParameter, tiles);
+
+    if (tileCache.size() > MAX_CACHED_TILES) {
+      tileCache.clear();
+    }
+    return tileCache.computeIfAbsent(zoom + "/" + x + "/" + y, key -> {
+      List<UfoCluster> clusters;
+      if (zoom <= clusterIndex.getMaxZoom()) {
+        clusters = clusterIndex.getTile(zoom, x, y);
+      } else {
+        List<UfoCluster> sightings = new ArrayList<>();
+        ufoIndex.forEachInBounds(UfoIndex.Bounds.ofTile(zoom, x, y), i -> sightings.add(
+            new UfoCluster(ufoSightings.getLat(i), ufoSightings.getLng(i), 1)));
+        clusters = sightings;
+      }
+      return gson.toJson(clusters).getBytes(StandardCharsets.UTF_8);
+    });
+  }
+
+  /**
+   * Returns the sightings inside the bounds, or the clusters of the zoom level when there are too
+   * many to draw. Above CLUSTER_MAX_ZOOM, too many sightings fall back to the clusters of
+   * CLUSTER_MAX_ZOOM.
+   */
+  private Map<String, Object> getVisibleSightings(UfoIndex.Bounds bounds, int zoom) {
+    List<UfoSighting> sightings = new ArrayList<>();
+    List<UfoCluster> clusters = new ArrayList<>();
+
+    if (zoom > clusterIndex.getMaxZoom()) {
+      ufoIndex.forEachInBounds(bounds, i -> sightings.add(
+          new UfoSighting(ufoSightings.getLat(i), ufoSightings.getLng(i))));
+    }
+    if (zoom <= clusterIndex.getMaxZoom() || sightings.size() > MAX_SIGHTINGS) {
+      sightings.clear();
+      for (UfoCluster cluster :
+          clusterIndex.getClusters(Math.min(zoom, clusterIndex.getMaxZoom()), bounds)) {
+        if (cluster.getCount() == 1) {
+          sightings.add(new UfoSighting(cluster.getLat(), cluster.getLng()));
+        } else {
+          clusters.add(cluster);
+        }
+      }
+    }
+
+    Map<String, Object> visible = new HashMap<>();
+    visible.put("sightings", sightings);
+    visible.put("clusters", clusters);
+    return visible;
+  }
+
+  private static int getZoom(HttpServletRequest request) {
+    String zoom = request.getParameter("zoom");
+    if (zoom == null) {
+      return MAX_ZOOM;
+    }
+    return Math.max(0, Math.min(MAX_ZOOM, Integer.parseInt(zoom)));
+  }
+
+  private static int getTileParameter(HttpServletRequest request, String name, int max) {
+    return parseTileCoordinate(name, request.getParameter(name), max + 1);
+  }
+
+  /**
+   * Parses a tile coordinate between 0 and limit - 1, throwing IllegalArgumentException otherwise.
+   */
+  private static int parseTileCoordinate(String name, String value, int limit) {
+    if (value == null) {
+      throw new IllegalArgumentException("Missing " + name);
+    }
+    int coordinate = Integer.parseInt(value);
+    if (coordinate < 0 || coordinate >= limit) {
+      throw new IllegalArgumentException(name + " should be between 0 and " + (limit - 1));
+    }
+    return coordinate;
+  }
+
+  private UfoDataset loadDataset() throws IOException {
+    String binaryPath = getServletContext().getRealPath(BINARY_DATA_PATH);
+    if (binaryPath != null) {
+      Path path = Paths.get(binaryPath);
+      if (Files.isRegularFile(path)) {
+        return UfoDataset.mapBinary(path);
+      }
+    }
+
+    try (InputStream csv = getServletContext().getResourceAsStream(CSV_DATA_PATH)) {
+      return UfoDataset.parseCsv(csv);
+    }
   }
 }
@@ -12,16 +12,81 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
-/** Fetches UFO sightings data from the server and displays it in a map. */
+/**
+ * Creates a map that shows the UFO sightings in view. Every time the map stops
+ * moving, the map tiles in view at the current zoom level are fetched from the
+ * server, which groups the sightings of each tile into a few clusters.
+ */
 function createUfoSightingsMap() {
-  fetch('/ufo-data').then(response => response.json()).then((ufoSightings) => {
-    const map = new google.maps.Map(
-        document.getElementById('map'),
-        {center: {lat: 35.78613674, lng: -119.4491591}, zoom: 7});
-
-    ufoSightings.forEach((ufoSighting) => {
-      new google.maps.Marker(
-          {position: {lat: ufoSighting.lat, lng: ufoSighting.lng}, map: map});
+  const map = new google.maps.Map(
+      document.getElementById('map'),
+      {center: {lat: 35.78613674, lng: -119.4491591}, zoom: 7});
+
+  /* Markers of the tiles on the map, by "z/x/y". */
+  const tileMarkers = new Map();
+
+  map.addListener('idle', () => {
+    const visibleTiles = getVisibleTiles(map);
+
+    tileMarkers.forEach((markers, tile) => {
+      if (!visibleTiles.includes(tile)) {
+        markers.forEach((marker) => marker.setMap(null));
+        tileMarkers.delete(tile);
+      }
+    });
+
+    visibleTiles.filter((tile) => !tileMarkers.has(tile)).forEach((tile) => {
+      // Reserve the tile so moving the map again does not fetch it twice.
+      tileMarkers.set(tile, []);
+      const [z, x, y] = tile.split('/');
+      fetch(`/ufo-data?z=${z}&x=${x}&y=${y}`)
+          .then(response => response.json())
+          .then((clusters) => {
+            const markers = tileMarkers.get(tile);
+            // The tile left the map while it was being fetched.
+            if (markers === undefined) {
+              return;
+            }
+            clusters.forEach((cluster) => {
+              markers.push(new google.maps.Marker({
+                position: {lat: cluster.lat, lng: cluster.lng},
+                label: cluster.count > 1 ? String(cluster.count) : undefined,
+                map: map
+              }));
+            });
+          });
     });
   });
 }
+
+/** Returns the "z/x/y" names of the map tiles in view at the current zoom. */
+function getVisibleTiles(map) {
+  const zoom = map.getZoom();
+  const tiles = 1 << zoom;
+  const bounds = map.getBounds();
+  const projection = map.getProjection();
+  const northWest = projection.fromLatLngToPoint(new google.maps.LatLng(
+      bounds.getNorthEast().lat(), bounds.getSouthWest().lng()));
+  const southEast = projection.fromLatLngToPoint(new google.maps.LatLng(
+      bounds.getSouthWest().lat(), bounds.getNorthEast().lng()));
+
+  // World points go from 0 to 256, each tile covers 256 / tiles of them.
+  const toTile = (coordinate) =>
+      Math.max(0, Math.min(tiles - 1, Math.floor(coordinate * tiles / 256)));
+  const west = toTile(northWest.x);
+  let east = toTile(southEast.x);
+  const north = toTile(northWest.y);
+  const south = toTile(southEast.y);
+  // The view crosses the antimeridian, or shows the whole world.
+  if (east < west || (east === west && southEast.x < northWest.x)) {
+    east += tiles;
+  }
+
+  const visibleTiles = [];
+  for (let x = west; x <= east && x < west + tiles; x++) {
+    for (let y = north; y <= south; y++) {
+      visibleTiles.push(`${zoom}/${x % tiles}/${y}`);
+    }
+  }
+  return visibleTiles;
+}
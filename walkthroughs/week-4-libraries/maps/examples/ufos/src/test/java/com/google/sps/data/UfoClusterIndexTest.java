@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks the tiles and clusters of UfoIndex and UfoClusterIndex against brute force scans. */
+@RunWith(JUnit4.class)
+public final class UfoClusterIndexTest {
+
+  private static final int SIGHTINGS = 5177;
+  private static final int[] ZOOMS = {0, 1, 3, 6};
+  private static final String[] BOUNDS = {
+    "32.5,-124.4,42.0,-114.1", // California
+    "-90,-180,90,180", // The whole world
+    "20,170,60,-60", // Crossing the antimeridian
+    "37,-123,38,-122", // Around San Francisco
+    "10,10,10.5,10.5" // No sightings
+  };
+
+  private static UfoDataset dataset;
+  private static UfoIndex index;
+  private static UfoClusterIndex clusterIndex;
+
+  @BeforeClass
+  public static void loadDataset() throws Exception {
+    try (InputStream csv = new FileInputStream("src/main/webapp/WEB-INF/ufo-data.csv")) {
+      dataset = UfoDataset.parseCsv(csv);
+    }
+    index = new UfoIndex(dataset);
+    clusterIndex = new UfoClusterIndex(dataset, 6, 64);
+  }
+
+  @Test
+  public void everySightingIsInExactlyOneTile() {
+    Assert.assertEquals(SIGHTINGS, dataset.size());
+
+    for (int zoom : ZOOMS) {
+      int[] visits = new int[dataset.size()];
+      int tiles = 1 << zoom;
+      for (int x = 0; x < tiles; x++) {
+        for (int y = 0; y < tiles; y++) {
+          index.forEachInBounds(UfoIndex.Bounds.ofTile(zoom, x, y), i -> visits[i]++);
+        }
+      }
+
+      for (int i = 0; i < visits.length; i++) {
+        Assert.assertEquals("Sighting " + i + " at zoom " + zoom, 1, visits[i]);
+      }
+    }
+  }
+
+  @Test
+  public void clustersOfEveryZoomAddUpToTheSightings() {
+    for (int zoom : ZOOMS) {
+      int count = 0;
+      int tiles = 1 << zoom;
+      for (int x = 0; x < tiles; x++) {
+        for (int y = 0; y < tiles; y++) {
+          for (UfoCluster cluster : clusterIndex.getTile(zoom, x, y)) {
+            count += cluster.getCount();
+          }
+        }
+      }
+
+      Assert.assertEquals("Zoom " + zoom, SIGHTINGS, count);
+    }
+  }
+
+  @Test
+  public void getClustersMatchesBruteForce() {
+    for (String value : BOUNDS) {
+      UfoIndex.Bounds bounds = UfoIndex.Bounds.parse(value);
+      for (int zoom : ZOOMS) {
+        Set<UfoCluster> expected = new HashSet<>();
+        int tiles = 1 << zoom;
+        for (int x = 0; x < tiles; x++) {
+          for (int y = 0; y < tiles; y++) {
+            for (UfoCluster cluster : clusterIndex.getTile(zoom, x, y)) {
+              if (bounds.contains(cluster.getLat(), cluster.getLng())) {
+                expected.add(cluster);
+              }
+            }
+          }
+        }
+
+        List<UfoCluster> clusters = clusterIndex.getClusters(zoom, bounds);
+
+        String message = value + " at zoom " + zoom;
+        Assert.assertEquals(message, expected.size(), clusters.size());
+        Assert.assertEquals(message, expected, new HashSet<>(clusters));
+      }
+    }
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks the CSV parser and the binary format of UfoDataset against the bundled sightings. */
+@RunWith(JUnit4.class)
+public final class UfoDatasetTest {
+
+  private static final String CSV_PATH = "src/main/webapp/WEB-INF/ufo-data.csv";
+
+  private static UfoDataset dataset;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void loadDataset() throws Exception {
+    try (InputStream csv = new FileInputStream(CSV_PATH)) {
+      dataset = UfoDataset.parseCsv(csv);
+    }
+  }
+
+  @Test
+  public void parsesLikeDoubleParseDouble() throws Exception {
+    List<String> lines = Files.readAllLines(Paths.get(CSV_PATH), StandardCharsets.US_ASCII);
+    lines.removeIf(String::isEmpty);
+
+    Assert.assertEquals(lines.size(), dataset.size());
+    for (int i = 0; i < lines.size(); i++) {
+      String[] columns = lines.get(i).split(",");
+      Assert.assertEquals(lines.get(i), Double.parseDouble(columns[0]), dataset.getLat(i), 0);
+      Assert.assertEquals(lines.get(i), Double.parseDouble(columns[1]), dataset.getLng(i), 0);
+    }
+  }
+
+  @Test
+  public void parsesNumbersOutsideTheFastPath() throws Exception {
+    String csv = "1e2,-0.5\n 12.34567890123456789 , 7\r\n\n+3,.25";
+
+    UfoDataset parsed =
+        UfoDataset.parseCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)));
+
+    Assert.assertEquals(3, parsed.size());
+    Assert.assertEquals(100, parsed.getLat(0), 0);
+    Assert.assertEquals(-0.5, parsed.getLng(0), 0);
+    Assert.assertEquals(Double.parseDouble("12.34567890123456789"), parsed.getLat(1), 0);
+    Assert.assertEquals(7, parsed.getLng(1), 0);
+    Assert.assertEquals(3, parsed.getLat(2), 0);
+    Assert.assertEquals(0.25, parsed.getLng(2), 0);
+  }
+
+  @Test
+  public void binaryFormatRoundTrips() throws Exception {
+    Path binary = folder.newFile("ufo-data.bin").toPath();
+    try (OutputStream output = Files.newOutputStream(binary)) {
+      dataset.writeBinary(output);
+    }
+
+    UfoDataset mapped = UfoDataset.mapBinary(binary);
+
+    Assert.assertEquals(dataset.size(), mapped.size());
+    for (int i = 0; i < dataset.size(); i++) {
+      Assert.assertEquals(dataset.getLat(i), mapped.getLat(i), 0);
+      Assert.assertEquals(dataset.getLng(i), mapped.getLng(i), 0);
+    }
+    Assert.assertArrayEquals(dataset.toJsonBytes(), mapped.toJsonBytes());
+  }
+}